@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.benchmark;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.tools.sfnttool.GlyphCoverage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark state holding a test font in both raw and parsed form. The fonts are read from the
+ * directory given by the {@code sfntly.testdata} system property, which defaults to the test data
+ * directory relative to the java build directory.
+ */
+@State(Scope.Benchmark)
+public class FontState {
+
+  /** Text used for the subsetting benchmarks. */
+  static final String SUBSET_TEXT = "The quick brown fox jumps over the lazy dog. 0123456789";
+
+  @Param({"DroidSans-Regular.ttf", "OpenSans-Regular.ttf", "Roboto-Regular.ttf"})
+  public String fontName;
+
+  FontFactory factory;
+  Path path;
+  byte[] bytes;
+  Font font;
+  List<Integer> subsetGlyphs;
+  List<CMapTable.CMapId> cmapIds;
+
+  @Setup
+  public void setUp() throws IOException {
+    factory = FontFactory.getInstance();
+    path = Paths.get(System.getProperty("sfntly.testdata", "../data/testdata"), fontName);
+    bytes = Files.readAllBytes(path);
+    font = factory.loadFonts(bytes.clone())[0];
+    subsetGlyphs = GlyphCoverage.getGlyphCoverage(font, SUBSET_TEXT);
+    cmapIds = Collections.singletonList(CMapTable.CMapId.WINDOWS_BMP);
+  }
+}
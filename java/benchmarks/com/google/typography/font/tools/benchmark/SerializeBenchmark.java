@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.benchmark;
+
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.tools.conversion.eot.EOTWriter;
+import com.google.typography.font.tools.conversion.woff.WoffWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for writing a parsed font out as sfnt, WOFF and MicroType Express EOT. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializeBenchmark {
+
+  @Benchmark
+  public byte[] serializeFont(FontState state) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream(state.bytes.length);
+    state.factory.serializeFont(state.font, os);
+    return os.toByteArray();
+  }
+
+  @Benchmark
+  public WritableFontData convertToWoff(FontState state) {
+    return new WoffWriter().convert(state.font);
+  }
+
+  @Benchmark
+  public WritableFontData convertToMtxEot(FontState state) throws IOException {
+    return new EOTWriter(true).convert(state.font);
+  }
+}
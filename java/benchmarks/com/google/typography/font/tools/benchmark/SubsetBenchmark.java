@@ -0,0 +1,47 @@
+/*
+ * Copyright 2010 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.benchmark;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.tools.subsetter.RenumberingSubsetter;
+import com.google.typography.font.tools.subsetter.Subsetter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for subsetting a parsed font with {@link RenumberingSubsetter}. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubsetBenchmark {
+
+  @Benchmark
+  public Font renumberingSubset(FontState state) throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(state.font, state.factory);
+    subsetter.setCMaps(state.cmapIds, 1);
+    subsetter.setGlyphs(state.subsetGlyphs);
+    return subsetter.subset().build();
+  }
+}
@@ -32,12 +32,16 @@ import com.google.typography.font.sfntly.table.core.HorizontalMetricsTable;
 import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
 import com.google.typography.font.sfntly.table.core.NameTable;
 import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -46,12 +50,20 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.logging.Logger;
 
 /**
  * An sfnt container font object. This object is immutable and thread safe. To construct one, use an
  * instance of {@link Font.Builder}.
  *
+ * <p>A built font and the tables it returns may be shared between threads without any external
+ * synchronization. Anything a table parses on first use, such as glyph outlines, bitmap index
+ * tables, PostScript glyph names, data checksums or the tables of a lazily loaded font, is
+ * initialized at most once under a lock and is safely published to other threads. This makes it
+ * safe to keep parsed fonts in a {@link FontCache} and subset them concurrently. Builders are not
+ * thread safe.
+ *
  * @author Stuart Gill
  */
 public class Font {
@@ -68,6 +80,35 @@ public class Font {
     int SIZE = 12;
   }
 
+  // Offsets within the header of a collection
+  private interface CollectionHeaderOffset {
+    int ttcTag = 0;
+    int version = 4;
+    int numFonts = 8;
+    int offsetTable = 12;
+    int SIZE = 12;
+    // size of each entry in the list of offset table offsets
+    int OFFSET_TABLE_ENTRY_SIZE = 4;
+  }
+
+  // Offsets within the header of a WOFF font
+  private interface WoffHeaderOffset {
+    int flavor = 4;
+    int length = 8;
+    int numTables = 12;
+    int SIZE = 44;
+  }
+
+  // Offsets within a WOFF table directory entry
+  private interface WoffTableOffset {
+    int tag = 0;
+    int offset = 4;
+    int compLength = 8;
+    int origLength = 12;
+    int origChecksum = 16;
+    int SIZE = 20;
+  }
+
   // Offsets within a specific table record
   private interface TableOffset {
     int tag = 0;
@@ -298,7 +339,13 @@ public class Font {
   private final byte[] digest;
   private long checksum;
 
-  private Map<Integer, ? extends Table> tables; // these get set in the builder
+  private Map<Integer, Table> tables; // these get set in the builder
+
+  // tables of a lazily loaded font that are built from their data on first use
+  private Map<Integer, Header> lazyHeaders = Collections.emptyMap();
+  private Map<Header, WritableFontData> lazyData = Collections.emptyMap();
+  // tables shared with the other fonts of the collection this font was loaded from
+  private SharedTables sharedTables;
 
   /** @param digest the computed digest for the font; null if digest was not computed */
   private Font(int sfntVersion, byte[] digest) {
@@ -343,7 +390,7 @@ public class Font {
    * @return the number of tables
    */
   public int numTables() {
-    return tables.size();
+    return tableTags().size();
   }
 
   /**
@@ -352,6 +399,7 @@ public class Font {
    * @return a table iterator
    */
   public Iterator<? extends Table> iterator() {
+    buildLazyTables();
     return tables.values().iterator();
   }
 
@@ -362,7 +410,7 @@ public class Font {
    * @return true if the table is in the font; false otherwise
    */
   public boolean hasTable(int tag) {
-    return tables.containsKey(tag);
+    return tables.containsKey(tag) || lazyHeaders.containsKey(tag);
   }
 
   /**
@@ -373,7 +421,11 @@ public class Font {
    */
   @SuppressWarnings("unchecked")
   public <T extends Table> T getTable(int tag) {
-    return (T) tables.get(tag);
+    Table table = tables.get(tag);
+    if (table == null && lazyHeaders.containsKey(tag)) {
+      table = buildLazyTable(tag);
+    }
+    return (T) table;
   }
 
   /**
@@ -382,9 +434,103 @@ public class Font {
    * @return an unmodifiable view of the tables in this font
    */
   public Map<Integer, ? extends Table> tableMap() {
+    buildLazyTables();
     return Collections.unmodifiableMap(tables);
   }
 
+  /**
+   * Gets the tags of all the tables in the font, whether or not they have been built yet.
+   *
+   * @return the table tags
+   */
+  private Set<Integer> tableTags() {
+    if (lazyHeaders.isEmpty()) {
+      return tables.keySet();
+    }
+    Set<Integer> tags = new TreeSet<>(tables.keySet());
+    tags.addAll(lazyHeaders.keySet());
+    return tags;
+  }
+
+  /**
+   * Builds a table of a lazily loaded font from its data. The table is related to the core tables
+   * that were built along with the font in the same way as the builders are related when a font is
+   * built.
+   *
+   * @param tag the tag of the table to build
+   * @return the table
+   */
+  private synchronized Table buildLazyTable(int tag) {
+    Table table = tables.get(tag);
+    if (table != null) {
+      return table;
+    }
+    Header header = lazyHeaders.get(tag);
+    WritableFontData data = lazyData.get(header);
+    if (sharedTables != null && !isRelatedTable(tag)) {
+      table = sharedTables.table(data, () -> buildTable(header, data));
+    } else {
+      table = buildTable(header, data);
+    }
+    tables.put(tag, table);
+    return table;
+  }
+
+  /**
+   * Does the table depend on values from other tables in the font? Such tables are not shared with
+   * other fonts in a collection even when they use the same data.
+   */
+  private static boolean isRelatedTable(int tag) {
+    return tag == Tag.hmtx || tag == Tag.loca || tag == Tag.hdmx;
+  }
+
+  private Table buildTable(Header header, WritableFontData data) {
+    Table table = null;
+    Table.Builder<? extends Table> builder = Table.Builder.getBuilder(header, data);
+    if (builder instanceof HorizontalMetricsTable.Builder) {
+      HorizontalMetricsTable.Builder hmtxBuilder = (HorizontalMetricsTable.Builder) builder;
+      MaximumProfileTable maxp = getTable(Tag.maxp);
+      if (maxp != null) {
+        hmtxBuilder.setNumGlyphs(maxp.numGlyphs());
+      }
+      HorizontalHeaderTable hhea = getTable(Tag.hhea);
+      if (hhea != null) {
+        hmtxBuilder.setNumberOfHMetrics(hhea.numberOfHMetrics());
+      }
+    } else if (builder instanceof LocaTable.Builder) {
+      LocaTable.Builder locaBuilder = (LocaTable.Builder) builder;
+      MaximumProfileTable maxp = getTable(Tag.maxp);
+      if (maxp != null) {
+        locaBuilder.setNumGlyphs(maxp.numGlyphs());
+      }
+      FontHeaderTable head = getTable(Tag.head);
+      if (head != null) {
+        locaBuilder.setFormatVersion(head.indexToLocFormat());
+      }
+    } else if (builder instanceof HorizontalDeviceMetricsTable.Builder) {
+      MaximumProfileTable maxp = getTable(Tag.maxp);
+      if (maxp != null) {
+        ((HorizontalDeviceMetricsTable.Builder) builder).setNumGlyphs(maxp.numGlyphs());
+      }
+    }
+    if (builder.readyToBuild()) {
+      table = builder.build();
+    }
+    if (table == null) {
+      throw new RuntimeException("Unable to build table - " + builder);
+    }
+    return table;
+  }
+
+  /** Builds all the tables of a lazily loaded font that have not been built yet. */
+  private void buildLazyTables() {
+    for (Integer tag : lazyHeaders.keySet()) {
+      if (!tables.containsKey(tag)) {
+        buildLazyTable(tag);
+      }
+    }
+  }
+
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder();
@@ -407,6 +553,7 @@ public class Font {
     sb.append(numTables());
     sb.append("]\n");
 
+    buildLazyTables();
     for (Table table : tables.values()) {
       sb.append("\t");
       sb.append(table);
@@ -420,33 +567,216 @@ public class Font {
    *
    * @param os the destination for the font serialization
    * @param tableOrdering the table ordering to apply
+   * @param useHeaderChecksums whether unchanged tables use the checksum from their header
    */
-  void serialize(OutputStream os, List<Integer> tableOrdering) throws IOException {
+  void serialize(OutputStream os, List<Integer> tableOrdering, boolean useHeaderChecksums)
+      throws IOException {
     List<Integer> finalTableOrdering = generateTableOrdering(tableOrdering);
-    List<Header> tableRecords = buildTableHeadersForSerialization(finalTableOrdering);
+    List<Header> tableRecords =
+        buildTableHeadersForSerialization(finalTableOrdering, useHeaderChecksums);
     FontOutputStream fos = new FontOutputStream(os);
     serializeHeader(fos, tableRecords);
     serializeTables(fos, tableRecords);
   }
 
+  /**
+   * Serialize the font to the channel. The table directory is written first and then each table is
+   * written straight from its data, so the serialized font is never assembled in memory.
+   *
+   * @param channel the destination for the font serialization
+   * @param tableOrdering the table ordering to apply
+   * @param useHeaderChecksums whether unchanged tables use the checksum from their header
+   */
+  void serialize(
+      WritableByteChannel channel, List<Integer> tableOrdering, boolean useHeaderChecksums)
+      throws IOException {
+    List<Integer> finalTableOrdering = generateTableOrdering(tableOrdering);
+    List<Header> tableRecords =
+        buildTableHeadersForSerialization(finalTableOrdering, useHeaderChecksums);
+    ByteArrayOutputStream header =
+        new ByteArrayOutputStream(HeaderOffset.SIZE + tableRecords.size() * TableOffset.SIZE);
+    serializeHeader(new FontOutputStream(header), tableRecords);
+    writeFully(channel, ByteBuffer.wrap(header.toByteArray()));
+
+    byte[] padding = new byte[3];
+    for (Header record : tableRecords) {
+      int tableSize = serializedTableData(record.tag()).copyTo(channel);
+      int fillerSize = ((tableSize + 3) & ~3) - tableSize;
+      writeFully(channel, ByteBuffer.wrap(padding, 0, fillerSize));
+    }
+  }
+
+  /**
+   * Serialize the fonts as a TrueType collection. The collection header and the offset tables of
+   * all the fonts are written first, followed by the table data. A table that is byte for byte the
+   * same as a table already written for an earlier font is not written again and the offset tables
+   * of both fonts point to the one copy.
+   *
+   * @param fonts the fonts to put in the collection
+   * @param os the destination for the collection serialization
+   * @param tableOrdering the table ordering to apply
+   * @param useHeaderChecksums whether unchanged tables use the checksum from their header
+   */
+  static void serializeCollection(
+      Font[] fonts, OutputStream os, List<Integer> tableOrdering, boolean useHeaderChecksums)
+      throws IOException {
+    int collectionHeaderSize =
+        CollectionHeaderOffset.SIZE + fonts.length * CollectionHeaderOffset.OFFSET_TABLE_ENTRY_SIZE;
+    List<List<Header>> fontRecords = new ArrayList<>(fonts.length);
+    int tableOffset = collectionHeaderSize;
+    for (Font font : fonts) {
+      List<Header> tableRecords =
+          font.buildTableHeadersForSerialization(tableOrdering, useHeaderChecksums);
+      fontRecords.add(tableRecords);
+      tableOffset += HeaderOffset.SIZE + tableRecords.size() * TableOffset.SIZE;
+    }
+
+    // lay out the table data, keeping one copy of each distinct table
+    Map<Long, List<Integer>> writtenByChecksum = new HashMap<>();
+    List<ReadableFontData> dataToWrite = new ArrayList<>();
+    List<Integer> dataOffsets = new ArrayList<>();
+    List<List<Header>> collectionRecords = new ArrayList<>(fonts.length);
+    for (int fontNumber = 0; fontNumber < fonts.length; fontNumber++) {
+      List<Header> tableRecords = new ArrayList<>();
+      for (Header record : fontRecords.get(fontNumber)) {
+        ReadableFontData data = fonts[fontNumber].serializedTableData(record.tag());
+        List<Integer> candidates =
+            writtenByChecksum.computeIfAbsent(record.checksum(), k -> new ArrayList<>());
+        int written = -1;
+        for (int candidate : candidates) {
+          if (sameData(dataToWrite.get(candidate), data)) {
+            written = candidate;
+            break;
+          }
+        }
+        if (written < 0) {
+          written = dataToWrite.size();
+          candidates.add(written);
+          dataToWrite.add(data);
+          dataOffsets.add(tableOffset);
+          tableOffset += (data.length() + 3) & ~3;
+        }
+        tableRecords.add(
+            new Header(
+                record.tag(), record.checksum(), dataOffsets.get(written), record.length()));
+      }
+      collectionRecords.add(tableRecords);
+    }
+
+    FontOutputStream fos = new FontOutputStream(os);
+    fos.writeULong(Tag.ttcf);
+    fos.writeFixed(SFNTVERSION_1);
+    fos.writeULong(fonts.length);
+    int offsetTableOffset = collectionHeaderSize;
+    for (List<Header> tableRecords : collectionRecords) {
+      fos.writeULong(offsetTableOffset);
+      offsetTableOffset += HeaderOffset.SIZE + tableRecords.size() * TableOffset.SIZE;
+    }
+    for (int fontNumber = 0; fontNumber < fonts.length; fontNumber++) {
+      fonts[fontNumber].serializeHeader(fos, collectionRecords.get(fontNumber));
+    }
+    for (ReadableFontData data : dataToWrite) {
+      int tableSize = data.copyTo(fos);
+      int fillerSize = ((tableSize + 3) & ~3) - tableSize;
+      for (int i = 0; i < fillerSize; i++) {
+        fos.write(0);
+      }
+    }
+  }
+
+  /**
+   * Checks whether two tables have the same bytes.
+   *
+   * @param data1 the data of the first table
+   * @param data2 the data of the second table
+   * @return true if the data is the same; false otherwise
+   */
+  private static boolean sameData(ReadableFontData data1, ReadableFontData data2) {
+    if (data1 == data2) {
+      return true;
+    }
+    if (data1.length() != data2.length()) {
+      return false;
+    }
+    byte[] b1 = new byte[4096];
+    byte[] b2 = new byte[b1.length];
+    for (int index = 0; index < data1.length(); index += b1.length) {
+      int length = Math.min(b1.length, data1.length() - index);
+      data1.readBytes(index, b1, 0, length);
+      data2.readBytes(index, b2, 0, length);
+      for (int i = 0; i < length; i++) {
+        if (b1[i] != b2[i]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static void writeFully(WritableByteChannel channel, ByteBuffer buffer)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * Gets the data to write for a table when serializing the font. Tables of a lazily loaded font
+   * are written from the loaded data whether or not they have been built.
+   *
+   * @param tag the table to get the data for
+   * @return the table data
+   * @throws IOException if the font has no such table
+   */
+  private ReadableFontData serializedTableData(int tag) throws IOException {
+    Header lazyHeader = lazyHeaders.get(tag);
+    if (lazyHeader != null) {
+      return lazyData.get(lazyHeader);
+    }
+    Table table = tables.get(tag);
+    if (table == null) {
+      throw new IOException("Table out of sync with font header.");
+    }
+    return table.readFontData();
+  }
+
   /**
    * Build the table headers to be used for serialization. These headers will be filled out with the
    * data required for serialization. The headers will be sorted in the order specified and only
    * those specified will have headers generated.
    *
    * @param tableOrdering the tables to generate headers for and the order to sort them
+   * @param useHeaderChecksums whether unchanged tables use the checksum from their header
    * @return a list of table headers ready for serialization
    */
-  private List<Header> buildTableHeadersForSerialization(List<Integer> tableOrdering) {
+  private List<Header> buildTableHeadersForSerialization(
+      List<Integer> tableOrdering, boolean useHeaderChecksums) {
     List<Integer> finalTableOrdering = generateTableOrdering(tableOrdering);
 
     List<Header> tableHeaders = new ArrayList<>(numTables());
     int tableOffset = HeaderOffset.SIZE + numTables() * TableOffset.SIZE;
     for (Integer tag : finalTableOrdering) {
+      Header lazyHeader = lazyHeaders.get(tag);
+      if (lazyHeader != null) {
+        // written straight from the loaded data whether or not the table has been built
+        ReadableFontData data = lazyData.get(lazyHeader);
+        tableHeaders.add(
+            new Header(
+                tag,
+                lazyTableChecksum(lazyHeader, data, useHeaderChecksums),
+                tableOffset,
+                lazyHeader.length()));
+        tableOffset += (data.length() + 3) & ~3;
+        continue;
+      }
       Table table = tables.get(tag);
       if (table != null) {
         tableHeaders.add(
-            new Header(tag, table.calculatedChecksum(), tableOffset, table.header().length()));
+            new Header(
+                tag,
+                tableChecksum(table, useHeaderChecksums),
+                tableOffset,
+                table.header().length()));
         // write on boundary of 4 bytes
         tableOffset += (table.dataLength() + 3) & ~3;
       }
@@ -454,6 +784,39 @@ public class Font {
     return tableHeaders;
   }
 
+  /**
+   * Gets the checksum to use for a table. A table that was built without changes from the font it
+   * was read from still has the header from that font, and if header checksums are trusted the
+   * checksum recorded there is used rather than computing one from the table data.
+   *
+   * @param table the table to get the checksum for
+   * @param useHeaderChecksums whether an unchanged table uses the checksum from its header
+   * @return the table checksum
+   */
+  private static long tableChecksum(Table table, boolean useHeaderChecksums) {
+    Header header = table.header();
+    if (useHeaderChecksums && header.checksumValid()) {
+      return header.checksum();
+    }
+    return table.calculatedChecksum();
+  }
+
+  /**
+   * Gets the checksum to use for a table of a lazily loaded font that is written from its data.
+   *
+   * @param header the header the table was loaded with
+   * @param data the table data
+   * @param useHeaderChecksums whether the checksum from the header is used
+   * @return the table checksum
+   */
+  private static long lazyTableChecksum(
+      Header header, ReadableFontData data, boolean useHeaderChecksums) {
+    if (useHeaderChecksums && header.checksumValid()) {
+      return header.checksum();
+    }
+    return data.checksum();
+  }
+
   /**
    * Searialize the headers.
    *
@@ -489,11 +852,7 @@ public class Font {
   private void serializeTables(FontOutputStream fos, List<Header> tableHeaders) throws IOException {
 
     for (Header record : tableHeaders) {
-      Table table = getTable(record.tag());
-      if (table == null) {
-        throw new IOException("Table out of sync with font header.");
-      }
-      int tableSize = table.serialize(fos);
+      int tableSize = serializedTableData(record.tag()).copyTo(fos);
       int fillerSize = ((tableSize + 3) & ~3) - tableSize;
       for (int i = 0; i < fillerSize; i++) {
         fos.write(0);
@@ -509,12 +868,12 @@ public class Font {
    * @return the full ordering for serialization
    */
   private List<Integer> generateTableOrdering(List<Integer> defaultTableOrdering) {
-    List<Integer> tableOrdering = new ArrayList<>(tables.size());
+    Set<Integer> tablesInFont = new TreeSet<>(tableTags());
+    List<Integer> tableOrdering = new ArrayList<>(tablesInFont.size());
     if (defaultTableOrdering == null) {
       defaultTableOrdering = defaultTableOrdering();
     }
 
-    Set<Integer> tablesInFont = new TreeSet<>(tables.keySet());
 
     // add all the default ordering
     for (Integer tag : defaultTableOrdering) {
@@ -569,9 +928,15 @@ public class Font {
     private Map<Header, WritableFontData> dataBlocks;
     private byte[] digest;
 
+    // headers of loaded tables whose builders are only created on first use
+    private Map<Integer, Header> lazyHeaders;
+    // non-null when loaded as one of the fonts in a collection whose tables are shared
+    private SharedTables sharedTables;
+
     private Builder(FontFactory factory) {
       this.factory = factory;
       this.tableBuilders = new HashMap<>();
+      this.lazyHeaders = new HashMap<>();
     }
 
     private void loadFont(InputStream is) throws IOException {
@@ -594,6 +959,102 @@ public class Font {
       this.tableBuilders = buildAllTableBuilders(dataBlocks);
     }
 
+    private void loadWoff(WritableFontData wfd) throws IOException {
+      if (wfd == null) {
+        throw new IOException("No data for font.");
+      }
+      this.dataBlocks = loadWoffTableData(wfd);
+      this.tableBuilders = buildAllTableBuilders(dataBlocks);
+    }
+
+    /**
+     * Loads the fonts of a collection from a stream in a single forward pass. The offset tables and
+     * table data of all the fonts are read in file order, and table data used by more than one font
+     * is read once. This fails if a font's offset table comes after table data that it uses.
+     *
+     * @param factory the factory loading the fonts
+     * @param is the stream positioned just after the collection header
+     * @param offsetTableOffsets the offsets of each font's offset table in the collection
+     * @param sharedTables the tables to share between the fonts; null if the fonts are for building
+     *     and must have separate tables
+     * @return a builder for each font in the collection
+     */
+    static Builder[] getOTFBuilders(
+        FontFactory factory,
+        FontInputStream is,
+        int[] offsetTableOffsets,
+        SharedTables sharedTables)
+        throws IOException {
+      int numFonts = offsetTableOffsets.length;
+      Builder[] builders = new Builder[numFonts];
+      List<SortedSet<Header>> fontHeaders = new ArrayList<>(Collections.nCopies(numFonts, null));
+      Integer[] fontOrder = new Integer[numFonts];
+      for (int i = 0; i < numFonts; i++) {
+        fontOrder[i] = i;
+      }
+      Arrays.sort(fontOrder, (f1, f2) -> offsetTableOffsets[f1] - offsetTableOffsets[f2]);
+
+      SharedTables tableData = sharedTables != null ? sharedTables : new SharedTables();
+      SortedSet<Header> pendingHeaders =
+          new TreeSet<>(
+              Comparator.comparingInt(Header::offset)
+                  .thenComparing(Comparator.comparingInt(Header::length).reversed()));
+      logger.fine("########  Reading Collection Table Data");
+      WritableFontData block = null;
+      int blockOffset = 0;
+      int nextFont = 0;
+      while (nextFont < numFonts || !pendingHeaders.isEmpty()) {
+        if (nextFont < numFonts
+            && (pendingHeaders.isEmpty()
+                || offsetTableOffsets[fontOrder[nextFont]] <= pendingHeaders.first().offset())) {
+          int fontNumber = fontOrder[nextFont++];
+          if (offsetTableOffsets[fontNumber] < is.position()) {
+            throw new IOException("Offset table overlaps other data in collection.");
+          }
+          is.skip(offsetTableOffsets[fontNumber] - is.position());
+          Builder builder = new Builder(factory);
+          builder.sharedTables = sharedTables;
+          SortedSet<Header> headers = builder.readHeader(is);
+          fontHeaders.set(fontNumber, headers);
+          pendingHeaders.addAll(headers);
+          builders[fontNumber] = builder;
+          continue;
+        }
+
+        Header header = pendingHeaders.first();
+        pendingHeaders.remove(header);
+        if (tableData.data(header) != null) {
+          continue;
+        }
+        if (block != null && header.offset() + header.length() <= blockOffset + block.length()) {
+          // lies within table data that has already been read
+          tableData.putData(header, block.slice(header.offset() - blockOffset, header.length()));
+          continue;
+        }
+        if (header.offset() < is.position()) {
+          throw new IOException("Table data overlaps in collection.");
+        }
+        is.skip(header.offset() - is.position());
+        // don't close this or the whole stream is gone
+        FontInputStream tableIS = new FontInputStream(is, header.length());
+        block = WritableFontData.createWritableFontData(header.length());
+        block.copyFrom(tableIS, header.length());
+        blockOffset = header.offset();
+        tableData.putData(header, block);
+      }
+
+      for (int fontNumber = 0; fontNumber < numFonts; fontNumber++) {
+        Builder builder = builders[fontNumber];
+        Map<Header, WritableFontData> data = new HashMap<>();
+        for (Header header : fontHeaders.get(fontNumber)) {
+          data.put(header, tableData.data(header));
+        }
+        builder.dataBlocks = data;
+        builder.tableBuilders = builder.buildAllTableBuilders(data);
+      }
+      return builders;
+    }
+
     static Builder getOTFBuilder(FontFactory factory, InputStream is) throws IOException {
       Builder builder = new Builder(factory);
       builder.loadFont(is);
@@ -602,7 +1063,21 @@ public class Font {
 
     static Builder getOTFBuilder(FontFactory factory, WritableFontData wfd, int offsetToOffsetTable)
         throws IOException {
+      return getOTFBuilder(factory, wfd, offsetToOffsetTable, null);
+    }
+
+    /**
+     * @param sharedTables the tables shared between the fonts of the collection the font is loaded
+     *     from; null if the font's tables are not shared
+     */
+    static Builder getOTFBuilder(
+        FontFactory factory,
+        WritableFontData wfd,
+        int offsetToOffsetTable,
+        SharedTables sharedTables)
+        throws IOException {
       Builder builder = new Builder(factory);
+      builder.sharedTables = sharedTables;
       builder.loadFont(wfd, offsetToOffsetTable);
       return builder;
     }
@@ -611,6 +1086,19 @@ public class Font {
       return new Builder(factory);
     }
 
+    /**
+     * Gets a builder for a WOFF font. The tables are not inflated until their data is first used,
+     * so tables that are dropped without being read are never decompressed.
+     *
+     * @param factory the factory loading the font
+     * @param wfd the WOFF font data
+     */
+    static Builder getWoffBuilder(FontFactory factory, WritableFontData wfd) throws IOException {
+      Builder builder = new Builder(factory);
+      builder.loadWoff(wfd);
+      return builder;
+    }
+
     /**
      * Get the font factory that created this font builder.
      *
@@ -641,15 +1129,32 @@ public class Font {
 
     /** Build the {@link Font}. After this call this builder will no longer be usable. */
     public Font build() {
-      Map<Integer, ? extends Table> tables = null;
+      Map<Integer, Table> tables = null;
 
       Font font = new Font(sfntVersion, digest);
 
-      if (tableBuilders.size() > 0) {
-        tables = buildTablesFromBuilders(font, tableBuilders);
+      Map<Header, WritableFontData> lazyData = new HashMap<>(lazyHeaders.size());
+      for (Header header : lazyHeaders.values()) {
+        lazyData.put(header, dataBlocks.get(header));
+      }
+      if (tableBuilders.size() > 0 || lazyData.size() > 0) {
+        tables =
+            buildTablesFromBuilders(font, tableBuilders, lazyData, factory.useHeaderChecksums());
+      }
+      if (lazyData.size() > 0) {
+        font.tables = new ConcurrentSkipListMap<>(tables);
+        font.lazyHeaders = lazyHeaders;
+        font.lazyData = lazyData;
+        font.sharedTables = sharedTables;
+        if (!factory.loadTablesLazily()) {
+          // tables were only left unbuilt so they could be shared
+          font.buildLazyTables();
+        }
+      } else {
+        font.tables = tables;
       }
-      font.tables = tables;
       this.tableBuilders = null;
+      this.lazyHeaders = null;
       this.dataBlocks = null;
       return font;
     }
@@ -662,11 +1167,12 @@ public class Font {
     /** Clear all table builders. */
     public void clearTableBuilders() {
       tableBuilders.clear();
+      lazyHeaders.clear();
     }
 
     /** Does this font builder have the specified table builder? */
     public boolean hasTableBuilder(int tableBuilderTag) {
-      return tableBuilders.containsKey(tableBuilderTag);
+      return tableBuilders.containsKey(tableBuilderTag) || lazyHeaders.containsKey(tableBuilderTag);
     }
 
     /**
@@ -675,6 +1181,9 @@ public class Font {
      */
     public Table.Builder<? extends Table> getTableBuilder(int tableBuilderTag) {
       Table.Builder<? extends Table> builder = tableBuilders.get(tableBuilderTag);
+      if (builder == null && lazyHeaders.containsKey(tableBuilderTag)) {
+        builder = buildLazyTableBuilder(tableBuilderTag);
+      }
       return builder;
     }
 
@@ -691,6 +1200,7 @@ public class Font {
       Header header = new Header(tag);
       Table.Builder<? extends Table> builder = Table.Builder.getBuilder(header, null);
       tableBuilders.put(header.tag(), builder);
+      lazyHeaders.remove(header.tag());
 
       return builder;
     }
@@ -715,6 +1225,7 @@ public class Font {
       Table.Builder<? extends Table> builder = Table.Builder.getBuilder(header, data);
 
       tableBuilders.put(tag, builder);
+      lazyHeaders.remove(tag);
 
       return builder;
     }
@@ -725,28 +1236,39 @@ public class Font {
      * @return an unmodifiable view of the table builders in this font builder
      */
     public Map<Integer, Table.Builder<? extends Table>> tableBuilderMap() {
+      for (Integer tag : new ArrayList<>(lazyHeaders.keySet())) {
+        buildLazyTableBuilder(tag);
+      }
       return Collections.unmodifiableMap(tableBuilders);
     }
 
     /** @return the removed table builder */
     public Table.Builder<? extends Table> removeTableBuilder(int tag) {
+      if (lazyHeaders.containsKey(tag)) {
+        buildLazyTableBuilder(tag);
+      }
       return tableBuilders.remove(tag);
     }
 
     public int tableBuilderCount() {
-      return tableBuilders.size();
+      return tableBuilders.size() + lazyHeaders.size();
     }
 
     @SuppressWarnings("unused")
     private int sfntWrapperSize() {
-      return HeaderOffset.SIZE + tableBuilders.size() * TableOffset.SIZE;
+      return HeaderOffset.SIZE + tableBuilderCount() * TableOffset.SIZE;
     }
 
     private Map<Integer, Table.Builder<? extends Table>> buildAllTableBuilders(
         Map<Header, WritableFontData> tableData) {
       Map<Integer, Table.Builder<? extends Table>> builderMap = new HashMap<>();
+      boolean lazy = factory.loadTablesLazily() || sharedTables != null;
       tableData.forEach(
           (header, data) -> {
+            if (lazy && !isEagerlyLoadedTable(header.tag())) {
+              lazyHeaders.put(header.tag(), header);
+              return;
+            }
             Table.Builder<? extends Table> builder = getTableBuilder(header, data);
             builderMap.put(header.tag(), builder);
           });
@@ -754,13 +1276,38 @@ public class Font {
       return builderMap;
     }
 
+    /**
+     * Is the table always given a builder when a font is loaded? These tables are needed to relate
+     * the other tables to each other, so they are not left for lazy loading.
+     */
+    private static boolean isEagerlyLoadedTable(int tag) {
+      return Tag.isHeaderTable(tag) || tag == Tag.hhea || tag == Tag.maxp;
+    }
+
+    /**
+     * Creates the builder for a table whose builder was left for lazy loading.
+     *
+     * @param tag the tag of the table
+     * @return the new table builder
+     */
+    private Table.Builder<? extends Table> buildLazyTableBuilder(int tag) {
+      Header header = lazyHeaders.remove(tag);
+      Table.Builder<? extends Table> builder = getTableBuilder(header, dataBlocks.get(header));
+      tableBuilders.put(tag, builder);
+      interRelateBuilders(tableBuilders);
+      return builder;
+    }
+
     private Table.Builder<? extends Table> getTableBuilder(Header header, WritableFontData data) {
       Table.Builder<? extends Table> builder = Table.Builder.getBuilder(header, data);
       return builder;
     }
 
     private static Map<Integer, Table> buildTablesFromBuilders(
-        Font font, Map<Integer, Table.Builder<? extends Table>> builderMap) {
+        Font font,
+        Map<Integer, Table.Builder<? extends Table>> builderMap,
+        Map<Header, WritableFontData> lazyData,
+        boolean useHeaderChecksums) {
       Map<Integer, Table> tableMap = new TreeMap<>();
 
       interRelateBuilders(builderMap);
@@ -783,11 +1330,16 @@ public class Font {
         if (table == null) {
           throw new RuntimeException("Unable to build table - " + builder);
         }
-        long tableChecksum = table.calculatedChecksum();
+        long tableChecksum = tableChecksum(table, useHeaderChecksums);
         fontChecksum += tableChecksum;
         tableMap.put(table.header().tag(), table);
       }
 
+      // tables left for lazy loading are unchanged but still count towards the font checksum
+      for (Map.Entry<Header, WritableFontData> entry : lazyData.entrySet()) {
+        fontChecksum += lazyTableChecksum(entry.getKey(), entry.getValue(), useHeaderChecksums);
+      }
+
       // now fix up the header table
       Table headerTable = null;
       if (headerTableBuilder != null) {
@@ -801,7 +1353,7 @@ public class Font {
         if (headerTable == null) {
           throw new RuntimeException("Unable to build table - " + headerTableBuilder);
         }
-        fontChecksum += headerTable.calculatedChecksum();
+        fontChecksum += tableChecksum(headerTable, useHeaderChecksums);
         tableMap.put(headerTable.header().tag(), headerTable);
       }
 
@@ -911,12 +1463,52 @@ public class Font {
       return records;
     }
 
+    /**
+     * Reads the table directory of a WOFF font and gets the data for each table. The headers have
+     * the offsets of the compressed table data in the WOFF font and the lengths of the uncompressed
+     * tables. Compressed tables are inflated the first time their data is used.
+     */
+    private Map<Header, WritableFontData> loadWoffTableData(WritableFontData fd)
+        throws IOException {
+      this.sfntVersion = fd.readFixed(WoffHeaderOffset.flavor);
+      this.numTables = fd.readUShort(WoffHeaderOffset.numTables);
+      if (fd.readULong(WoffHeaderOffset.length) != fd.length()) {
+        throw new IOException("WOFF length doesn't match the length of the data.");
+      }
+
+      Map<Header, WritableFontData> tableData = new HashMap<>(numTables);
+      logger.fine("########  Reading WOFF Table Data");
+      int tableOffset = WoffHeaderOffset.SIZE;
+      for (int i = 0; i < numTables; i++, tableOffset += WoffTableOffset.SIZE) {
+        int tag = fd.readULongAsInt(tableOffset + WoffTableOffset.tag);
+        int offset = fd.readULongAsInt(tableOffset + WoffTableOffset.offset);
+        int compLength = fd.readULongAsInt(tableOffset + WoffTableOffset.compLength);
+        int origLength = fd.readULongAsInt(tableOffset + WoffTableOffset.origLength);
+        long checksum = fd.readULong(tableOffset + WoffTableOffset.origChecksum);
+        if (offset < 0 || compLength > origLength || compLength > fd.length() - offset) {
+          throw new IOException("Invalid WOFF table directory entry for " + Tag.stringValue(tag));
+        }
+        Header header = new Header(tag, checksum, offset, origLength);
+        WritableFontData data = fd.slice(offset, compLength);
+        if (compLength < origLength) {
+          data = WritableFontData.createInflatingFontData(data, origLength);
+        }
+        tableData.put(header, data);
+      }
+      return tableData;
+    }
+
     private Map<Header, WritableFontData> loadTableData(
         SortedSet<Header> headers, WritableFontData fd) {
       Map<Header, WritableFontData> tableData = new HashMap<>(headers.size());
       logger.fine("########  Reading Table Data");
       for (Header tableHeader : headers) {
-        WritableFontData data = fd.slice(tableHeader.offset(), tableHeader.length());
+        WritableFontData data;
+        if (sharedTables != null) {
+          data = sharedTables.slice(fd, tableHeader);
+        } else {
+          data = fd.slice(tableHeader.offset(), tableHeader.length());
+        }
         tableData.put(tableHeader, data);
       }
       return tableData;
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of parsed fonts keyed by the digest of the font file they were loaded from. Loading the
+ * same font data a second time returns the fonts parsed the first time rather than parsing them
+ * again. Since built {@link Font} objects are immutable and thread safe the returned fonts may be
+ * shared freely, for example by many concurrent subsetting requests for the same source font.
+ *
+ * <p>The digest is computed with the factory's {@link FontFactory#fingerprintAlgorithm()
+ * fingerprint algorithm} whether or not fingerprinting of loaded fonts is turned on.
+ *
+ * <p>The cache holds at most a fixed number of font files and evicts the least recently used one
+ * when it is full. All methods are thread safe. Two threads that miss on the same font at the same
+ * time may both parse it, but only the first result to be added is kept and returned to both.
+ */
+public final class FontCache {
+
+  private final FontFactory factory;
+  private final int maximumSize;
+  private final Map<Key, Font[]> fonts;
+
+  /**
+   * Constructs a font cache.
+   *
+   * @param factory the factory used to load fonts that are not in the cache
+   * @param maximumSize the maximum number of font files to hold
+   */
+  public FontCache(FontFactory factory, int maximumSize) {
+    if (maximumSize < 1) {
+      throw new IllegalArgumentException("Cache size must be positive.");
+    }
+    this.factory = factory;
+    this.maximumSize = maximumSize;
+    this.fonts =
+        new LinkedHashMap<Key, Font[]>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Key, Font[]> eldest) {
+            return size() > FontCache.this.maximumSize;
+          }
+        };
+  }
+
+  /**
+   * Gets the fonts in the font file given by the bytes, loading them with the factory if they are
+   * not already in the cache.
+   *
+   * @param b the font file
+   * @return the fonts in the file
+   * @throws IOException if the fonts could not be loaded
+   */
+  public Font[] loadFonts(byte[] b) throws IOException {
+    MessageDigest digest = factory.newFingerprintDigest();
+    digest.update(b);
+    Key key = new Key(digest.digest());
+    Font[] cached = get(key);
+    if (cached != null) {
+      return cached.clone();
+    }
+    return put(key, factory.loadFonts(b));
+  }
+
+  /**
+   * Gets the fonts in the font file at the given path, mapping and loading them with the factory if
+   * they are not already in the cache. The file is identified by its contents and not by its path.
+   *
+   * @param path the font file
+   * @return the fonts in the file
+   * @throws IOException if the file could not be read or the fonts could not be loaded
+   * @see FontFactory#loadFonts(Path)
+   */
+  public Font[] loadFonts(Path path) throws IOException {
+    MessageDigest digest = factory.newFingerprintDigest();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      digest.update(buffer);
+    }
+    Key key = new Key(digest.digest());
+    Font[] cached = get(key);
+    if (cached != null) {
+      return cached.clone();
+    }
+    return put(key, factory.loadFonts(path));
+  }
+
+  /**
+   * Gets the number of font files in the cache.
+   *
+   * @return the number of font files
+   */
+  public synchronized int size() {
+    return fonts.size();
+  }
+
+  /** Removes all the fonts from the cache. */
+  public synchronized void clear() {
+    fonts.clear();
+  }
+
+  private synchronized Font[] get(Key key) {
+    return fonts.get(key);
+  }
+
+  private synchronized Font[] put(Key key, Font[] loaded) {
+    Font[] cached = fonts.get(key);
+    if (cached == null) {
+      fonts.put(key, loaded);
+      cached = loaded;
+    }
+    return cached.clone();
+  }
+
+  /** A font file digest usable as a map key. */
+  private static final class Key {
+    private final byte[] digest;
+    private final int hashCode;
+
+    Key(byte[] digest) {
+      this.digest = digest;
+      this.hashCode = Arrays.hashCode(digest);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Key && Arrays.equals(digest, ((Key) obj).digest);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
@@ -17,6 +17,7 @@
 package com.google.typography.font.sfntly;
 
 import com.google.typography.font.sfntly.data.FontData;
+import com.google.typography.font.sfntly.data.FontInputStream;
 import com.google.typography.font.sfntly.data.ReadableFontData;
 import com.google.typography.font.sfntly.data.WritableFontData;
 import java.io.BufferedInputStream;
@@ -24,6 +25,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PushbackInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -31,15 +36,20 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * The font factory. This is the root class for the creation and loading of fonts.
+ * The font factory. This is the root class for the creation and loading of fonts. Fonts are loaded
+ * from TrueType and OpenType files, TrueType collections and WOFF 1.0 files.
  *
  * @author Stuart Gill
  */
 public final class FontFactory {
   private static final int LOOKAHEAD_SIZE = 4;
+  private static final int WOFF_SIGNATURE = 0x774F4646; // wOFF
 
   // font building settings
   private boolean fingerprint = false;
+  private FingerprintAlgorithm fingerprintAlgorithm = FingerprintAlgorithm.SHA1;
+  private boolean useHeaderChecksums = false;
+  private boolean loadTablesLazily = false;
 
   // font serialization settings
   List<Integer> tableOrdering;
@@ -60,6 +70,17 @@ public final class FontFactory {
     int ulDsigOffset = 8;
   }
 
+  /** The hash functions that fonts can be fingerprinted with. */
+  public enum FingerprintAlgorithm {
+    /** A SHA-1 hash. */
+    SHA1,
+    /**
+     * A 128 bit MurmurHash3. This is much faster to compute than SHA-1 but is not a cryptographic
+     * hash, so it should not be relied on where font data may be crafted to collide.
+     */
+    MURMUR3_128
+  }
+
   private FontFactory() {
     // Prevent construction.
   }
@@ -71,9 +92,10 @@ public final class FontFactory {
   // font building settings
 
   /**
-   * Toggle whether fonts that are loaded are fingerprinted with a SHA-1 hash. If a font is
-   * fingerprinted then a SHA-1 hash is generated at load time and stored in the font. This is
-   * useful for uniquely identifying fonts. By default this is turned on.
+   * Toggle whether fonts that are loaded are fingerprinted with a hash. If a font is fingerprinted
+   * then a hash of the font file is generated at load time and stored in the font. Each font in a
+   * collection gets its own digest derived from the hash of the collection file. This is useful for
+   * uniquely identifying fonts. By default this is turned off.
    *
    * @param fingerprint whether fingerprinting should be turned on or off
    * @see #fingerprintFont()
@@ -94,6 +116,75 @@ public final class FontFactory {
     return fingerprint;
   }
 
+  /**
+   * Set the hash function used to fingerprint fonts. By default this is {@link
+   * FingerprintAlgorithm#SHA1}.
+   *
+   * @param algorithm the hash function to use
+   * @see #fingerprintFont(boolean)
+   */
+  public void fingerprintAlgorithm(FingerprintAlgorithm algorithm) {
+    this.fingerprintAlgorithm = algorithm;
+  }
+
+  /**
+   * Get the hash function used to fingerprint fonts.
+   *
+   * @return the hash function
+   * @see #fingerprintAlgorithm(FingerprintAlgorithm)
+   */
+  public FingerprintAlgorithm fingerprintAlgorithm() {
+    return fingerprintAlgorithm;
+  }
+
+  /**
+   * Toggle whether the checksums recorded in the table directory of a loaded font are trusted. If
+   * they are then a table that is unchanged from the font it was read from uses the checksum in
+   * its header when building and serializing fonts rather than having it recomputed from the
+   * table data. This avoids a pass over the data of every untouched table but will carry forward
+   * any incorrect checksums in the source font. By default this is turned off.
+   *
+   * @param useHeaderChecksums whether header checksums should be used for unchanged tables
+   * @see #useHeaderChecksums()
+   */
+  public void useHeaderChecksums(boolean useHeaderChecksums) {
+    this.useHeaderChecksums = useHeaderChecksums;
+  }
+
+  /**
+   * Get the state of the option to use header checksums for unchanged tables.
+   *
+   * @return true if header checksums are used; false otherwise
+   * @see #useHeaderChecksums(boolean)
+   */
+  public boolean useHeaderChecksums() {
+    return useHeaderChecksums;
+  }
+
+  /**
+   * Toggle whether the tables of loaded fonts are parsed lazily. If they are then only the font
+   * header, horizontal header and maximum profile tables are parsed when a font is loaded; every
+   * other table builder or table is created the first time it is asked for. Tables that are never
+   * asked for are copied straight from the loaded data when the font is serialized. By default this
+   * is turned off.
+   *
+   * @param loadTablesLazily whether tables should be parsed on first use
+   * @see #loadTablesLazily()
+   */
+  public void loadTablesLazily(boolean loadTablesLazily) {
+    this.loadTablesLazily = loadTablesLazily;
+  }
+
+  /**
+   * Get the state of the lazy table loading option.
+   *
+   * @return true if tables are parsed on first use; false otherwise
+   * @see #loadTablesLazily(boolean)
+   */
+  public boolean loadTablesLazily() {
+    return loadTablesLazily;
+  }
+
   // input stream font loading
 
   /**
@@ -111,6 +202,9 @@ public final class FontFactory {
     if (isCollection(pbis)) {
       return loadCollection(pbis);
     }
+    if (isWoff(pbis)) {
+      return new Font[] {loadWoffForBuilding(readFully(pbis)).build()};
+    }
     return new Font[] {loadSingleOTF(pbis)};
   }
 
@@ -129,6 +223,9 @@ public final class FontFactory {
     if (isCollection(pbis)) {
       return loadCollectionForBuilding(pbis);
     }
+    if (isWoff(pbis)) {
+      return new Font.Builder[] {loadWoffForBuilding(readFully(pbis))};
+    }
     return new Font.Builder[] {loadSingleOTFForBuilding(pbis)};
   }
 
@@ -137,7 +234,7 @@ public final class FontFactory {
   }
 
   private Font[] loadCollection(InputStream is) throws IOException {
-    Font.Builder[] builders = loadCollectionForBuilding(is);
+    Font.Builder[] builders = loadCollectionForBuilding(is, new SharedTables());
     Font[] fonts = new Font[builders.length];
     for (int i = 0; i < fonts.length; i++) {
       fonts[i] = builders[i].build();
@@ -148,11 +245,7 @@ public final class FontFactory {
   private Font.Builder loadSingleOTFForBuilding(InputStream is) throws IOException {
     MessageDigest digest = null;
     if (fingerprintFont()) {
-      try {
-        digest = MessageDigest.getInstance("SHA-1");
-      } catch (NoSuchAlgorithmException e) {
-        throw new IOException("Unable to get requested message digest algorithm.", e);
-      }
+      digest = newFingerprintDigest();
       DigestInputStream dis = new DigestInputStream(is, digest);
       is = dis;
     }
@@ -164,10 +257,44 @@ public final class FontFactory {
   }
 
   private Font.Builder[] loadCollectionForBuilding(InputStream is) throws IOException {
-    WritableFontData wfd = WritableFontData.createWritableFontData(is.available());
-    wfd.copyFrom(is);
-    // TOOD(stuartg): add collection loading from a stream
-    return loadCollectionForBuilding(wfd);
+    return loadCollectionForBuilding(is, null);
+  }
+
+  /**
+   * @param sharedTables the tables to share between the fonts of the collection; null if each font
+   *     gets its own tables
+   */
+  private Font.Builder[] loadCollectionForBuilding(InputStream is, SharedTables sharedTables)
+      throws IOException {
+    MessageDigest digest = null;
+    if (fingerprintFont()) {
+      digest = newFingerprintDigest();
+      is = new DigestInputStream(is, digest);
+    }
+    // don't close this as the caller owns the stream
+    FontInputStream fis = new FontInputStream(is);
+    int ttcTag = fis.readULongAsInt();
+    int version = fis.readFixed();
+    int numFonts = fis.readULongAsInt();
+    int[] offsetTableOffsets = new int[numFonts];
+    for (int fontNumber = 0; fontNumber < numFonts; fontNumber++) {
+      offsetTableOffsets[fontNumber] = fis.readULongAsInt();
+    }
+    Font.Builder[] builders =
+        Font.Builder.getOTFBuilders(this, fis, offsetTableOffsets, sharedTables);
+
+    if (digest != null) {
+      // the fingerprint covers the whole collection file
+      byte[] b = new byte[8192];
+      while (fis.read(b) != -1) {
+        // read to the end of the stream
+      }
+      byte[] collectionDigest = digest.digest();
+      for (int fontNumber = 0; fontNumber < numFonts; fontNumber++) {
+        builders[fontNumber].setDigest(collectionMemberDigest(collectionDigest, fontNumber));
+      }
+    }
+    return builders;
   }
 
   private static boolean isCollection(PushbackInputStream pbis) throws IOException {
@@ -177,6 +304,20 @@ public final class FontFactory {
     return Tag.ttcf == Tag.intValue(tag);
   }
 
+  private static boolean isWoff(PushbackInputStream pbis) throws IOException {
+    byte[] tag = new byte[4];
+    pbis.read(tag);
+    pbis.unread(tag);
+    return WOFF_SIGNATURE == Tag.intValue(tag);
+  }
+
+  /** WOFF table data is read from anywhere in the font, so the whole font is read first. */
+  private static WritableFontData readFully(InputStream is) throws IOException {
+    WritableFontData wfd = WritableFontData.createWritableFontData(0);
+    wfd.copyFrom(is);
+    return wfd;
+  }
+
   // ByteArray font loading
   /**
    * Load the font(s) from the byte array. The current settings on the factory are used during the
@@ -195,6 +336,9 @@ public final class FontFactory {
     if (isCollection(rfd)) {
       return loadCollection(rfd);
     }
+    if (isWoff(rfd)) {
+      return new Font[] {loadWoffForBuilding(rfd).build()};
+    }
     return new Font[] {loadSingleOTF(rfd)};
   }
 
@@ -213,15 +357,18 @@ public final class FontFactory {
     if (isCollection(wfd)) {
       return loadCollectionForBuilding(wfd);
     }
-    return new Font.Builder[] {loadSingleOTFForBuilding(wfd, 0)};
+    if (isWoff(wfd)) {
+      return new Font.Builder[] {loadWoffForBuilding(wfd)};
+    }
+    return new Font.Builder[] {loadSingleOTFForBuilding(wfd, 0, fingerprint(wfd))};
   }
 
   private Font loadSingleOTF(WritableFontData wfd) throws IOException {
-    return loadSingleOTFForBuilding(wfd, 0).build();
+    return loadSingleOTFForBuilding(wfd, 0, fingerprint(wfd)).build();
   }
 
   private Font[] loadCollection(WritableFontData wfd) throws IOException {
-    Font.Builder[] builders = loadCollectionForBuilding(wfd);
+    Font.Builder[] builders = loadCollectionForBuilding(wfd, new SharedTables());
     Font[] fonts = new Font[builders.length];
     for (int i = 0; i < fonts.length; i++) {
       fonts[i] = builders[i].build();
@@ -229,44 +376,205 @@ public final class FontFactory {
     return fonts;
   }
 
-  private Font.Builder loadSingleOTFForBuilding(WritableFontData wfd, int offsetToOffsetTable)
+  /** @param digest the fingerprint for the font; null if fingerprinting is turned off */
+  private Font.Builder loadSingleOTFForBuilding(
+      WritableFontData wfd, int offsetToOffsetTable, byte[] digest) throws IOException {
+    return loadSingleOTFForBuilding(wfd, offsetToOffsetTable, digest, null);
+  }
+
+  /**
+   * @param digest the fingerprint for the font; null if fingerprinting is turned off
+   * @param sharedTables the tables shared with the other fonts of the collection the font is loaded
+   *     from; null if the font has its own tables
+   */
+  private Font.Builder loadSingleOTFForBuilding(
+      WritableFontData wfd, int offsetToOffsetTable, byte[] digest, SharedTables sharedTables)
       throws IOException {
-    MessageDigest digest = null;
-    if (fingerprintFont()) {
-      // TODO(stuartg): digest of ByteArray
+    Font.Builder builder =
+        Font.Builder.getOTFBuilder(this, wfd, offsetToOffsetTable, sharedTables);
+    if (digest != null) {
+      builder.setDigest(digest);
     }
-    Font.Builder builder = Font.Builder.getOTFBuilder(this, wfd, offsetToOffsetTable);
     return builder;
   }
 
   private Font.Builder[] loadCollectionForBuilding(WritableFontData wfd) throws IOException {
+    return loadCollectionForBuilding(wfd, null);
+  }
+
+  /** The fingerprint of a WOFF font is that of the WOFF file rather than the font it holds. */
+  private Font.Builder loadWoffForBuilding(WritableFontData wfd) throws IOException {
+    Font.Builder builder = Font.Builder.getWoffBuilder(this, wfd);
+    byte[] digest = fingerprint(wfd);
+    if (digest != null) {
+      builder.setDigest(digest);
+    }
+    return builder;
+  }
+
+  /**
+   * @param sharedTables the tables to share between the fonts of the collection; null if each font
+   *     gets its own tables
+   */
+  private Font.Builder[] loadCollectionForBuilding(WritableFontData wfd, SharedTables sharedTables)
+      throws IOException {
     int ttcTag = wfd.readULongAsInt(Offset.TTCTag);
     long version = wfd.readFixed(Offset.Version);
     int numFonts = wfd.readULongAsInt(Offset.numFonts);
 
+    byte[] collectionDigest = fingerprint(wfd);
     Font.Builder[] builders = new Font.Builder[numFonts];
     int offsetTableOffset = Offset.OffsetTable;
     for (int fontNumber = 0;
         fontNumber < numFonts;
         fontNumber++, offsetTableOffset += FontData.SizeOf.ULONG) {
       int offset = wfd.readULongAsInt(offsetTableOffset);
-      builders[fontNumber] = loadSingleOTFForBuilding(wfd, offset);
+      byte[] digest = null;
+      if (collectionDigest != null) {
+        digest = collectionMemberDigest(collectionDigest, fontNumber);
+      }
+      builders[fontNumber] = loadSingleOTFForBuilding(wfd, offset, digest, sharedTables);
     }
     return builders;
   }
 
+  // fingerprinting
+
+  /**
+   * Creates a new digest for the fingerprint algorithm that is set.
+   *
+   * @return a new digest
+   * @throws IOException if the digest algorithm is not available
+   */
+  MessageDigest newFingerprintDigest() throws IOException {
+    if (fingerprintAlgorithm == FingerprintAlgorithm.MURMUR3_128) {
+      return new Murmur3Digest();
+    }
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("Unable to get requested message digest algorithm.", e);
+    }
+  }
+
+  /**
+   * Computes the fingerprint of font file data in a single pass over the data.
+   *
+   * @param wfd the font file data
+   * @return the fingerprint; null if fingerprinting is turned off
+   */
+  private byte[] fingerprint(ReadableFontData wfd) throws IOException {
+    if (!fingerprintFont()) {
+      return null;
+    }
+    MessageDigest digest = newFingerprintDigest();
+    wfd.updateDigest(digest);
+    return digest.digest();
+  }
+
+  /**
+   * Derives the fingerprint of a font in a collection from the fingerprint of the collection file,
+   * so that each font in the collection is identified separately without hashing its tables again.
+   *
+   * @param collectionDigest the fingerprint of the collection file
+   * @param fontNumber the index of the font in the collection
+   * @return the fingerprint for the font
+   */
+  private byte[] collectionMemberDigest(byte[] collectionDigest, int fontNumber)
+      throws IOException {
+    MessageDigest digest = newFingerprintDigest();
+    digest.update(collectionDigest);
+    digest.update(
+        new byte[] {
+          (byte) (fontNumber >> 24), (byte) (fontNumber >> 16), (byte) (fontNumber >> 8),
+          (byte) fontNumber
+        });
+    return digest.digest();
+  }
+
+  // mapped file font loading
+
+  /**
+   * Load the font(s) from the file at the given path. The file is memory mapped rather than read
+   * onto the heap and the tables of the loaded fonts are slices of that mapping. The current
+   * settings on the factory are used during the loading process. One or more fonts are returned if
+   * the file contains valid font data. Some font container formats may have more than one font and
+   * in this case multiple font objects will be returned.
+   *
+   * @param path the path of the font file
+   * @return one or more fonts
+   */
+  public Font[] loadFonts(Path path) throws IOException {
+    WritableFontData wfd = mapFontFile(path);
+    if (isCollection(wfd)) {
+      return loadCollection(wfd);
+    }
+    if (isWoff(wfd)) {
+      return new Font[] {loadWoffForBuilding(wfd).build()};
+    }
+    return new Font[] {loadSingleOTF(wfd)};
+  }
+
+  /**
+   * Load the font(s) from the file at the given path into font builders. The file is memory mapped
+   * rather than read onto the heap and the table builders are backed by slices of that mapping.
+   * Edits to the table data are private to the builders and are never written back to the file.
+   * The current settings on the factory are used during the loading process. One or more font
+   * builders are returned if the file contains valid font data. Some font container formats may
+   * have more than one font and in this case multiple font builder objects will be returned.
+   *
+   * @param path the path of the font file
+   * @return one or more font builders
+   */
+  public Font.Builder[] loadFontsForBuilding(Path path) throws IOException {
+    WritableFontData wfd = mapFontFile(path);
+    if (isCollection(wfd)) {
+      return loadCollectionForBuilding(wfd);
+    }
+    if (isWoff(wfd)) {
+      return new Font.Builder[] {loadWoffForBuilding(wfd)};
+    }
+    return new Font.Builder[] {loadSingleOTFForBuilding(wfd, 0, fingerprint(wfd))};
+  }
+
+  private static WritableFontData mapFontFile(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return WritableFontData.createWritableFontData(channel);
+    }
+  }
+
   private static boolean isCollection(ReadableFontData rfd) {
     byte[] tag = new byte[4];
     rfd.readBytes(0, tag, 0, tag.length);
     return Tag.ttcf == Tag.intValue(tag);
   }
 
+  private static boolean isWoff(ReadableFontData rfd) {
+    return rfd.length() >= 4 && WOFF_SIGNATURE == rfd.readULongAsInt(0);
+  }
+
   // font serialization
 
   /** Serialize the font to the output stream. */
   public void serializeFont(Font font, OutputStream os) throws IOException {
     // TODO(stuartg) should have serialization options somewhere
-    font.serialize(os, tableOrdering);
+    font.serialize(os, tableOrdering, useHeaderChecksums);
+  }
+
+  /**
+   * Serialize the font to the channel. Each table is written directly from its data, so a font
+   * loaded from a mapped file is written without being copied onto the heap.
+   */
+  public void serializeFont(Font font, WritableByteChannel channel) throws IOException {
+    font.serialize(channel, tableOrdering, useHeaderChecksums);
+  }
+
+  /**
+   * Serialize the fonts to the output stream as a TrueType collection. Tables that are the same in
+   * more than one of the fonts are written once and shared by those fonts in the collection.
+   */
+  public void serializeCollection(Font[] fonts, OutputStream os) throws IOException {
+    Font.serializeCollection(fonts, os, tableOrdering, useHeaderChecksums);
   }
 
   /**
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2010 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+import java.security.MessageDigest;
+
+/**
+ * The 128 bit x64 variant of MurmurHash3 with a zero seed, as a {@link MessageDigest}. The digest
+ * bytes are the two 64 bit hash halves in little endian order, which matches other common
+ * implementations. This is a fast non-cryptographic hash used to fingerprint fonts.
+ */
+final class Murmur3Digest extends MessageDigest implements Cloneable {
+
+  static final String ALGORITHM = "Murmur3-128";
+
+  private static final int BLOCK_SIZE = 16;
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  private long h1;
+  private long h2;
+  private long length;
+  private byte[] tail = new byte[BLOCK_SIZE];
+  private int tailLength;
+
+  Murmur3Digest() {
+    super(ALGORITHM);
+  }
+
+  @Override
+  protected int engineGetDigestLength() {
+    return BLOCK_SIZE;
+  }
+
+  @Override
+  protected void engineUpdate(byte input) {
+    tail[tailLength++] = input;
+    length++;
+    if (tailLength == BLOCK_SIZE) {
+      mixBlock(tail, 0);
+      tailLength = 0;
+    }
+  }
+
+  @Override
+  protected void engineUpdate(byte[] input, int offset, int len) {
+    length += len;
+    if (tailLength > 0) {
+      int fill = Math.min(len, BLOCK_SIZE - tailLength);
+      System.arraycopy(input, offset, tail, tailLength, fill);
+      tailLength += fill;
+      offset += fill;
+      len -= fill;
+      if (tailLength < BLOCK_SIZE) {
+        return;
+      }
+      mixBlock(tail, 0);
+      tailLength = 0;
+    }
+    int end = offset + len - len % BLOCK_SIZE;
+    for (; offset < end; offset += BLOCK_SIZE) {
+      mixBlock(input, offset);
+    }
+    tailLength = len % BLOCK_SIZE;
+    System.arraycopy(input, end, tail, 0, tailLength);
+  }
+
+  @Override
+  protected byte[] engineDigest() {
+    long k1 = 0;
+    long k2 = 0;
+    for (int i = tailLength - 1; i >= 8; i--) {
+      k2 = k2 << 8 | (tail[i] & 0xff);
+    }
+    for (int i = Math.min(tailLength, 8) - 1; i >= 0; i--) {
+      k1 = k1 << 8 | (tail[i] & 0xff);
+    }
+    if (tailLength > 8) {
+      h2 ^= mixK2(k2);
+    }
+    if (tailLength > 0) {
+      h1 ^= mixK1(k1);
+    }
+
+    h1 ^= length;
+    h2 ^= length;
+    h1 += h2;
+    h2 += h1;
+    h1 = fmix(h1);
+    h2 = fmix(h2);
+    h1 += h2;
+    h2 += h1;
+
+    byte[] digest = new byte[BLOCK_SIZE];
+    for (int i = 0; i < 8; i++) {
+      digest[i] = (byte) (h1 >>> (8 * i));
+      digest[i + 8] = (byte) (h2 >>> (8 * i));
+    }
+    engineReset();
+    return digest;
+  }
+
+  @Override
+  protected void engineReset() {
+    h1 = 0;
+    h2 = 0;
+    length = 0;
+    tailLength = 0;
+  }
+
+  @Override
+  public Object clone() throws CloneNotSupportedException {
+    Murmur3Digest clone = (Murmur3Digest) super.clone();
+    clone.tail = tail.clone();
+    return clone;
+  }
+
+  private void mixBlock(byte[] b, int offset) {
+    long k1 = readLongLE(b, offset);
+    long k2 = readLongLE(b, offset + 8);
+
+    h1 ^= mixK1(k1);
+    h1 = Long.rotateLeft(h1, 27);
+    h1 += h2;
+    h1 = h1 * 5 + 0x52dce729;
+
+    h2 ^= mixK2(k2);
+    h2 = Long.rotateLeft(h2, 31);
+    h2 += h1;
+    h2 = h2 * 5 + 0x38495ab5;
+  }
+
+  private static long mixK1(long k1) {
+    return Long.rotateLeft(k1 * C1, 31) * C2;
+  }
+
+  private static long mixK2(long k2) {
+    return Long.rotateLeft(k2 * C2, 33) * C1;
+  }
+
+  private static long fmix(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  private static long readLongLE(byte[] b, int offset) {
+    long value = 0;
+    for (int i = 7; i >= 0; i--) {
+      value = value << 8 | (b[offset + i] & 0xff);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The tables of the fonts loaded from a collection. Fonts in a collection often use the same table
+ * data, such as the glyph outlines shared by the members of a CJK collection. Table data at the
+ * same offset and length in the collection file is loaded only once, and a table built from it is
+ * shared by all of the fonts that use it.
+ */
+final class SharedTables {
+
+  // table data keyed by offset and length in the collection file
+  private final Map<Long, WritableFontData> data = new HashMap<>();
+  private final Map<ReadableFontData, Table> tables = new IdentityHashMap<>();
+
+  private static long key(Header header) {
+    return (long) header.offset() << 32 | header.length();
+  }
+
+  /**
+   * Gets the data for a table, slicing it from the collection data the first time it is asked for.
+   *
+   * @param wfd the data of the whole collection
+   * @param header the header of the table
+   * @return the table data
+   */
+  WritableFontData slice(WritableFontData wfd, Header header) {
+    return data.computeIfAbsent(key(header), k -> wfd.slice(header.offset(), header.length()));
+  }
+
+  /**
+   * Gets the data that has been loaded for a table.
+   *
+   * @param header the header of the table
+   * @return the table data; null if none has been loaded
+   */
+  WritableFontData data(Header header) {
+    return data.get(key(header));
+  }
+
+  /**
+   * Sets the data loaded for a table.
+   *
+   * @param header the header of the table
+   * @param tableData the table data
+   */
+  void putData(Header header, WritableFontData tableData) {
+    data.put(key(header), tableData);
+  }
+
+  /**
+   * Gets the table built from the data, building it the first time it is asked for.
+   *
+   * @param tableData the table data
+   * @param builder builds the table if it hasn't been built yet
+   * @return the table
+   */
+  synchronized Table table(ReadableFontData tableData, Supplier<Table> builder) {
+    Table table = tables.get(tableData);
+    if (table == null) {
+      table = builder.get();
+      tables.put(tableData, table);
+    }
+    return table;
+  }
+}
@@ -19,6 +19,10 @@ package com.google.typography.font.sfntly.data;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
 
 /**
  * An abstraction to a contiguous array of bytes.
@@ -94,6 +98,63 @@ abstract class ByteArray {
     return internalGet(index, b, offset, actualLength);
   }
 
+  /**
+   * Gets the big-endian 16-bit unsigned value starting at the given index. The bounds are checked
+   * once for the whole value rather than for each byte.
+   *
+   * @param index the index into the byte array
+   * @return the value or -1 if reading beyond the bounds of the data
+   */
+  public int getUShort(int index) {
+    if (index < 0 || index > filledLength - 2) {
+      return -1;
+    }
+    return internalGetUShort(index);
+  }
+
+  /**
+   * Gets the big-endian 24-bit unsigned value starting at the given index. The bounds are checked
+   * once for the whole value rather than for each byte.
+   *
+   * @param index the index into the byte array
+   * @return the value or -1 if reading beyond the bounds of the data
+   */
+  public int getUInt24(int index) {
+    if (index < 0 || index > filledLength - 3) {
+      return -1;
+    }
+    return internalGetUInt24(index);
+  }
+
+  /**
+   * Gets the big-endian 32-bit unsigned value starting at the given index. The bounds are checked
+   * once for the whole value rather than for each byte.
+   *
+   * @param index the index into the byte array
+   * @return the value or -1 if reading beyond the bounds of the data
+   */
+  public long getULong(int index) {
+    if (index < 0 || index > filledLength - 4) {
+      return -1;
+    }
+    return internalGetInt(index) & 0xffffffffL;
+  }
+
+  /**
+   * Sums a run of consecutive big-endian 32-bit unsigned values starting at the given index. This
+   * is the inner loop of the TrueType / OpenType table checksum and reads whole words at a time.
+   *
+   * @param index the index into the byte array of the first value
+   * @param count the number of 32-bit values to sum
+   * @return the untruncated sum or -1 if reading beyond the bounds of the data
+   */
+  public long sumULongs(int index, int count) {
+    if (index < 0 || count < 0 || count > (filledLength - index) / 4) {
+      return -1;
+    }
+    return internalSumULongs(index, count);
+  }
+
   /**
    * Gets the current filled and readable length of the array.
    *
@@ -251,6 +312,62 @@ abstract class ByteArray {
     return index;
   }
 
+  /**
+   * Copies a segment of this ByteArray to a WritableByteChannel.
+   *
+   * @param channel the destination
+   * @param offset the offset in this ByteArray to start copying from
+   * @param length the maximum length in bytes to copy
+   * @return the number of bytes copied
+   */
+  public int copyTo(WritableByteChannel channel, int offset, int length) throws IOException {
+    byte[] b = new byte[COPY_BUFFER_SIZE];
+    ByteBuffer buffer = ByteBuffer.wrap(b);
+    int bytesRead;
+    int index = 0;
+    int bufferLength = Math.min(b.length, length);
+    while ((bytesRead = get(index + offset, b, 0, bufferLength)) > 0) {
+      ((Buffer) buffer).clear();
+      ((Buffer) buffer).limit(bytesRead);
+      writeFully(channel, buffer);
+      index += bytesRead;
+      bufferLength = Math.min(b.length, length - index);
+    }
+    return index;
+  }
+
+  /**
+   * Updates the digest with a segment of this ByteArray.
+   *
+   * @param digest the digest to update
+   * @param offset the offset in this ByteArray to start from
+   * @param length the maximum length in bytes to digest
+   */
+  public void updateDigest(MessageDigest digest, int offset, int length) {
+    byte[] b = new byte[COPY_BUFFER_SIZE];
+    int bytesRead;
+    int index = 0;
+    int bufferLength = Math.min(b.length, length);
+    while ((bytesRead = get(index + offset, b, 0, bufferLength)) > 0) {
+      digest.update(b, 0, bytesRead);
+      index += bytesRead;
+      bufferLength = Math.min(b.length, length - index);
+    }
+  }
+
+  /**
+   * Writes all the remaining bytes of the buffer to the channel. A non-blocking channel may accept
+   * only some of the bytes on each write.
+   *
+   * @param channel the destination
+   * @param buffer the bytes to write
+   */
+  static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
   /** Copies from the InputStream into this ByteArray. */
   public void copyFrom(InputStream is, int length) throws IOException {
     byte[] b = new byte[COPY_BUFFER_SIZE];
@@ -323,6 +440,61 @@ abstract class ByteArray {
    */
   protected abstract int internalGet(int index, byte[] b, int offset, int length);
 
+  /**
+   * Gets the big-endian 16-bit unsigned value at the index given. The index has already been bounds
+   * checked. Subclasses should override this when they can read the value more directly.
+   *
+   * @param index the location to get from
+   * @return the unsigned value stored at the index
+   */
+  protected int internalGetUShort(int index) {
+    return (internalGet(index) & 0xff) << 8 | (internalGet(index + 1) & 0xff);
+  }
+
+  /**
+   * Gets the big-endian 24-bit unsigned value at the index given. The index has already been bounds
+   * checked. Subclasses should override this when they can read the value more directly.
+   *
+   * @param index the location to get from
+   * @return the unsigned value stored at the index
+   */
+  protected int internalGetUInt24(int index) {
+    return (internalGet(index) & 0xff) << 16
+        | (internalGet(index + 1) & 0xff) << 8
+        | (internalGet(index + 2) & 0xff);
+  }
+
+  /**
+   * Gets the big-endian 32-bit value at the index given. The index has already been bounds
+   * checked. Subclasses should override this when they can read the value more directly.
+   *
+   * @param index the location to get from
+   * @return the value stored at the index as a signed int
+   */
+  protected int internalGetInt(int index) {
+    return internalGet(index) << 24
+        | (internalGet(index + 1) & 0xff) << 16
+        | (internalGet(index + 2) & 0xff) << 8
+        | (internalGet(index + 3) & 0xff);
+  }
+
+  /**
+   * Sums the big-endian 32-bit unsigned values starting at the index given. The range has already
+   * been bounds checked. Subclasses should override this when they can read the values more
+   * directly.
+   *
+   * @param index the location of the first value
+   * @param count the number of values to sum
+   * @return the untruncated sum of the values
+   */
+  protected long internalSumULongs(int index, int count) {
+    long sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += internalGetInt(index + i * 4) & 0xffffffffL;
+    }
+    return sum;
+  }
+
   /** Close this instance of the ByteArray. */
   public abstract void close();
 
@@ -18,6 +18,10 @@ package com.google.typography.font.sfntly.data;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
 
 /**
  * A growable memory implementation of the ByteArray interface.
@@ -58,6 +62,34 @@ final class GrowableMemoryByteArray extends ByteArray {
     return length;
   }
 
+  @Override
+  protected int internalGetUShort(int index) {
+    return (b[index] & 0xff) << 8 | (b[index + 1] & 0xff);
+  }
+
+  @Override
+  protected int internalGetUInt24(int index) {
+    return (b[index] & 0xff) << 16 | (b[index + 1] & 0xff) << 8 | (b[index + 2] & 0xff);
+  }
+
+  @Override
+  protected int internalGetInt(int index) {
+    return b[index] << 24
+        | (b[index + 1] & 0xff) << 16
+        | (b[index + 2] & 0xff) << 8
+        | (b[index + 3] & 0xff);
+  }
+
+  @Override
+  protected long internalSumULongs(int index, int count) {
+    IntBuffer words = ByteBuffer.wrap(b, index, count * 4).asIntBuffer();
+    long sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += words.get(i) & 0xffffffffL;
+    }
+    return sum;
+  }
+
   @Override
   public void close() {
 
@@ -70,6 +102,17 @@ final class GrowableMemoryByteArray extends ByteArray {
     return length;
   }
 
+  @Override
+  public int copyTo(WritableByteChannel channel, int offset, int length) throws IOException {
+    writeFully(channel, ByteBuffer.wrap(b, offset, length));
+    return length;
+  }
+
+  @Override
+  public void updateDigest(MessageDigest digest, int offset, int length) {
+    digest.update(b, offset, length);
+  }
+
   private void growTo(int newSize) {
     if (newSize <= b.length) {
       return;
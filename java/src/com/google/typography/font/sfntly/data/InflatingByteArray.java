@@ -0,0 +1,148 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A fixed size implementation of the ByteArray interface holding zlib compressed data, such as a
+ * table of a WOFF font. The data is only inflated the first time it is read or written, so tables
+ * that are never looked at are never decompressed.
+ */
+final class InflatingByteArray extends ByteArray {
+
+  private ReadableFontData deflated;
+  private volatile MemoryByteArray inflated;
+
+  /**
+   * Construct a new InflatingByteArray for the compressed data given.
+   *
+   * @param deflated the zlib compressed data
+   * @param length the length of the data once inflated
+   */
+  InflatingByteArray(ReadableFontData deflated, int length) {
+    super(length, length);
+    this.deflated = deflated;
+  }
+
+  /**
+   * Gets the inflated data, inflating it the first time.
+   *
+   * @throws RuntimeException if the compressed data is invalid or inflates to the wrong length
+   */
+  private MemoryByteArray inflated() {
+    MemoryByteArray array = inflated;
+    if (array != null) {
+      return array;
+    }
+    synchronized (this) {
+      if (inflated == null) {
+        byte[] input = new byte[deflated.length()];
+        deflated.readBytes(0, input, 0, input.length);
+        byte[] output = new byte[length()];
+        Inflater inflater = new Inflater();
+        try {
+          inflater.setInput(input);
+          int inflatedLength = 0;
+          while (inflatedLength < output.length && !inflater.finished()) {
+            int n = inflater.inflate(output, inflatedLength, output.length - inflatedLength);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+              break;
+            }
+            inflatedLength += n;
+          }
+          if (inflatedLength != output.length || !inflater.finished()) {
+            throw new RuntimeException("Compressed data has the wrong length.");
+          }
+        } catch (DataFormatException e) {
+          throw new RuntimeException("Invalid compressed data.", e);
+        } finally {
+          inflater.end();
+        }
+        inflated = new MemoryByteArray(output);
+        deflated = null;
+      }
+      return inflated;
+    }
+  }
+
+  @Override
+  protected void internalPut(int index, byte b) {
+    inflated().internalPut(index, b);
+  }
+
+  @Override
+  protected int internalPut(int index, byte[] b, int offset, int length) {
+    return inflated().internalPut(index, b, offset, length);
+  }
+
+  @Override
+  protected int internalGet(int index) {
+    return inflated().internalGet(index);
+  }
+
+  @Override
+  protected int internalGet(int index, byte[] b, int offset, int length) {
+    return inflated().internalGet(index, b, offset, length);
+  }
+
+  @Override
+  protected int internalGetUShort(int index) {
+    return inflated().internalGetUShort(index);
+  }
+
+  @Override
+  protected int internalGetUInt24(int index) {
+    return inflated().internalGetUInt24(index);
+  }
+
+  @Override
+  protected int internalGetInt(int index) {
+    return inflated().internalGetInt(index);
+  }
+
+  @Override
+  protected long internalSumULongs(int index, int count) {
+    return inflated().internalSumULongs(index, count);
+  }
+
+  @Override
+  public int copyTo(OutputStream os, int offset, int length) throws IOException {
+    return inflated().copyTo(os, offset, length);
+  }
+
+  @Override
+  public int copyTo(WritableByteChannel channel, int offset, int length) throws IOException {
+    return inflated().copyTo(channel, offset, length);
+  }
+
+  @Override
+  public void updateDigest(MessageDigest digest, int offset, int length) {
+    inflated().updateDigest(digest, offset, length);
+  }
+
+  @Override
+  public void close() {
+    this.deflated = null;
+    this.inflated = null;
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2010 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.data;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * A fixed size implementation of the ByteArray interface backed by a {@link ByteBuffer}, typically
+ * a {@link java.nio.MappedByteBuffer} for a font file. The contents of the buffer are not copied
+ * onto the heap so slices of very large fonts and collections can be shared without cost.
+ *
+ * <p>Files are mapped read only. Writes made through the array never reach the underlying file: the
+ * first write copies the mapped contents onto the heap and all further access uses that copy.
+ */
+final class MappedByteArray extends ByteArray {
+
+  private ByteBuffer buffer;
+
+  /**
+   * Construct a new MappedByteArray to wrap the given buffer. The buffer's contents from position
+   * zero up to its limit are used as the filled and readable data. This MappedByteArray takes
+   * ownership of the buffer and it should not be used outside of this object.
+   *
+   * @param buffer the buffer that provides the actual storage
+   */
+  MappedByteArray(ByteBuffer buffer) {
+    super(buffer.limit(), buffer.limit());
+    this.buffer = buffer;
+  }
+
+  /**
+   * Maps the whole of the file open on the given channel. The mapping remains valid after the
+   * channel has been closed.
+   *
+   * @param channel the channel for the file to map
+   * @return a new array wrapping the mapped file
+   * @throws IOException if the file is too large to map or the mapping fails
+   */
+  static MappedByteArray map(FileChannel channel) throws IOException {
+    long size = channel.size();
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("File too large to map: " + size + " bytes.");
+    }
+    return new MappedByteArray(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+  }
+
+  @Override
+  protected void internalPut(int index, byte b) {
+    writableBuffer().put(index, b);
+  }
+
+  @Override
+  protected int internalPut(int index, byte[] b, int offset, int length) {
+    ByteBuffer view = writableBuffer().duplicate();
+    ((Buffer) view).position(index);
+    view.put(b, offset, length);
+    return length;
+  }
+
+  @Override
+  protected int internalGet(int index) {
+    return buffer.get(index);
+  }
+
+  @Override
+  protected int internalGet(int index, byte[] b, int offset, int length) {
+    ByteBuffer view = buffer.duplicate();
+    ((Buffer) view).position(index);
+    view.get(b, offset, length);
+    return length;
+  }
+
+  @Override
+  protected int internalGetUShort(int index) {
+    return buffer.getShort(index) & 0xffff;
+  }
+
+  @Override
+  protected int internalGetUInt24(int index) {
+    return (buffer.getShort(index) & 0xffff) << 8 | (buffer.get(index + 2) & 0xff);
+  }
+
+  @Override
+  protected int internalGetInt(int index) {
+    return buffer.getInt(index);
+  }
+
+  @Override
+  protected long internalSumULongs(int index, int count) {
+    ByteBuffer view = buffer.duplicate();
+    ((Buffer) view).position(index);
+    IntBuffer words = view.asIntBuffer();
+    long sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += words.get(i) & 0xffffffffL;
+    }
+    return sum;
+  }
+
+  @Override
+  public int copyTo(WritableByteChannel channel, int offset, int length) throws IOException {
+    ByteBuffer view = buffer.duplicate();
+    ((Buffer) view).limit(offset + length);
+    ((Buffer) view).position(offset);
+    writeFully(channel, view);
+    return length;
+  }
+
+  @Override
+  public void updateDigest(MessageDigest digest, int offset, int length) {
+    ByteBuffer view = buffer.duplicate();
+    ((Buffer) view).limit(offset + length);
+    ((Buffer) view).position(offset);
+    digest.update(view);
+  }
+
+  /** Gets the buffer for writing, copying a read only buffer onto the heap the first time. */
+  private ByteBuffer writableBuffer() {
+    if (buffer.isReadOnly()) {
+      ByteBuffer copy = ByteBuffer.allocate(buffer.limit());
+      copy.put(buffer.duplicate());
+      this.buffer = copy;
+    }
+    return buffer;
+  }
+
+  @Override
+  public void close() {
+    this.buffer = null;
+  }
+}
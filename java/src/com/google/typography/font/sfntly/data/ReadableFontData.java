@@ -19,6 +19,8 @@ package com.google.typography.font.sfntly.data;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Date;
 
@@ -237,9 +239,18 @@ public class ReadableFontData extends FontData {
    */
   private long computeCheckSum(int lowBound, int highBound) {
     long sum = 0;
-    // checksum all whole 4-byte chunks
-    for (int i = lowBound; i <= highBound - 4; i += 4) {
-      sum += readULong(i);
+    // checksum all whole 4-byte chunks a word at a time
+    int words = highBound > lowBound ? (highBound - lowBound) / 4 : 0;
+    if (words > 0) {
+      if (!boundsCheck(lowBound, words * 4)) {
+        throw new IndexOutOfBoundsException(
+            "Index attempted to be read from is out of bounds: " + Integer.toHexString(lowBound));
+      }
+      sum = array.sumULongs(boundOffset(lowBound), words);
+      if (sum < 0) {
+        throw new IndexOutOfBoundsException(
+            "Index attempted to be read from is out of bounds: " + Integer.toHexString(lowBound));
+      }
     }
     // add last fragment if not 4-byte multiple
     int off = highBound & -4;
@@ -364,7 +375,16 @@ public class ReadableFontData extends FontData {
    * @throws IndexOutOfBoundsException if index is outside the FontData's range
    */
   public int readUShort(int index) {
-    return 0xffff & (readUByte(index) << 8 | readUByte(index + 1));
+    if (!boundsCheck(index, 2)) {
+      throw new IndexOutOfBoundsException(
+          "Index attempted to be read from is out of bounds: " + Integer.toHexString(index));
+    }
+    int us = array.getUShort(boundOffset(index));
+    if (us < 0) {
+      throw new IndexOutOfBoundsException(
+          "Index attempted to be read from is out of bounds: " + Integer.toHexString(index));
+    }
+    return us;
   }
 
   /**
@@ -374,7 +394,7 @@ public class ReadableFontData extends FontData {
    * @throws IndexOutOfBoundsException if index is outside the FontData's range
    */
   public int readShort(int index) {
-    return ((readByte(index) << 8 | readUByte(index + 1)) << 16) >> 16;
+    return (readUShort(index) << 16) >> 16;
   }
 
   /**
@@ -384,7 +404,16 @@ public class ReadableFontData extends FontData {
    * @throws IndexOutOfBoundsException if index is outside the FontData's range
    */
   public int readUInt24(int index) {
-    return 0xffffff & (readUByte(index) << 16 | readUByte(index + 1) << 8 | readUByte(index + 2));
+    if (!boundsCheck(index, 3)) {
+      throw new IndexOutOfBoundsException(
+          "Index attempted to be read from is out of bounds: " + Integer.toHexString(index));
+    }
+    int ui = array.getUInt24(boundOffset(index));
+    if (ui < 0) {
+      throw new IndexOutOfBoundsException(
+          "Index attempted to be read from is out of bounds: " + Integer.toHexString(index));
+    }
+    return ui;
   }
 
   /**
@@ -394,11 +423,16 @@ public class ReadableFontData extends FontData {
    * @throws IndexOutOfBoundsException if index is outside the FontData's range
    */
   public long readULong(int index) {
-    return 0xffffffffL
-        & (readUByte(index) << 24
-            | readUByte(index + 1) << 16
-            | readUByte(index + 2) << 8
-            | readUByte(index + 3));
+    if (!boundsCheck(index, 4)) {
+      throw new IndexOutOfBoundsException(
+          "Index attempted to be read from is out of bounds: " + Integer.toHexString(index));
+    }
+    long ul = array.getULong(boundOffset(index));
+    if (ul < 0) {
+      throw new IndexOutOfBoundsException(
+          "Index attempted to be read from is out of bounds: " + Integer.toHexString(index));
+    }
+    return ul;
   }
 
   /**
@@ -437,10 +471,7 @@ public class ReadableFontData extends FontData {
    * @throws IndexOutOfBoundsException if index is outside the FontData's range
    */
   public int readLong(int index) {
-    return readByte(index) << 24
-        | readUByte(index + 1) << 16
-        | readUByte(index + 2) << 8
-        | readUByte(index + 3);
+    return (int) readULong(index);
   }
 
   /**
@@ -522,6 +553,27 @@ public class ReadableFontData extends FontData {
     return array.copyTo(os, boundOffset(0), length());
   }
 
+  /**
+   * Copies the FontData to a WritableByteChannel. Data that is mapped from a file is written to the
+   * channel without first being copied onto the heap.
+   *
+   * @param channel the destination
+   * @return number of bytes copied
+   */
+  public int copyTo(WritableByteChannel channel) throws IOException {
+    return array.copyTo(channel, boundOffset(0), length());
+  }
+
+  /**
+   * Updates the digest with all the bytes of the FontData. Data that is mapped from a file is
+   * passed to the digest without first being copied onto the heap.
+   *
+   * @param digest the digest to update
+   */
+  public void updateDigest(MessageDigest digest) {
+    array.updateDigest(digest, boundOffset(0), length());
+  }
+
   /**
    * Copies the FontData to a WritableFontData.
    *
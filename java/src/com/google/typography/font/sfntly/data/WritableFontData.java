@@ -18,6 +18,7 @@ package com.google.typography.font.sfntly.data;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 
 /**
  * Writable font data wrapper. Supports writing of data primitives in the TrueType / OpenType spec.
@@ -85,6 +86,36 @@ public final class WritableFontData extends ReadableFontData {
     return wfd;
   }
 
+  /**
+   * Constructs a writable font data object that maps the whole file open on the channel into
+   * memory rather than copying it onto the heap. The file is mapped read only; the first write to
+   * the font data copies it onto the heap so writes are never written back to the file. The channel
+   * may be closed once this returns.
+   *
+   * @param channel the channel of the file to map
+   * @return a new writable font data
+   * @throws IOException if the file could not be mapped
+   */
+  public static WritableFontData createWritableFontData(FileChannel channel) throws IOException {
+    ByteArray ba = MappedByteArray.map(channel);
+    WritableFontData wfd = new WritableFontData(ba);
+    return wfd;
+  }
+
+  /**
+   * Constructs a writable font data object for zlib compressed data. The data is inflated the
+   * first time it is read or written rather than when the font data object is created.
+   *
+   * @param deflated the zlib compressed data
+   * @param length the length of the data once inflated
+   * @return a new writable font data
+   */
+  public static WritableFontData createInflatingFontData(ReadableFontData deflated, int length) {
+    ByteArray ba = new InflatingByteArray(deflated, length);
+    WritableFontData wfd = new WritableFontData(ba);
+    return wfd;
+  }
+
   /** @param array byte array to wrap */
   private WritableFontData(ByteArray array) {
     super(array);
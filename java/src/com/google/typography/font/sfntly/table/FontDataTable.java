@@ -185,6 +185,12 @@ public abstract class FontDataTable {
       return wData;
     }
 
+    /**
+     * Gets the internal data for writing in place. The data is considered changed from this point
+     * on since the builder can't track what the caller writes to it.
+     *
+     * @return the writable internal data
+     */
     protected WritableFontData internalWriteData() {
       if (wData == null) {
         WritableFontData newData =
@@ -194,6 +200,7 @@ public abstract class FontDataTable {
         }
         internalSetData(newData, false);
       }
+      this.dataChanged = true;
       return wData;
     }
 
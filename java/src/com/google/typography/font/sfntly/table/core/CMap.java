@@ -168,6 +168,10 @@ public abstract class CMap extends SubTable implements Iterable<Integer> {
 
     protected abstract int getRangeStart(int rangeIndex);
 
+    /**
+     * Gets the end of a range, which is one past the last character in the range. Note that cmap
+     * subtables store the last character itself.
+     */
     protected abstract int getRangeEnd(int rangeIndex);
   }
 
@@ -350,6 +354,8 @@ public abstract class CMap extends SubTable implements Iterable<Integer> {
           return new CMapFormat0.Builder(null, 0, cmapId);
         case Format4:
           return new CMapFormat4.Builder(null, 0, cmapId);
+        case Format12:
+          return new CMapFormat12.Builder(null, 0, cmapId);
         default:
           break;
       }
@@ -1,8 +1,11 @@
 package com.google.typography.font.sfntly.table.core;
 
+import com.google.typography.font.sfntly.data.FontData;
 import com.google.typography.font.sfntly.data.ReadableFontData;
 import com.google.typography.font.sfntly.data.WritableFontData;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * The cmap format 12 subtable maps segmented ranges of 32-bit character codes to 32-bit glyph IDs.
@@ -82,11 +85,43 @@ public final class CMapFormat12 extends CMap {
 
     @Override
     protected int getRangeEnd(int rangeIndex) {
-      return groupEndChar(rangeIndex);
+      return groupEndChar(rangeIndex) + 1;
     }
   }
 
   public static class Builder extends CMap.Builder<CMapFormat12> {
+    /** A range of consecutive character codes mapped to consecutive glyph ids. */
+    public static final class Group {
+      private final int startCharCode;
+      private final int endCharCode;
+      private final int startGlyphId;
+
+      public Group(int startCharCode, int endCharCode, int startGlyphId) {
+        this.startCharCode = startCharCode;
+        this.endCharCode = endCharCode;
+        this.startGlyphId = startGlyphId;
+      }
+
+      public int getStartCharCode() {
+        return startCharCode;
+      }
+
+      public int getEndCharCode() {
+        return endCharCode;
+      }
+
+      public int getStartGlyphId() {
+        return startGlyphId;
+      }
+
+      @Override
+      public String toString() {
+        return String.format("[0x%04x - 0x%04x] => %d", startCharCode, endCharCode, startGlyphId);
+      }
+    }
+
+    private List<Group> groups;
+
     protected Builder(WritableFontData data, int offset, CMapTable.CMapId cmapId) {
       super(
           data == null ? null : data.slice(offset, data.readULongAsInt(offset + Header.length)),
@@ -101,9 +136,93 @@ public final class CMapFormat12 extends CMap {
           cmapId);
     }
 
+    private void initialize(ReadableFontData data) {
+      this.groups = new ArrayList<>();
+      if (data == null || data.length() == 0) {
+        return;
+      }
+      int numberOfGroups = data.readULongAsInt(Header.nGroups);
+      for (int i = 0; i < numberOfGroups; i++) {
+        int offset = Header.groups + i * CMapFormat12.Group.SIZE;
+        groups.add(
+            new Builder.Group(
+                data.readULongAsInt(offset + CMapFormat12.Group.startCharCode),
+                data.readULongAsInt(offset + CMapFormat12.Group.endCharCode),
+                data.readULongAsInt(offset + CMapFormat12.Group.startGlyphId)));
+      }
+    }
+
+    /**
+     * Gets the groups of the cmap. These may be changed and the changes will be reflected in the
+     * cmap built.
+     *
+     * @return the groups, in increasing character code order
+     */
+    public List<Builder.Group> getGroups() {
+      if (groups == null) {
+        initialize(internalReadData());
+        setModelChanged();
+      }
+      return groups;
+    }
+
+    /**
+     * Sets the groups of the cmap. The groups must be in increasing character code order and must
+     * not overlap.
+     *
+     * @param groups the groups
+     */
+    public void setGroups(List<Builder.Group> groups) {
+      this.groups = new ArrayList<>(groups);
+      setModelChanged();
+    }
+
     @Override
     protected CMapFormat12 subBuildTable(ReadableFontData data) {
       return new CMapFormat12(data, cmapId());
     }
+
+    @Override
+    protected void subDataSet() {
+      this.groups = null;
+      super.setModelChanged(false);
+    }
+
+    @Override
+    protected int subDataSizeToSerialize() {
+      if (!modelChanged()) {
+        return super.subDataSizeToSerialize();
+      }
+      return Header.groups + groups.size() * CMapFormat12.Group.SIZE;
+    }
+
+    @Override
+    protected boolean subReadyToSerialize() {
+      if (!modelChanged()) {
+        return super.subReadyToSerialize();
+      }
+      return groups != null;
+    }
+
+    @Override
+    protected int subSerialize(WritableFontData newData) {
+      if (!modelChanged()) {
+        return super.subSerialize(newData);
+      }
+
+      int index = 0;
+      index += newData.writeUShort(index, CMap.CMapFormat.Format12.value());
+      index += FontData.SizeOf.USHORT; // reserved
+      index += FontData.SizeOf.ULONG; // length - write this at the end
+      index += newData.writeULong(index, language());
+      index += newData.writeULong(index, groups.size());
+      for (Builder.Group group : groups) {
+        index += newData.writeULong(index, group.getStartCharCode());
+        index += newData.writeULong(index, group.getEndCharCode());
+        index += newData.writeULong(index, group.getStartGlyphId());
+      }
+      newData.writeULong(Header.length, index);
+      return index;
+    }
   }
 }
@@ -82,7 +82,7 @@ public final class CMapFormat13 extends CMap {
 
     @Override
     protected int getRangeEnd(int rangeIndex) {
-      return groupEndChar(rangeIndex);
+      return groupEndChar(rangeIndex) + 1;
     }
   }
 
@@ -219,7 +219,7 @@ public final class CMapFormat4 extends CMap {
 
     @Override
     protected int getRangeEnd(int rangeIndex) {
-      return endCode(rangeIndex);
+      return endCode(rangeIndex) + 1;
     }
   }
 
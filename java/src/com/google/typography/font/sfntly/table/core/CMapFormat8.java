@@ -76,7 +76,7 @@ public final class CMapFormat8 extends CMap {
 
     @Override
     protected int getRangeEnd(int rangeIndex) {
-      return endChar(rangeIndex);
+      return endChar(rangeIndex) + 1;
     }
   }
 
@@ -10,7 +10,7 @@ import com.google.typography.font.sfntly.table.opentype.component.VisibleSubTabl
 
 public class ReverseChainSingleSubst extends SubstSubtable {
   private static final int FIELD_COUNT = 1;
-  private static final int COVERAGE_INDEX = 2;
+  private static final int COVERAGE_INDEX = 1;
 
   public final CoverageTable coverage;
   public final CoverageArray backtrackGlyphs;
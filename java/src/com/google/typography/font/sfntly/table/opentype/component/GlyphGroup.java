@@ -76,6 +76,27 @@ public class GlyphGroup extends BitSet implements Iterable<Integer> {
     return get(glyph) ^ inverse;
   }
 
+  /**
+   * Whether the group is inverse, holding every glyph except the ones set, such as the glyphs of
+   * class 0 of a class definition.
+   */
+  boolean isInverse() {
+    return inverse;
+  }
+
+  /** Whether the group contains any of the glyphs. */
+  boolean containsAny(GlyphGroup glyphs) {
+    if (!inverse) {
+      return intersects(glyphs);
+    }
+    for (int glyph = glyphs.nextSetBit(0); glyph >= 0; glyph = glyphs.nextSetBit(glyph + 1)) {
+      if (!get(glyph)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   public int size() {
     return cardinality();
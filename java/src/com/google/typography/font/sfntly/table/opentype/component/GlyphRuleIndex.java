@@ -0,0 +1,249 @@
+package com.google.typography.font.sfntly.table.opentype.component;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.opentype.GSubTable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.IntFunction;
+
+/**
+ * The GSUB rules of a font indexed by the glyphs they match on, for computing glyph closures. The
+ * index is built once and can be used for any number of closures.
+ *
+ * <p>The index is immutable and may be shared by threads. The rules for each glyph and the glyphs
+ * substituted by each rule are held in flat int arrays, with the entries for glyph or rule {@code
+ * i} running from {@code starts[i]} to {@code starts[i + 1]}. A position that matches any glyph
+ * not in a set, such as class 0 of a class definition, can't be indexed by glyph, so a rule with
+ * such a position is indexed by its other positions. Only the rules with no other positions are
+ * checked whenever a glyph is added.
+ */
+public final class GlyphRuleIndex {
+  private static final int[] NO_GLYPHS = {};
+  private static final GlyphRuleIndex EMPTY = new GlyphRuleIndex(Collections.<Rule>emptySet());
+
+  // indexes of the fonts' GSUB tables, built by the first thread to ask for them; fonts sharing a
+  // table share its index
+  private static final Map<GSubTable, FutureTask<GlyphRuleIndex>> cache = new WeakHashMap<>();
+
+  private final Rule[] rules;
+  private final int[] ruleStarts;
+  private final int[] ruleIds;
+  private final int[] substStarts;
+  private final int[] substGlyphs;
+  // the rules with a position matching any glyph not in a set
+  private final BitSet inverseRules;
+  // the rules whose positions all match any glyph not in a set, which have no glyphs to index
+  private final int[] unindexedRuleIds;
+
+  GlyphRuleIndex(Collection<Rule> rules) {
+    this.rules = rules.toArray(new Rule[0]);
+
+    GlyphGroup[] contexts = new GlyphGroup[this.rules.length];
+    GlyphGroup[] substs = new GlyphGroup[this.rules.length];
+    int glyphCount = 0;
+    substStarts = new int[this.rules.length + 1];
+    inverseRules = new BitSet(this.rules.length);
+    int[] unindexedRules = new int[this.rules.length];
+    int unindexedRuleCount = 0;
+    for (int i = 0; i < this.rules.length; i++) {
+      contexts[i] = this.rules[i].contextGlyphs();
+      if (this.rules[i].hasInverseContext()) {
+        inverseRules.set(i);
+        if (contexts[i].isEmpty()) {
+          unindexedRules[unindexedRuleCount++] = i;
+        }
+      }
+      glyphCount = Math.max(glyphCount, contexts[i].length());
+      substs[i] = new GlyphGroup();
+      for (GlyphGroup glyphGroup : this.rules[i].subst) {
+        substs[i].or(glyphGroup);
+      }
+      substStarts[i + 1] = substStarts[i] + substs[i].cardinality();
+    }
+    unindexedRuleIds = Arrays.copyOf(unindexedRules, unindexedRuleCount);
+
+    ruleStarts = new int[glyphCount + 1];
+    for (GlyphGroup context : contexts) {
+      for (int glyph = context.nextSetBit(0); glyph >= 0; glyph = context.nextSetBit(glyph + 1)) {
+        ruleStarts[glyph + 1]++;
+      }
+    }
+    for (int glyph = 0; glyph < glyphCount; glyph++) {
+      ruleStarts[glyph + 1] += ruleStarts[glyph];
+    }
+    ruleIds = new int[ruleStarts[glyphCount]];
+    int[] next = Arrays.copyOf(ruleStarts, glyphCount);
+    for (int i = 0; i < contexts.length; i++) {
+      GlyphGroup context = contexts[i];
+      for (int glyph = context.nextSetBit(0); glyph >= 0; glyph = context.nextSetBit(glyph + 1)) {
+        ruleIds[next[glyph]++] = i;
+      }
+    }
+
+    substGlyphs = new int[substStarts[this.rules.length]];
+    for (int i = 0; i < substs.length; i++) {
+      int index = substStarts[i];
+      GlyphGroup subst = substs[i];
+      for (int glyph = subst.nextSetBit(0); glyph >= 0; glyph = subst.nextSetBit(glyph + 1)) {
+        substGlyphs[index++] = glyph;
+      }
+    }
+  }
+
+  /**
+   * Gets the index of the rules of the features of a font. The index is built the first time it is
+   * asked for and kept for as long as the font's GSUB table is in use. The index is built outside
+   * the cache lock, so building one font's index only holds up the threads asking for that font.
+   */
+  public static GlyphRuleIndex forFont(Font font) {
+    GSubTable gsub = font.getTable(Tag.GSUB);
+    if (gsub == null) {
+      return EMPTY;
+    }
+    FutureTask<GlyphRuleIndex> future;
+    boolean build = false;
+    synchronized (cache) {
+      future = cache.get(gsub);
+      if (future == null) {
+        future =
+            new FutureTask<>(
+                () -> {
+                  Set<Rule> rules = Rule.featuredRules(font);
+                  return new GlyphRuleIndex(rules != null ? rules : Collections.<Rule>emptySet());
+                });
+        cache.put(gsub, future);
+        build = true;
+      }
+    }
+    if (build) {
+      future.run();
+    }
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      synchronized (cache) {
+        // let a later call try again
+        cache.remove(gsub, future);
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for a glyph rule index.", e);
+    }
+  }
+
+  /** Gets the indexed rules. */
+  List<Rule> rules() {
+    return Collections.unmodifiableList(Arrays.asList(rules));
+  }
+
+  /** Adds the glyphs that the rules can substitute for the glyphs, and returns them. */
+  public GlyphGroup closure(GlyphGroup glyphs) {
+    return closure(glyphs, glyph -> NO_GLYPHS);
+  }
+
+  /**
+   * Adds the glyphs that the rules can substitute for the glyphs, and returns them. Each glyph that
+   * is added is only checked against the rules that match on it, so a rule is only looked at again
+   * when one of its glyphs has been added.
+   *
+   * <p>A rule with a position that matches any glyph not in a set can have all its other positions
+   * matched before any glyph for that position has been added. The rule then waits, and is checked
+   * again whenever a glyph that its position matches is added, until it applies. The rules with no
+   * other positions wait from the start.
+   *
+   * @param glyphs the glyphs to add to
+   * @param referencedGlyphs gets the glyphs that a glyph refers to, such as the components of a
+   *     composite glyph, which are added along with it
+   * @return the glyphs
+   */
+  public GlyphGroup closure(GlyphGroup glyphs, IntFunction<int[]> referencedGlyphs) {
+    GlyphStack pending = new GlyphStack(Math.max(16, glyphs.size()));
+    for (int glyph = glyphs.nextSetBit(0); glyph >= 0; glyph = glyphs.nextSetBit(glyph + 1)) {
+      pending.push(glyph);
+    }
+    BitSet applied = new BitSet(rules.length);
+    BitSet waiting = new BitSet(rules.length);
+    for (int rule : unindexedRuleIds) {
+      waiting.set(rule);
+    }
+    while (pending.size > 0) {
+      int glyph = pending.pop();
+      for (int referenced : referencedGlyphs.apply(glyph)) {
+        if (!glyphs.get(referenced)) {
+          glyphs.add(referenced);
+          pending.push(referenced);
+        }
+      }
+      int start = glyph + 1 < ruleStarts.length ? ruleStarts[glyph] : 0;
+      int end = glyph + 1 < ruleStarts.length ? ruleStarts[glyph + 1] : 0;
+      for (int i = start; i < end; i++) {
+        int rule = ruleIds[i];
+        if (applied.get(rule)) {
+          continue;
+        }
+        if (rules[rule].matches(glyphs)) {
+          waiting.clear(rule);
+          apply(rule, applied, glyphs, pending);
+        } else if (inverseRules.get(rule) && rules[rule].matchesIgnoringInverse(glyphs)) {
+          waiting.set(rule);
+        }
+      }
+      for (int rule = waiting.nextSetBit(0); rule >= 0; rule = waiting.nextSetBit(rule + 1)) {
+        if (rules[rule].matchesInverse(glyph) && rules[rule].matches(glyphs)) {
+          waiting.clear(rule);
+          apply(rule, applied, glyphs, pending);
+        }
+      }
+    }
+    return glyphs;
+  }
+
+  private void apply(int rule, BitSet applied, GlyphGroup glyphs, GlyphStack pending) {
+    applied.set(rule);
+    for (int j = substStarts[rule]; j < substStarts[rule + 1]; j++) {
+      int substitute = substGlyphs[j];
+      if (!glyphs.get(substitute)) {
+        glyphs.add(substitute);
+        pending.push(substitute);
+      }
+    }
+  }
+
+  /** The glyphs added to a closure that are yet to be checked against the rules. */
+  private static final class GlyphStack {
+    int[] glyphs;
+    int size;
+
+    GlyphStack(int capacity) {
+      glyphs = new int[capacity];
+    }
+
+    void push(int glyph) {
+      if (size == glyphs.length) {
+        glyphs = Arrays.copyOf(glyphs, 2 * size);
+      }
+      glyphs[size++] = glyph;
+    }
+
+    int pop() {
+      return glyphs[--size];
+    }
+  }
+}
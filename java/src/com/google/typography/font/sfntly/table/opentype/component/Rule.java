@@ -14,6 +14,7 @@ import com.google.typography.font.sfntly.table.opentype.LookupListTable;
 import com.google.typography.font.sfntly.table.opentype.ScriptListTable;
 import com.google.typography.font.sfntly.table.opentype.ScriptTable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -40,50 +41,102 @@ public class Rule {
   public static GlyphGroup charGlyphClosure(Font font, String txt) {
     CMapTable cmapTable = font.getTable(Tag.cmap);
     GlyphGroup glyphGroup = glyphGroupForText(txt, cmapTable);
-
-    Set<Rule> featuredRules = featuredRules(font);
-    Map<Integer, Set<Rule>> glyphRuleMap = createGlyphRuleMap(featuredRules);
-    GlyphGroup ruleClosure = closure(glyphRuleMap, glyphGroup);
-    return ruleClosure;
+    return GlyphRuleIndex.forFont(font).closure(glyphGroup);
   }
 
   public static GlyphGroup closure(Map<Integer, Set<Rule>> glyphRuleMap, GlyphGroup glyphs) {
-    int prevSize = 0;
-    while (glyphs.size() > prevSize) {
-      prevSize = glyphs.size();
-      for (Rule rule : rulesForGlyph(glyphRuleMap, glyphs)) {
-        rule.addMatchingTargetGlyphs(glyphs);
+    Set<Rule> rules = new LinkedHashSet<>();
+    for (Set<Rule> glyphRules : glyphRuleMap.values()) {
+      rules.addAll(glyphRules);
+    }
+    return new GlyphRuleIndex(rules).closure(glyphs);
+  }
+
+  /**
+   * Gets the glyphs that the rule matches on, in its input, backtrack and look ahead. Positions
+   * that match any glyph not in a set, such as class 0, are left out; see {@link
+   * #hasInverseContext()}.
+   */
+  GlyphGroup contextGlyphs() {
+    GlyphGroup glyphs = new GlyphGroup();
+    for (RuleSegment seg : new RuleSegment[] {input, backtrack, lookAhead}) {
+      if (seg == null) {
+        continue;
+      }
+      for (GlyphGroup g : seg) {
+        if (!g.isInverse()) {
+          glyphs.or(g);
+        }
       }
     }
     return glyphs;
   }
 
-  private void addMatchingTargetGlyphs(GlyphGroup glyphs) {
+  /** Whether a position of the rule matches any glyph not in a set, such as class 0. */
+  boolean hasInverseContext() {
     for (RuleSegment seg : new RuleSegment[] {input, backtrack, lookAhead}) {
       if (seg == null) {
         continue;
       }
       for (GlyphGroup g : seg) {
-        if (!g.intersects(glyphs)) {
-          return;
+        if (g.isInverse()) {
+          return true;
         }
       }
     }
+    return false;
+  }
+
+  /** Whether every position of the rule can match one of the glyphs. */
+  boolean matches(GlyphGroup glyphs) {
+    return matches(glyphs, false);
+  }
+
+  /**
+   * Whether every position of the rule that matches glyphs in a set can match one of the glyphs,
+   * leaving out the positions that match any glyph not in a set.
+   */
+  boolean matchesIgnoringInverse(GlyphGroup glyphs) {
+    return matches(glyphs, true);
+  }
 
-    for (GlyphGroup glyphGroup : subst) {
-      glyphs.addAll(glyphGroup);
+  private boolean matches(GlyphGroup glyphs, boolean ignoreInverse) {
+    for (RuleSegment seg : new RuleSegment[] {input, backtrack, lookAhead}) {
+      if (seg == null) {
+        continue;
+      }
+      for (GlyphGroup g : seg) {
+        if (!(ignoreInverse && g.isInverse()) && !g.containsAny(glyphs)) {
+          return false;
+        }
+      }
     }
+    return true;
+  }
+
+  /** Whether the glyph can match one of the rule's positions that match any glyph not in a set. */
+  boolean matchesInverse(int glyph) {
+    for (RuleSegment seg : new RuleSegment[] {input, backtrack, lookAhead}) {
+      if (seg == null) {
+        continue;
+      }
+      for (GlyphGroup g : seg) {
+        if (g.isInverse() && g.contains(glyph)) {
+          return true;
+        }
+      }
+    }
+    return false;
   }
 
   public static Map<Integer, Set<Rule>> glyphRulesMap(Font font) {
-    Set<Rule> featuredRules = featuredRules(font);
-    if (featuredRules == null) {
+    if (font.getTable(Tag.GSUB) == null) {
       return null;
     }
-    return createGlyphRuleMap(featuredRules);
+    return createGlyphRuleMap(GlyphRuleIndex.forFont(font).rules());
   }
 
-  private static Map<Integer, Set<Rule>> createGlyphRuleMap(Set<Rule> lookupRules) {
+  private static Map<Integer, Set<Rule>> createGlyphRuleMap(Collection<Rule> lookupRules) {
     Map<Integer, Set<Rule>> map = new HashMap<>();
 
     for (Rule rule : lookupRules) {
@@ -97,16 +150,6 @@ public class Rule {
     return map;
   }
 
-  private static Set<Rule> rulesForGlyph(Map<Integer, Set<Rule>> glyphRuleMap, GlyphGroup glyphs) {
-    Set<Rule> set = new HashSet<>();
-    for (int glyph : glyphs) {
-      if (glyphRuleMap.containsKey(glyph)) {
-        set.addAll(glyphRuleMap.get(glyph));
-      }
-    }
-    return set;
-  }
-
   private static Set<Rule> featuredRules(Set<Integer> lookupIds, Map<Integer, Set<Rule>> ruleMap) {
     Set<Rule> rules = new LinkedHashSet<>();
     for (int lookupId : lookupIds) {
@@ -128,8 +171,6 @@ public class Rule {
 
     ScriptListTable scripts = gsub.scriptList();
     FeatureListTable featureList = gsub.featureList();
-    LookupListTable lookupList = gsub.lookupList();
-    Map<Integer, Set<Rule>> ruleMap = RuleExtractor.extract(lookupList);
 
     Set<Integer> features = new HashSet<>();
     Set<Integer> lookupIds = new HashSet<>();
@@ -151,7 +192,7 @@ public class Rule {
     return lookupIds;
   }
 
-  private static Set<Rule> featuredRules(Font font) {
+  static Set<Rule> featuredRules(Font font) {
     GSubTable gsub = font.getTable(Tag.GSUB);
     if (gsub == null) {
       return null;
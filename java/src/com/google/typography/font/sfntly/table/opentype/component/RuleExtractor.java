@@ -450,7 +450,11 @@ public class RuleExtractor {
 
   private static RuleSegment extract(
       int firstInputClass, NumRecordList inputClasses, Map<Integer, GlyphGroup> classDef) {
-    RuleSegment input = new RuleSegment(classDef.get(firstInputClass));
+    GlyphGroup firstGlyphs = classDef.get(firstInputClass);
+    if (firstGlyphs == null && firstInputClass == 0) {
+      firstGlyphs = GlyphGroup.inverseGlyphGroup(classDef.values());
+    }
+    RuleSegment input = new RuleSegment(firstGlyphs);
     for (NumRecord inputClass : inputClasses) {
       int classId = inputClass.value;
       GlyphGroup glyphs = classDef.get(classId);
@@ -72,6 +72,7 @@ public final class CompositeGlyph extends Glyph {
         nonPaddedDataLength = index + (instructionSize * FontData.SizeOf.BYTE);
       }
       setPadding(dataLength() - nonPaddedDataLength);
+      this.initialized = true;
     }
   }
 
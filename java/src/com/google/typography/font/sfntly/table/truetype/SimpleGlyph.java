@@ -61,6 +61,7 @@ public final class SimpleGlyph extends Glyph {
         this.flagsOffset = 0;
         this.xCoordinatesOffset = 0;
         this.yCoordinatesOffset = 0;
+        this.initialized = true;
         return;
       }
       this.instructionSize =
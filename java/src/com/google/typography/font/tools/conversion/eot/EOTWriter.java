@@ -26,6 +26,7 @@ import com.google.typography.font.sfntly.table.core.NameTable;
 import com.google.typography.font.sfntly.table.core.OS2Table;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 /** @author Jeremie Lenfant-Engelmann */
 public class EOTWriter {
@@ -33,6 +34,7 @@ public class EOTWriter {
   private final boolean compressed;
 
   private final FontFactory factory = FontFactory.getInstance();
+  private Executor executor;
 
   private static final long RESERVED = 0;
   private static final short PADDING = 0;
@@ -51,10 +53,18 @@ public class EOTWriter {
     this.compressed = compressed;
   }
 
+  /**
+   * Set the executor used to compress the font data in parallel when writing compressed EOT fonts.
+   * By default there is no executor and all the work is done on the calling thread.
+   *
+   * @param executor the executor to compress on; null to compress on the calling thread
+   * @see MtxWriter#setExecutor(Executor)
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
   public WritableFontData convert(Font font) throws IOException {
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    factory.serializeFont(font, baos);
-    byte[] fontData = baos.toByteArray();
     NameTable name = font.getTable(Tag.name);
     byte[] familyName = convertUTF16StringToLittleEndian(name.nameAsBytes(3, 1, 0x409, 1));
     byte[] styleName = convertUTF16StringToLittleEndian(name.nameAsBytes(3, 1, 0x409, 2));
@@ -62,10 +72,16 @@ public class EOTWriter {
     byte[] fullName = convertUTF16StringToLittleEndian(name.nameAsBytes(3, 1, 0x409, 4));
     long flags = DEFAULT_FLAGS;
 
+    byte[] fontData;
     if (compressed) {
       flags |= FLAGS_TT_COMPRESSED;
       MtxWriter mtxWriter = new MtxWriter();
+      mtxWriter.setExecutor(executor);
       fontData = mtxWriter.compress(font);
+    } else {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      factory.serializeFont(font, baos);
+      fontData = baos.toByteArray();
     }
 
     long eotSize =
@@ -26,6 +26,9 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /** @author Raph Levien */
 public class MtxWriter {
@@ -43,6 +46,21 @@ public class MtxWriter {
     return Collections.unmodifiableSet(result);
   }
 
+  private Executor executor;
+
+  /**
+   * Set the executor used to compress the blocks of the MTX container in parallel. The push data
+   * and code data blocks are compressed on the executor while the font tables block is compressed
+   * on the calling thread. The blocks are independent, so the result is the same as when they are
+   * compressed one after another. By default there is no executor and all the work is done on the
+   * calling thread.
+   *
+   * @param executor the executor to compress blocks on; null to compress them on the calling thread
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
   public byte[] compress(Font sfntlyFont) {
     MtxFontBuilder fontBuilder = new MtxFontBuilder();
     for (Map.Entry<Integer, ? extends Table> entry : sfntlyFont.tableMap().entrySet()) {
@@ -74,7 +92,7 @@ public class MtxWriter {
     byte[] block1 = fontBuilder.build();
     byte[] block2 = glyfEncoder.getPushBytes();
     byte[] block3 = glyfEncoder.getCodeBytes();
-    return packMtx(block1, block2, block3);
+    return packMtx(block1, block2, block3, executor);
   }
 
   private static void writeBE24(byte[] data, int value, int off) {
@@ -84,13 +102,26 @@ public class MtxWriter {
   }
 
   /** Compress the blocks and pack them into the final container, as per section 2 of the spec. */
-  private static byte[] packMtx(byte[] block1, byte[] block2, byte[] block3) {
+  private static byte[] packMtx(byte[] block1, byte[] block2, byte[] block3, Executor executor) {
     int copyDist =
         Math.max(block1.length, Math.max(block2.length, block3.length))
             + LzcompCompress.getPreloadSize();
-    byte[] compressed1 = LzcompCompress.compress(block1);
-    byte[] compressed2 = LzcompCompress.compress(block2);
-    byte[] compressed3 = LzcompCompress.compress(block3);
+    byte[] compressed1;
+    byte[] compressed2;
+    byte[] compressed3;
+    if (executor == null) {
+      compressed1 = LzcompCompress.compress(block1);
+      compressed2 = LzcompCompress.compress(block2);
+      compressed3 = LzcompCompress.compress(block3);
+    } else {
+      CompletableFuture<byte[]> future2 =
+          CompletableFuture.supplyAsync(() -> LzcompCompress.compress(block2), executor);
+      CompletableFuture<byte[]> future3 =
+          CompletableFuture.supplyAsync(() -> LzcompCompress.compress(block3), executor);
+      compressed1 = LzcompCompress.compress(block1);
+      compressed2 = join(future2);
+      compressed3 = join(future3);
+    }
     int resultSize = 10 + compressed1.length + compressed2.length + compressed3.length;
     byte[] result = new byte[resultSize];
     result[0] = 3;
@@ -104,4 +135,19 @@ public class MtxWriter {
     System.arraycopy(compressed3, 0, result, offset3, compressed3.length);
     return result;
   }
+
+  private static byte[] join(CompletableFuture<byte[]> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.zip.Deflater;
+
+/**
+ * A pool of idle {@link Deflater}s. A deflater holds native zlib memory that is only freed by
+ * {@link Deflater#end()} or by finalization, so deflaters are reused rather than created for each
+ * table, and the ones that don't fit in the pool are ended as soon as they are released.
+ */
+final class DeflaterPool {
+
+  private final int maximumIdle;
+  private final Deque<Deflater> idle = new ArrayDeque<>();
+
+  /**
+   * Constructs a deflater pool.
+   *
+   * @param maximumIdle the maximum number of idle deflaters to keep
+   */
+  DeflaterPool(int maximumIdle) {
+    this.maximumIdle = maximumIdle;
+  }
+
+  /**
+   * Gets a deflater from the pool, or a new one if the pool is empty. The deflater must be given
+   * back with {@link #release(Deflater)} when it is no longer needed.
+   *
+   * @param level the compression level to set
+   * @return a deflater ready for new input
+   */
+  Deflater acquire(int level) {
+    Deflater deflater;
+    synchronized (idle) {
+      deflater = idle.poll();
+    }
+    if (deflater == null) {
+      deflater = new Deflater();
+    }
+    deflater.setLevel(level);
+    return deflater;
+  }
+
+  /**
+   * Gives a deflater back to the pool. It is reset for reuse, or ended if the pool is full.
+   *
+   * @param deflater the deflater to release
+   */
+  void release(Deflater deflater) {
+    deflater.reset();
+    synchronized (idle) {
+      if (idle.size() < maximumIdle) {
+        idle.push(deflater);
+        return;
+      }
+    }
+    deflater.end();
+  }
+
+  /**
+   * Gets the number of idle deflaters in the pool.
+   *
+   * @return the number of idle deflaters
+   */
+  int idleCount() {
+    synchronized (idle) {
+      return idle.size();
+    }
+  }
+}
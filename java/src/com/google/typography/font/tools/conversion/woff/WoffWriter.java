@@ -22,10 +22,19 @@ import com.google.typography.font.sfntly.data.FontData;
 import com.google.typography.font.sfntly.data.WritableFontData;
 import com.google.typography.font.sfntly.table.Table;
 import com.google.typography.font.sfntly.table.core.FontHeaderTable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.zip.Deflater;
 
 /** @author Jeremie Lenfant-Engelmann */
@@ -36,16 +45,138 @@ public class WoffWriter {
   private static final long SIGNATURE = 0x774F4646;
   private static final int WOFF_HEADER_SIZE =
       (9 * FontData.SizeOf.ULONG) + (4 * FontData.SizeOf.USHORT);
+  private static final byte[] PADDING = new byte[3];
+
+  // deflaters shared by all writers; a deflater is only in use while one table is compressed
+  private static final DeflaterPool deflaters =
+      new DeflaterPool(2 * Runtime.getRuntime().availableProcessors());
+
+  private Executor executor;
+  private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+  private final Map<Integer, Integer> tableCompressionLevels = new HashMap<>();
+
+  /**
+   * Set the executor used to compress tables in parallel. Each table is compressed in its own task
+   * and the tables are written in tag order, so the WOFF font is the same as when the tables are
+   * compressed on the calling thread. By default there is no executor and all the work is done on
+   * the calling thread.
+   *
+   * @param executor the executor to compress tables on; null to compress them on the calling
+   *     thread
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Set the compression level used for tables that don't have their own level.
+   *
+   * @param level the compression level, from {@link Deflater#NO_COMPRESSION} to {@link
+   *     Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}
+   */
+  public void setCompressionLevel(int level) {
+    this.compressionLevel = checkCompressionLevel(level);
+  }
+
+  /**
+   * Set the compression level used for a table. A table compressed with {@link
+   * Deflater#NO_COMPRESSION} is stored uncompressed.
+   *
+   * @param tag the tag of the table
+   * @param level the compression level, from {@link Deflater#NO_COMPRESSION} to {@link
+   *     Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}
+   */
+  public void setCompressionLevel(int tag, int level) {
+    tableCompressionLevels.put(tag, checkCompressionLevel(level));
+  }
+
+  private static int checkCompressionLevel(int level) {
+    if ((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+        && level != Deflater.DEFAULT_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level: " + level);
+    }
+    return level;
+  }
 
   public WritableFontData convert(Font font) {
     List<TableDirectoryEntry> tableDirectoryEntries = createTableDirectoryEntries(font);
-    int length =
-        WOFF_HEADER_SIZE
-            + computeTableDirectoryEntriesLength(tableDirectoryEntries)
-            + computeTablesLength(tableDirectoryEntries);
+    int length = computeLength(tableDirectoryEntries);
     WritableFontData writableFontData = WritableFontData.createWritableFontData(length);
-    int index = 0;
+    int index = writeHeaderAndDirectory(writableFontData, font, tableDirectoryEntries, length);
+    writeTables(writableFontData, index, tableDirectoryEntries);
+    return writableFontData;
+  }
 
+  /**
+   * Convert the font to WOFF and write it to the output stream. The header and table directory are
+   * written first and each compressed table is written straight from its own buffer, so the whole
+   * WOFF font is never assembled in memory.
+   *
+   * @param font the font to convert
+   * @param os the stream to write the WOFF font to; it is not closed
+   * @return the number of bytes written
+   */
+  public int convert(Font font, OutputStream os) throws IOException {
+    List<TableDirectoryEntry> tableDirectoryEntries = createTableDirectoryEntries(font);
+    int length = computeLength(tableDirectoryEntries);
+    writeHeaderAndDirectory(font, tableDirectoryEntries, length).copyTo(os);
+    for (TableDirectoryEntry entry : tableDirectoryEntries) {
+      int tableLength = entry.getCompressedTableLength();
+      os.write(entry.releaseCompTable());
+      os.write(PADDING, 0, align4(tableLength) - tableLength);
+    }
+    return length;
+  }
+
+  /**
+   * Convert the font to WOFF and write it to the channel. The header and table directory are
+   * written first and each compressed table is written straight from its own buffer, so the whole
+   * WOFF font is never assembled in memory.
+   *
+   * @param font the font to convert
+   * @param channel the channel to write the WOFF font to; it is not closed
+   * @return the number of bytes written
+   */
+  public int convert(Font font, WritableByteChannel channel) throws IOException {
+    List<TableDirectoryEntry> tableDirectoryEntries = createTableDirectoryEntries(font);
+    int length = computeLength(tableDirectoryEntries);
+    writeHeaderAndDirectory(font, tableDirectoryEntries, length).copyTo(channel);
+    for (TableDirectoryEntry entry : tableDirectoryEntries) {
+      int tableLength = entry.getCompressedTableLength();
+      writeFully(channel, ByteBuffer.wrap(entry.releaseCompTable()));
+      writeFully(channel, ByteBuffer.wrap(PADDING, 0, align4(tableLength) - tableLength));
+    }
+    return length;
+  }
+
+  private static void writeFully(WritableByteChannel channel, ByteBuffer buffer)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private int computeLength(List<TableDirectoryEntry> tableDirectoryEntries) {
+    return WOFF_HEADER_SIZE
+        + computeTableDirectoryEntriesLength(tableDirectoryEntries)
+        + computeTablesLength(tableDirectoryEntries);
+  }
+
+  private WritableFontData writeHeaderAndDirectory(
+      Font font, List<TableDirectoryEntry> tableDirectoryEntries, int length) {
+    WritableFontData writableFontData =
+        WritableFontData.createWritableFontData(
+            WOFF_HEADER_SIZE + computeTableDirectoryEntriesLength(tableDirectoryEntries));
+    writeHeaderAndDirectory(writableFontData, font, tableDirectoryEntries, length);
+    return writableFontData;
+  }
+
+  private int writeHeaderAndDirectory(
+      WritableFontData writableFontData,
+      Font font,
+      List<TableDirectoryEntry> tableDirectoryEntries,
+      int length) {
+    int index = 0;
     index +=
         writeWoffHeader(
             writableFontData,
@@ -56,8 +187,7 @@ public class WoffWriter {
             extractMajorVersion(font),
             extractMinorVersion(font));
     index += writeTableDirectoryEntries(writableFontData, index, tableDirectoryEntries);
-    index += writeTables(writableFontData, index, tableDirectoryEntries);
-    return writableFontData;
+    return index;
   }
 
   private int extractMajorVersion(Font font) {
@@ -165,40 +295,75 @@ public class WoffWriter {
     TreeSet<Integer> tags = new TreeSet<>(font.tableMap().keySet());
     tags.remove(Tag.DSIG);
 
+    List<CompletableFuture<Void>> compressions = new ArrayList<>();
     for (int tag : tags) {
       Table table = font.getTable(tag);
       TableDirectoryEntry tableDirectoryEntry = new TableDirectoryEntry();
       tableDirectoryEntry.setTag(tag);
       tableDirectoryEntry.setOrigLength(table.dataLength());
       tableDirectoryEntry.setOrigChecksum(table.calculatedChecksum());
-      setCompressedTableData(tableDirectoryEntry, table);
+      if (executor == null) {
+        setCompressedTableData(tableDirectoryEntry, table);
+      } else {
+        compressions.add(
+            CompletableFuture.runAsync(
+                () -> setCompressedTableData(tableDirectoryEntry, table), executor));
+      }
       tableDirectoryEntries.add(tableDirectoryEntry);
     }
+    join(compressions);
     return tableDirectoryEntries;
   }
 
+  private static void join(List<CompletableFuture<Void>> futures) {
+    try {
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
   private void setCompressedTableData(TableDirectoryEntry tableDirectoryEntry, Table table) {
     int length = table.dataLength();
     byte[] input = new byte[length];
     table.readFontData().readBytes(0, input, 0, length);
-    if (woff_compression_faster && (length < 100 || table.headerTag() == Tag.loca)) {
+    int level = tableCompressionLevels.getOrDefault(table.headerTag(), compressionLevel);
+    if (level == Deflater.NO_COMPRESSION
+        || (woff_compression_faster && (length < 100 || table.headerTag() == Tag.loca))) {
       tableDirectoryEntry.setCompTable(input);
-    } else {
-      byte[] output = new byte[length];
-      Deflater compresser = new Deflater();
+      return;
+    }
+    byte[] output = new byte[length];
+    Deflater compresser = deflaters.acquire(level);
+    try {
       compresser.setInput(input);
       compresser.finish();
-      int compLength = compresser.deflate(output);
+      // a pooled deflater whose level changed may return nothing from the first call, so keep
+      // deflating until the stream is finished or it is no smaller than the table
+      int compLength = 0;
+      while (!compresser.finished() && compLength < length) {
+        compLength += compresser.deflate(output, compLength, length - compLength);
+      }
       tableDirectoryEntry.setCompTable(
-          compLength == length || !compresser.finished()
-              ? input
-              : Arrays.copyOfRange(output, 0, compLength));
+          compresser.finished() && compLength < length
+              ? Arrays.copyOfRange(output, 0, compLength)
+              : input);
+    } finally {
+      deflaters.release(compresser);
     }
   }
 
   private static class TableDirectoryEntry {
 
     public static final int ENTRY_SIZE = 5 * FontData.SizeOf.ULONG;
+    private static final byte[] EMPTY_TABLE = {};
 
     private long tag;
     private long origLength;
@@ -239,6 +404,13 @@ public class WoffWriter {
       return ENTRY_SIZE;
     }
 
+    /** Gets the compressed table and drops this entry's reference to it. */
+    public byte[] releaseCompTable() {
+      byte[] table = compTable;
+      compTable = EMPTY_TABLE;
+      return table;
+    }
+
     public int writeTable(WritableFontData writableFontData, int index) {
       writableFontData.writeBytes(index, compTable, 0, compTable.length);
       return getCompressedTableLength();
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff2;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.core.FontHeaderTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Implementation of the transform of the glyf and loca tables, as per section 5.1 of the WOFF2
+ * spec. The glyph data is split into streams of contour counts, point counts, flags, coordinate
+ * triplets, composite glyph data, bounding boxes and instructions, which compress better than the
+ * glyphs themselves. The loca table is rebuilt by the decoder so it isn't stored at all.
+ */
+public class GlyfEncoder {
+
+  // simple glyph flags
+  private static final int ON_CURVE = 0x01;
+  private static final int X_SHORT = 0x02;
+  private static final int Y_SHORT = 0x04;
+  private static final int REPEAT = 0x08;
+  private static final int X_SAME_OR_POSITIVE = 0x10;
+  private static final int Y_SAME_OR_POSITIVE = 0x20;
+  private static final int OVERLAP_SIMPLE = 0x40;
+
+  // composite glyph flags
+  private static final int ARG_1_AND_2_ARE_WORDS = 0x0001;
+  private static final int WE_HAVE_A_SCALE = 0x0008;
+  private static final int MORE_COMPONENTS = 0x0020;
+  private static final int WE_HAVE_AN_X_AND_Y_SCALE = 0x0040;
+  private static final int WE_HAVE_A_TWO_BY_TWO = 0x0080;
+  private static final int WE_HAVE_INSTRUCTIONS = 0x0100;
+
+  private final ByteArrayOutputStream nContourStream = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream nPointsStream = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream flagStream = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream glyphStream = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream compositeStream = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream bboxStream = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream instructionStream = new ByteArrayOutputStream();
+
+  private int numGlyphs;
+  private int indexFormat;
+  private byte[] bboxBitmap;
+  private byte[] overlapBitmap;
+  private boolean hasOverlap;
+  private int[] xMins;
+
+  public void encode(Font sourceFont) {
+    LocaTable loca = sourceFont.getTable(Tag.loca);
+    FontHeaderTable head = sourceFont.getTable(Tag.head);
+    ReadableFontData glyf = sourceFont.getTable(Tag.glyf).readFontData();
+    numGlyphs = loca.numGlyphs();
+    indexFormat = head.indexToLocFormatAsInt();
+    bboxBitmap = new byte[4 * ((numGlyphs + 31) / 32)];
+    overlapBitmap = new byte[(numGlyphs + 7) / 8];
+    xMins = new int[numGlyphs];
+
+    try {
+      for (int glyphId = 0; glyphId < numGlyphs; glyphId++) {
+        int length = loca.glyphLength(glyphId);
+        ReadableFontData glyph = length > 0 ? glyf.slice(loca.glyphOffset(glyphId), length) : null;
+        writeGlyph(glyphId, glyph);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("unexpected IOException writing glyph data", e);
+    }
+  }
+
+  /**
+   * Gets the number of bytes the loca table is rebuilt as.
+   *
+   * @return the loca table length
+   */
+  public int locaLength() {
+    return (numGlyphs + 1) * (indexFormat == 0 ? 2 : 4);
+  }
+
+  /**
+   * Gets the xMin of a glyph as the decoder rebuilds it. Empty glyphs have an xMin of 0.
+   *
+   * @param glyphId the glyph id
+   * @return the xMin
+   */
+  public int xMin(int glyphId) {
+    return xMins[glyphId];
+  }
+
+  /**
+   * Gets the number of glyphs encoded.
+   *
+   * @return the number of glyphs
+   */
+  public int numGlyphs() {
+    return numGlyphs;
+  }
+
+  private void writeGlyph(int glyphId, ReadableFontData glyph) throws IOException {
+    int numContours = glyph == null ? 0 : glyph.readShort(0);
+    writeShort(nContourStream, numContours);
+    if (numContours > 0) {
+      writeSimpleGlyph(glyphId, glyph, numContours);
+    } else if (numContours < 0) {
+      writeCompositeGlyph(glyphId, glyph);
+    }
+  }
+
+  private void writeSimpleGlyph(int glyphId, ReadableFontData glyph, int numContours)
+      throws IOException {
+    int numPoints = 0;
+    for (int i = 0; i < numContours; i++) {
+      int endPoint = glyph.readUShort(10 + 2 * i);
+      write255UShort(nPointsStream, endPoint + 1 - numPoints);
+      numPoints = endPoint + 1;
+    }
+    int instructionOffset = 10 + 2 * numContours;
+    int instructionSize = glyph.readUShort(instructionOffset);
+    int offset = instructionOffset + 2 + instructionSize;
+
+    int[] flags = new int[numPoints];
+    for (int i = 0; i < numPoints; ) {
+      int flag = glyph.readUByte(offset++);
+      int repeat = (flag & REPEAT) != 0 ? glyph.readUByte(offset++) : 0;
+      for (int j = 0; j <= repeat && i < numPoints; j++) {
+        flags[i++] = flag;
+      }
+    }
+    int[] x = new int[numPoints];
+    int[] y = new int[numPoints];
+    offset = readCoordinates(glyph, offset, flags, X_SHORT, X_SAME_OR_POSITIVE, x);
+    readCoordinates(glyph, offset, flags, Y_SHORT, Y_SAME_OR_POSITIVE, y);
+
+    int xMin = Integer.MAX_VALUE;
+    int yMin = Integer.MAX_VALUE;
+    int xMax = Integer.MIN_VALUE;
+    int yMax = Integer.MIN_VALUE;
+    int lastX = 0;
+    int lastY = 0;
+    for (int i = 0; i < numPoints; i++) {
+      writeTriplet((flags[i] & ON_CURVE) != 0, x[i] - lastX, y[i] - lastY);
+      lastX = x[i];
+      lastY = y[i];
+      xMin = Math.min(xMin, x[i]);
+      yMin = Math.min(yMin, y[i]);
+      xMax = Math.max(xMax, x[i]);
+      yMax = Math.max(yMax, y[i]);
+    }
+    write255UShort(glyphStream, instructionSize);
+    writeBytes(instructionStream, glyph, instructionOffset + 2, instructionSize);
+
+    // the decoder computes the bounding box from the points unless it is given one
+    if (numPoints == 0
+        || xMin != glyph.readShort(2)
+        || yMin != glyph.readShort(4)
+        || xMax != glyph.readShort(6)
+        || yMax != glyph.readShort(8)) {
+      writeBoundingBox(glyphId, glyph);
+    }
+    xMins[glyphId] = glyph.readShort(2);
+    if (numPoints > 0 && (flags[0] & OVERLAP_SIMPLE) != 0) {
+      overlapBitmap[glyphId >> 3] |= (byte) (0x80 >> (glyphId & 7));
+      hasOverlap = true;
+    }
+  }
+
+  private static int readCoordinates(
+      ReadableFontData glyph, int offset, int[] flags, int shortFlag, int sameFlag, int[] values) {
+    int value = 0;
+    for (int i = 0; i < flags.length; i++) {
+      int flag = flags[i];
+      if ((flag & shortFlag) != 0) {
+        int delta = glyph.readUByte(offset++);
+        value += (flag & sameFlag) != 0 ? delta : -delta;
+      } else if ((flag & sameFlag) == 0) {
+        value += glyph.readShort(offset);
+        offset += 2;
+      }
+      values[i] = value;
+    }
+    return offset;
+  }
+
+  private void writeCompositeGlyph(int glyphId, ReadableFontData glyph) throws IOException {
+    int offset = 10;
+    boolean haveInstructions = false;
+    int flags;
+    do {
+      flags = glyph.readUShort(offset);
+      haveInstructions |= (flags & WE_HAVE_INSTRUCTIONS) != 0;
+      offset += 4; // flags and glyphIndex
+      offset += (flags & ARG_1_AND_2_ARE_WORDS) != 0 ? 4 : 2;
+      if ((flags & WE_HAVE_A_SCALE) != 0) {
+        offset += 2;
+      } else if ((flags & WE_HAVE_AN_X_AND_Y_SCALE) != 0) {
+        offset += 4;
+      } else if ((flags & WE_HAVE_A_TWO_BY_TWO) != 0) {
+        offset += 8;
+      }
+    } while ((flags & MORE_COMPONENTS) != 0);
+    writeBytes(compositeStream, glyph, 10, offset - 10);
+    if (haveInstructions) {
+      int instructionSize = glyph.readUShort(offset);
+      write255UShort(glyphStream, instructionSize);
+      writeBytes(instructionStream, glyph, offset + 2, instructionSize);
+    }
+    // composite glyphs always have an explicit bounding box
+    writeBoundingBox(glyphId, glyph);
+    xMins[glyphId] = glyph.readShort(2);
+  }
+
+  private void writeBoundingBox(int glyphId, ReadableFontData glyph) throws IOException {
+    bboxBitmap[glyphId >> 3] |= (byte) (0x80 >> (glyphId & 7));
+    writeBytes(bboxStream, glyph, 2, 8);
+  }
+
+  // As in section 5.2 of the spec
+  private void writeTriplet(boolean onCurve, int x, int y) {
+    int absX = Math.abs(x);
+    int absY = Math.abs(y);
+    int onCurveBit = onCurve ? 0 : 128;
+    int xSignBit = (x < 0) ? 0 : 1;
+    int ySignBit = (y < 0) ? 0 : 1;
+    int xySignBits = xSignBit + 2 * ySignBit;
+
+    if (x == 0 && absY < 1280) {
+      flagStream.write(onCurveBit + ((absY & 0xf00) >> 7) + ySignBit);
+      glyphStream.write(absY & 0xff);
+    } else if (y == 0 && absX < 1280) {
+      flagStream.write(onCurveBit + 10 + ((absX & 0xf00) >> 7) + xSignBit);
+      glyphStream.write(absX & 0xff);
+    } else if (absX < 65 && absY < 65) {
+      flagStream.write(
+          onCurveBit + 20 + ((absX - 1) & 0x30) + (((absY - 1) & 0x30) >> 2) + xySignBits);
+      glyphStream.write((((absX - 1) & 0xf) << 4) | ((absY - 1) & 0xf));
+    } else if (absX < 769 && absY < 769) {
+      flagStream.write(
+          onCurveBit
+              + 84
+              + 12 * (((absX - 1) & 0x300) >> 8)
+              + (((absY - 1) & 0x300) >> 6)
+              + xySignBits);
+      glyphStream.write((absX - 1) & 0xff);
+      glyphStream.write((absY - 1) & 0xff);
+    } else if (absX < 4096 && absY < 4096) {
+      flagStream.write(onCurveBit + 120 + xySignBits);
+      glyphStream.write(absX >> 4);
+      glyphStream.write(((absX & 0xf) << 4) | (absY >> 8));
+      glyphStream.write(absY & 0xff);
+    } else {
+      flagStream.write(onCurveBit + 124 + xySignBits);
+      glyphStream.write(absX >> 8);
+      glyphStream.write(absX & 0xff);
+      glyphStream.write(absY >> 8);
+      glyphStream.write(absY & 0xff);
+    }
+  }
+
+  // As in section 6.1.1 of the MicroType Express spec, which WOFF2 shares
+  static void write255UShort(OutputStream os, int value) throws IOException {
+    if (value < 0) {
+      throw new IllegalArgumentException();
+    }
+    if (value < 253) {
+      os.write((byte) value);
+    } else if (value < 506) {
+      os.write(255);
+      os.write((byte) (value - 253));
+    } else if (value < 762) {
+      os.write(254);
+      os.write((byte) (value - 506));
+    } else {
+      os.write(253);
+      os.write((byte) (value >> 8));
+      os.write((byte) (value & 0xff));
+    }
+  }
+
+  private static void writeShort(OutputStream os, int value) throws IOException {
+    os.write(value >> 8);
+    os.write(value & 255);
+  }
+
+  private static void writeBytes(OutputStream os, ReadableFontData data, int offset, int length)
+      throws IOException {
+    if (length > 0) {
+      data.slice(offset, length).copyTo(os);
+    }
+  }
+
+  /**
+   * Gets the transformed glyf table.
+   *
+   * @return the transformed table
+   */
+  public byte[] getTransformedGlyfBytes() {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try {
+      writeShort(os, 0); // reserved
+      writeShort(os, hasOverlap ? 1 : 0); // optionFlags
+      writeShort(os, numGlyphs);
+      writeShort(os, indexFormat);
+      ByteArrayOutputStream[] streams = {
+        nContourStream, nPointsStream, flagStream, glyphStream, compositeStream
+      };
+      for (ByteArrayOutputStream stream : streams) {
+        writeULong(os, stream.size());
+      }
+      writeULong(os, bboxBitmap.length + bboxStream.size());
+      writeULong(os, instructionStream.size());
+      for (ByteArrayOutputStream stream : streams) {
+        stream.writeTo(os);
+      }
+      os.write(bboxBitmap);
+      bboxStream.writeTo(os);
+      instructionStream.writeTo(os);
+      if (hasOverlap) {
+        os.write(overlapBitmap);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("unexpected IOException writing glyph data", e);
+    }
+    return os.toByteArray();
+  }
+
+  private static void writeULong(OutputStream os, int value) throws IOException {
+    writeShort(os, value >>> 16);
+    writeShort(os, value & 0xffff);
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff2;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * A compressor that writes the data as a Brotli stream of uncompressed meta-blocks, as per section
+ * 9.2 of RFC 7932. The stream is valid for any Brotli decoder but is slightly larger than the data.
+ * It is the default compressor of {@link Woff2Writer}, so that WOFF2 files can be written without
+ * a Brotli encoder; plug in a real encoder to get the size benefits of WOFF2.
+ */
+public class StoredBrotliCompressor implements Woff2Compressor {
+
+  // the largest length that fits in four nibbles of MLEN - 1
+  private static final int MAX_BLOCK_LENGTH = 1 << 16;
+
+  @Override
+  public byte[] compress(byte[] data) {
+    BitWriter writer = new BitWriter(data.length + 3 * (data.length / MAX_BLOCK_LENGTH + 1) + 1);
+    writer.writeBits(1, 0); // WBITS = 16
+    for (int offset = 0; offset < data.length; offset += MAX_BLOCK_LENGTH) {
+      int length = Math.min(MAX_BLOCK_LENGTH, data.length - offset);
+      writer.writeBits(1, 0); // ISLAST
+      writer.writeBits(2, 0); // MNIBBLES = 4
+      writer.writeBits(16, length - 1); // MLEN - 1
+      writer.writeBits(1, 1); // ISUNCOMPRESSED
+      writer.writeBytes(data, offset, length);
+    }
+    writer.writeBits(1, 1); // ISLAST
+    writer.writeBits(1, 1); // ISLASTEMPTY
+    return writer.toByteArray();
+  }
+
+  /** Writes bits least significant first, as Brotli streams are packed. */
+  private static final class BitWriter {
+    private final ByteArrayOutputStream os;
+    private int bits;
+    private int bitCount;
+
+    BitWriter(int size) {
+      os = new ByteArrayOutputStream(size);
+    }
+
+    void writeBits(int count, int value) {
+      bits |= value << bitCount;
+      bitCount += count;
+      while (bitCount >= 8) {
+        os.write(bits & 0xff);
+        bits >>>= 8;
+        bitCount -= 8;
+      }
+    }
+
+    /** Pads the current byte with zero bits and writes the bytes. */
+    void writeBytes(byte[] b, int offset, int length) {
+      flush();
+      os.write(b, offset, length);
+    }
+
+    byte[] toByteArray() {
+      flush();
+      return os.toByteArray();
+    }
+
+    private void flush() {
+      if (bitCount > 0) {
+        os.write(bits & 0xff);
+        bits = 0;
+        bitCount = 0;
+      }
+    }
+  }
+}
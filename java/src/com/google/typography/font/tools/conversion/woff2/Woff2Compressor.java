@@ -0,0 +1,32 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff2;
+
+/**
+ * Compresses the font data of a WOFF2 file. WOFF2 requires the data to be a Brotli stream, so
+ * implementations must produce data that a Brotli decoder can decompress.
+ */
+public interface Woff2Compressor {
+
+  /**
+   * Compresses the data.
+   *
+   * @param data the data to compress
+   * @return the Brotli stream
+   */
+  byte[] compress(byte[] data);
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff2;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.FontData;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.FontHeaderTable;
+import com.google.typography.font.sfntly.table.core.HorizontalHeaderTable;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Writes fonts in the WOFF 2.0 format. The glyf and loca tables are transformed as per section 5.1
+ * of the spec, and the hmtx table as per section 5.4 when its left side bearings can be rebuilt
+ * from the glyphs. All of the table data is then compressed as one stream by a {@link
+ * Woff2Compressor}.
+ */
+public class Woff2Writer {
+
+  private static final long SIGNATURE = 0x774F4632;
+  private static final int WOFF2_HEADER_SIZE =
+      (10 * FontData.SizeOf.ULONG) + (4 * FontData.SizeOf.USHORT);
+
+  // the tags that are written as an index into this table rather than in full, as per section 4.2
+  static final String[] KNOWN_TAGS = {
+    "cmap", "head", "hhea", "hmtx", "maxp", "name", "OS/2", "post", "cvt ", "fpgm", "glyf", "loca",
+    "prep", "CFF ", "VORG", "EBDT", "EBLC", "gasp", "hdmx", "kern", "LTSH", "PCLT", "VDMX", "vhea",
+    "vmtx", "BASE", "GDEF", "GPOS", "GSUB", "EBSC", "JSTF", "MATH", "CBDT", "CBLC", "COLR", "CPAL",
+    "SVG ", "sbix", "acnt", "avar", "bdat", "bloc", "bsln", "cvar", "fdsc", "feat", "fmtx", "fvar",
+    "gvar", "hsty", "just", "lcar", "mort", "morx", "opbd", "prop", "trak", "Zapf", "Silf", "Glat",
+    "Gloc", "Feat", "Sill",
+  };
+  private static final int ARBITRARY_TAG = 63;
+
+  // transformation versions
+  private static final int NULL_TRANSFORM = 0;
+  private static final int GLYF_TRANSFORM = 0;
+  private static final int GLYF_NULL_TRANSFORM = 3;
+  private static final int HMTX_TRANSFORM = 1;
+
+  private final Woff2Compressor compressor;
+
+  public Woff2Writer() {
+    this(new StoredBrotliCompressor());
+  }
+
+  /**
+   * Constructs a writer that compresses the font data with the given compressor.
+   *
+   * @param compressor the compressor; it must produce a Brotli stream
+   */
+  public Woff2Writer(Woff2Compressor compressor) {
+    this.compressor = compressor;
+  }
+
+  public WritableFontData convert(Font font) {
+    GlyfEncoder glyfEncoder = null;
+    if (font.hasTable(Tag.glyf) && font.hasTable(Tag.loca) && font.hasTable(Tag.head)) {
+      glyfEncoder = new GlyfEncoder();
+      glyfEncoder.encode(font);
+    }
+    List<TableDirectoryEntry> entries = createTableDirectoryEntries(font, glyfEncoder);
+
+    ByteArrayOutputStream tableData = new ByteArrayOutputStream();
+    ByteArrayOutputStream directory = new ByteArrayOutputStream();
+    int totalSfntSize = 12 + 16 * entries.size();
+    for (TableDirectoryEntry entry : entries) {
+      entry.writeEntry(directory);
+      tableData.write(entry.data, 0, entry.data.length);
+      totalSfntSize += align4(entry.origLength);
+    }
+    byte[] compressed = compressor.compress(tableData.toByteArray());
+
+    int length = align4(WOFF2_HEADER_SIZE + directory.size() + compressed.length);
+    WritableFontData writableFontData = WritableFontData.createWritableFontData(length);
+    FontHeaderTable head = font.getTable(Tag.head);
+    int fontRevision = head != null ? head.fontRevision() : 0;
+    int index = 0;
+    index += writableFontData.writeULong(index, SIGNATURE); // signature
+    index += writableFontData.writeULong(index, font.sfntVersion()); // flavor
+    index += writableFontData.writeULong(index, length); // length
+    index += writableFontData.writeUShort(index, entries.size()); // numTables
+    index += writableFontData.writeUShort(index, 0); // reserved
+    index += writableFontData.writeULong(index, totalSfntSize); // totalSfntSize
+    index += writableFontData.writeULong(index, compressed.length); // totalCompressedSize
+    index += writableFontData.writeUShort(index, (fontRevision >> 16) & 0xffff); // majorVersion
+    index += writableFontData.writeUShort(index, fontRevision & 0xffff); // minorVersion
+    index += writableFontData.writeULong(index, 0); // metaOffset
+    index += writableFontData.writeULong(index, 0); // metaLength
+    index += writableFontData.writeULong(index, 0); // metaOrigLength
+    index += writableFontData.writeULong(index, 0); // privOffset
+    index += writableFontData.writeULong(index, 0); // privLength
+    index += writableFontData.writeBytes(index, directory.toByteArray());
+    index += writableFontData.writeBytes(index, compressed);
+    writableFontData.writePadding(index, length - index);
+    return writableFontData;
+  }
+
+  private static int align4(int value) {
+    return (value + 3) & -4;
+  }
+
+  private List<TableDirectoryEntry> createTableDirectoryEntries(Font font, GlyfEncoder glyf) {
+    List<TableDirectoryEntry> entries = new ArrayList<>();
+    TreeSet<Integer> tags = new TreeSet<>(font.tableMap().keySet());
+    tags.remove(Tag.DSIG);
+
+    for (int tag : tags) {
+      Table table = font.getTable(tag);
+      TableDirectoryEntry entry = new TableDirectoryEntry(tag);
+      entry.origLength = table.dataLength();
+      if (tag == Tag.glyf || tag == Tag.loca) {
+        if (glyf == null) {
+          entry.setData(GLYF_NULL_TRANSFORM, tableBytes(table), false);
+        } else if (tag == Tag.glyf) {
+          entry.setData(GLYF_TRANSFORM, glyf.getTransformedGlyfBytes(), true);
+        } else {
+          entry.origLength = glyf.locaLength();
+          entry.setData(GLYF_TRANSFORM, new byte[0], true);
+        }
+      } else {
+        byte[] hmtx = tag == Tag.hmtx && glyf != null ? transformHmtx(font, table, glyf) : null;
+        if (hmtx != null) {
+          entry.setData(HMTX_TRANSFORM, hmtx, true);
+        } else {
+          entry.setData(NULL_TRANSFORM, tableBytes(table), false);
+        }
+      }
+      entries.add(entry);
+    }
+    return entries;
+  }
+
+  /**
+   * Transforms the hmtx table as per section 5.4 of the spec, leaving out the left side bearings
+   * that are the same as the xMin of their glyphs.
+   *
+   * @return the transformed table; null if no left side bearings can be left out
+   */
+  private static byte[] transformHmtx(Font font, Table hmtx, GlyfEncoder glyf) {
+    HorizontalHeaderTable hhea = font.getTable(Tag.hhea);
+    if (hhea == null) {
+      return null;
+    }
+    int numGlyphs = glyf.numGlyphs();
+    int numHMetrics = hhea.numberOfHMetrics();
+    if (numHMetrics < 1
+        || numHMetrics > numGlyphs
+        || hmtx.dataLength() != 2 * numHMetrics + 2 * numGlyphs) {
+      return null;
+    }
+    ReadableFontData data = hmtx.readFontData();
+    boolean proportionalLsbs = false;
+    boolean monospacedLsbs = false;
+    for (int i = 0; i < numGlyphs; i++) {
+      int lsb =
+          i < numHMetrics ? data.readShort(4 * i + 2) : data.readShort(2 * numHMetrics + 2 * i);
+      if (lsb != glyf.xMin(i)) {
+        if (i < numHMetrics) {
+          proportionalLsbs = true;
+        } else {
+          monospacedLsbs = true;
+        }
+      }
+    }
+    if (proportionalLsbs && monospacedLsbs) {
+      return null;
+    }
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    os.write((proportionalLsbs ? 0 : 1) | (monospacedLsbs ? 0 : 2)); // flags
+    for (int i = 0; i < numHMetrics; i++) {
+      writeUShort(os, data.readUShort(4 * i));
+    }
+    if (proportionalLsbs) {
+      for (int i = 0; i < numHMetrics; i++) {
+        writeUShort(os, data.readShort(4 * i + 2));
+      }
+    }
+    if (monospacedLsbs) {
+      for (int i = numHMetrics; i < numGlyphs; i++) {
+        writeUShort(os, data.readShort(2 * numHMetrics + 2 * i));
+      }
+    }
+    return os.toByteArray();
+  }
+
+  private static void writeUShort(ByteArrayOutputStream os, int value) {
+    os.write(value >> 8);
+    os.write(value & 0xff);
+  }
+
+  private static byte[] tableBytes(Table table) {
+    int length = table.dataLength();
+    byte[] b = new byte[length];
+    if (length > 0) {
+      table.readFontData().readBytes(0, b, 0, length);
+    }
+    return b;
+  }
+
+  private static class TableDirectoryEntry {
+
+    private final int tag;
+    private int flags;
+    private int origLength;
+    private boolean transformed;
+    private byte[] data;
+
+    TableDirectoryEntry(int tag) {
+      this.tag = tag;
+      this.flags = ARBITRARY_TAG;
+      for (int i = 0; i < KNOWN_TAGS.length; i++) {
+        if (Tag.intValue(KNOWN_TAGS[i]) == tag) {
+          flags = i;
+        }
+      }
+    }
+
+    void setData(int transformVersion, byte[] data, boolean transformed) {
+      this.flags |= transformVersion << 6;
+      this.data = data;
+      this.transformed = transformed;
+    }
+
+    void writeEntry(ByteArrayOutputStream os) {
+      os.write(flags);
+      if ((flags & 0x3f) == ARBITRARY_TAG) {
+        writeUShort(os, tag >>> 16);
+        writeUShort(os, tag & 0xffff);
+      }
+      writeUIntBase128(os, origLength);
+      if (transformed) {
+        writeUIntBase128(os, data.length);
+      }
+    }
+
+    // As per section 4.1 of the spec
+    private static void writeUIntBase128(ByteArrayOutputStream os, int value) {
+      int size = 1;
+      for (int rest = value >>> 7; rest != 0; rest >>>= 7) {
+        size++;
+      }
+      for (int i = size - 1; i >= 0; i--) {
+        int b = (value >>> (7 * i)) & 0x7f;
+        os.write(i > 0 ? b | 0x80 : b);
+      }
+    }
+  }
+}
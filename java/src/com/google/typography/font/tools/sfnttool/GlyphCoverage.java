@@ -21,49 +21,77 @@ import com.google.typography.font.sfntly.Tag;
 import com.google.typography.font.sfntly.data.SfStringUtils;
 import com.google.typography.font.sfntly.table.core.CMap;
 import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.table.opentype.component.GlyphGroup;
+import com.google.typography.font.sfntly.table.opentype.component.GlyphRuleIndex;
 import com.google.typography.font.sfntly.table.truetype.CompositeGlyph;
 import com.google.typography.font.sfntly.table.truetype.Glyph;
 import com.google.typography.font.sfntly.table.truetype.GlyphTable;
 import com.google.typography.font.sfntly.table.truetype.LocaTable;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
- * A class for computing which glyphs are needed to render a given string. Currently this class is
- * quite simplistic, only using the cmap, not taking into account any ligature or complex layout.
+ * A class for computing which glyphs are needed to render a given string. The glyphs mapped from
+ * the string by the cmap are closed over the substitutions of the font's GSUB features and the
+ * components of composite glyphs, in any order, until no more glyphs are added.
+ *
+ * <p>An instance indexes the GSUB rules of its font when it is created, and can then be used for
+ * any number of strings.
  *
  * @author Raph Levien
  */
 public class GlyphCoverage {
 
-  public static List<Integer> getGlyphCoverage(Font font, String string) {
+  private static final int[] NO_GLYPHS = {};
+
+  private final CMap cmap;
+  private final LocaTable locaTable;
+  private final GlyphTable glyfTable;
+  private final GlyphRuleIndex rules;
+
+  public GlyphCoverage(Font font) {
     CMapTable cmapTable = font.getTable(Tag.cmap);
-    CMap cmap = getBestCMap(cmapTable);
-    Set<Integer> coverage = new HashSet<>();
+    cmap = getBestCMap(cmapTable);
+    locaTable = font.getTable(Tag.loca);
+    glyfTable = font.getTable(Tag.glyf);
+    rules = GlyphRuleIndex.forFont(font);
+  }
+
+  public static List<Integer> getGlyphCoverage(Font font, String string) {
+    return new GlyphCoverage(font).getGlyphCoverage(string);
+  }
+
+  /**
+   * Gets the glyphs needed to render a string.
+   *
+   * @param string the string
+   * @return the glyph ids, sorted, including the notdef glyph
+   */
+  public List<Integer> getGlyphCoverage(String string) {
+    GlyphGroup coverage = new GlyphGroup();
     coverage.add(0); // Always include notdef
     for (int codepoint : SfStringUtils.getAllCodepoints(string)) {
-      int glyphId = cmap.glyphId(codepoint);
-      touchGlyph(font, coverage, glyphId);
+      coverage.add(cmap.glyphId(codepoint));
+    }
+    rules.closure(coverage, this::componentGlyphs);
+    List<Integer> sortedCoverage = new ArrayList<>(coverage.size());
+    for (int glyphId : coverage) {
+      sortedCoverage.add(glyphId);
     }
-    List<Integer> sortedCoverage = new ArrayList<>(coverage);
-    Collections.sort(sortedCoverage);
     return sortedCoverage;
   }
 
-  private static void touchGlyph(Font font, Set<Integer> coverage, int glyphId) {
-    if (!coverage.contains(glyphId)) {
-      coverage.add(glyphId);
-      Glyph glyph = getGlyph(font, glyphId);
-      if (glyph != null && glyph.glyphType() == Glyph.GlyphType.Composite) {
-        CompositeGlyph composite = (CompositeGlyph) glyph;
-        for (int i = 0; i < composite.numGlyphs(); i++) {
-          touchGlyph(font, coverage, composite.glyphIndex(i));
-        }
-      }
+  private int[] componentGlyphs(int glyphId) {
+    Glyph glyph = getGlyph(glyphId);
+    if (glyph == null || glyph.glyphType() != Glyph.GlyphType.Composite) {
+      return NO_GLYPHS;
+    }
+    CompositeGlyph composite = (CompositeGlyph) glyph;
+    int[] components = new int[composite.numGlyphs()];
+    for (int i = 0; i < components.length; i++) {
+      components[i] = composite.glyphIndex(i);
     }
+    return components;
   }
 
   private static CMap getBestCMap(CMapTable cmapTable) {
@@ -80,9 +108,7 @@ public class GlyphCoverage {
     return null;
   }
 
-  private static Glyph getGlyph(Font font, int glyphId) {
-    LocaTable locaTable = font.getTable(Tag.loca);
-    GlyphTable glyfTable = font.getTable(Tag.glyf);
+  private Glyph getGlyph(int glyphId) {
     int offset = locaTable.glyphOffset(glyphId);
     int length = locaTable.glyphLength(glyphId);
     return glyfTable.glyph(offset, length);
@@ -27,7 +27,6 @@ import com.google.typography.font.tools.subsetter.HintStripper;
 import com.google.typography.font.tools.subsetter.RenumberingSubsetter;
 import com.google.typography.font.tools.subsetter.Subsetter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -143,63 +142,57 @@ public class SfntTool {
 
   public void subsetFontFile() throws IOException {
     FontFactory fontFactory = FontFactory.getInstance();
-    try (FileInputStream fis = new FileInputStream(fontFile)) {
-      byte[] fontBytes = new byte[(int) fontFile.length()];
-      fis.read(fontBytes);
-      Font[] fontArray = fontFactory.loadFonts(fontBytes);
-      Font font = fontArray[0];
-      List<CMapTable.CMapId> cmapIds = new ArrayList<>();
-      cmapIds.add(CMapTable.CMapId.WINDOWS_BMP);
-      for (int i = 0; i < iterations; i++) {
-        Font newFont = font;
-        if (subsetString != null) {
-          Subsetter subsetter = new RenumberingSubsetter(newFont, fontFactory);
-          subsetter.setCMaps(cmapIds, 1);
-          List<Integer> glyphs = GlyphCoverage.getGlyphCoverage(font, subsetString);
-          subsetter.setGlyphs(glyphs);
-          Set<Integer> removeTables = new HashSet<>();
-          // Most of the following are valid tables, but we don't renumber them yet, so strip
-          removeTables.add(Tag.GDEF);
-          removeTables.add(Tag.GPOS);
-          removeTables.add(Tag.GSUB);
-          removeTables.add(Tag.kern);
-          removeTables.add(Tag.hdmx);
-          removeTables.add(Tag.vmtx);
-          removeTables.add(Tag.VDMX);
-          removeTables.add(Tag.LTSH);
-          removeTables.add(Tag.DSIG);
-          removeTables.add(Tag.vhea);
-          // AAT tables, not yet defined in sfntly Tag class
-          removeTables.add(Tag.intValue(new byte[] {'m', 'o', 'r', 't'}));
-          removeTables.add(Tag.intValue(new byte[] {'m', 'o', 'r', 'x'}));
-          subsetter.setRemoveTables(removeTables);
-          newFont = subsetter.subset().build();
-        }
-        if (strip) {
-          Subsetter hintStripper = new HintStripper(newFont, fontFactory);
-          Set<Integer> removeTables = new HashSet<>();
-          removeTables.add(Tag.fpgm);
-          removeTables.add(Tag.prep);
-          removeTables.add(Tag.cvt);
-          removeTables.add(Tag.hdmx);
-          removeTables.add(Tag.VDMX);
-          removeTables.add(Tag.LTSH);
-          removeTables.add(Tag.DSIG);
-          removeTables.add(Tag.vhea);
-          hintStripper.setRemoveTables(removeTables);
-          newFont = hintStripper.subset().build();
-        }
+    Font[] fontArray = fontFactory.loadFonts(fontFile.toPath());
+    Font font = fontArray[0];
+    List<CMapTable.CMapId> cmapIds = new ArrayList<>();
+    cmapIds.add(CMapTable.CMapId.WINDOWS_BMP);
+    for (int i = 0; i < iterations; i++) {
+      Font newFont = font;
+      if (subsetString != null) {
+        Subsetter subsetter = new RenumberingSubsetter(newFont, fontFactory);
+        subsetter.setCMaps(cmapIds, 1);
+        List<Integer> glyphs = GlyphCoverage.getGlyphCoverage(font, subsetString);
+        subsetter.setGlyphs(glyphs);
+        Set<Integer> removeTables = new HashSet<>();
+        // Most of the following are valid tables, but we don't renumber them yet, so strip
+        removeTables.add(Tag.GDEF);
+        removeTables.add(Tag.GPOS);
+        removeTables.add(Tag.kern);
+        removeTables.add(Tag.hdmx);
+        removeTables.add(Tag.vmtx);
+        removeTables.add(Tag.VDMX);
+        removeTables.add(Tag.LTSH);
+        removeTables.add(Tag.DSIG);
+        removeTables.add(Tag.vhea);
+        // AAT tables, not yet defined in sfntly Tag class
+        removeTables.add(Tag.intValue(new byte[] {'m', 'o', 'r', 't'}));
+        removeTables.add(Tag.intValue(new byte[] {'m', 'o', 'r', 'x'}));
+        subsetter.setRemoveTables(removeTables);
+        newFont = subsetter.subset().build();
+      }
+      if (strip) {
+        Subsetter hintStripper = new HintStripper(newFont, fontFactory);
+        Set<Integer> removeTables = new HashSet<>();
+        removeTables.add(Tag.fpgm);
+        removeTables.add(Tag.prep);
+        removeTables.add(Tag.cvt);
+        removeTables.add(Tag.hdmx);
+        removeTables.add(Tag.VDMX);
+        removeTables.add(Tag.LTSH);
+        removeTables.add(Tag.DSIG);
+        removeTables.add(Tag.vhea);
+        hintStripper.setRemoveTables(removeTables);
+        newFont = hintStripper.subset().build();
+      }
 
-        FileOutputStream fos = new FileOutputStream(outputFile);
-        if (woff) {
-          WritableFontData woffData = new WoffWriter().convert(newFont);
-          woffData.copyTo(fos);
-        } else if (eot) {
-          WritableFontData eotData = new EOTWriter(mtx).convert(newFont);
-          eotData.copyTo(fos);
-        } else {
-          fontFactory.serializeFont(newFont, fos);
-        }
+      FileOutputStream fos = new FileOutputStream(outputFile);
+      if (woff) {
+        new WoffWriter().convert(newFont, fos);
+      } else if (eot) {
+        WritableFontData eotData = new EOTWriter(mtx).convert(newFont);
+        eotData.copyTo(fos);
+      } else {
+        fontFactory.serializeFont(newFont, fos);
       }
     }
   }
@@ -20,17 +20,18 @@ import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.Tag;
 import com.google.typography.font.sfntly.data.FontData;
 import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMapFormat12;
 import com.google.typography.font.sfntly.table.core.CMapFormat4;
 import com.google.typography.font.sfntly.table.core.CMapTable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 /**
  * This is a medium-level builder for CMap tables, given the mapping from Unicode codepoint to glyph
- * id.
+ * id. A format 4 cmap is always built for the BMP, and if any code points are outside the BMP a
+ * format 12 cmap covering all of them is built as well.
  *
  * @author Raph Levien
  */
@@ -38,106 +39,224 @@ public class CMapTableBuilder {
 
   private static final int MAX_FORMAT4_ENDCODE = 0xffff;
 
+  // the encoded sizes of the parts of a format 4 cmap that depend on the segmentation
+  private static final int FORMAT4_SEGMENT_SIZE = 4 * FontData.SizeOf.USHORT;
+  private static final int FORMAT4_GLYPH_ID_SIZE = FontData.SizeOf.USHORT;
+
   private final Font.Builder fontBuilder;
-  private final Map<Integer, Integer> mapping;
+  // the mapping sorted by code point, see entry(int, int)
+  private final long[] entries;
 
   public CMapTableBuilder(Font.Builder fontBuilder, Map<Integer, Integer> mapping) {
+    this(fontBuilder, entries(mapping));
+  }
+
+  /**
+   * Constructor for a mapping given as packed entries, which avoids boxing each code point and
+   * glyph id.
+   *
+   * @param fontBuilder the builder of the font to add the cmap table to
+   * @param mapping the mapping, as entries made by {@link #entry(int, int)} with each code point at
+   *     most once and in any order; the array is sorted in place
+   */
+  public CMapTableBuilder(Font.Builder fontBuilder, long[] mapping) {
     this.fontBuilder = fontBuilder;
-    this.mapping = mapping;
+    this.entries = mapping;
+    Arrays.sort(entries);
+  }
+
+  /**
+   * Packs a code point and the glyph id it maps to into an entry for {@link
+   * #CMapTableBuilder(Font.Builder, long[])}. Entries sort by code point.
+   *
+   * @param unicode the code point
+   * @param glyphId the glyph id
+   * @return the entry, with the code point in the high 32 bits and the glyph id in the low 32 bits
+   */
+  public static long entry(int unicode, int glyphId) {
+    return (long) unicode << 32 | glyphId;
+  }
+
+  private static long[] entries(Map<Integer, Integer> mapping) {
+    long[] entries = new long[mapping.size()];
+    int i = 0;
+    for (Map.Entry<Integer, Integer> entry : mapping.entrySet()) {
+      entries[i++] = entry(entry.getKey(), entry.getValue());
+    }
+    return entries;
   }
 
-  private class CMap4Segment {
-    private final int startCode;
-    private int endCode;
-    List<Integer> glyphIds;
+  /**
+   * Runs of consecutive code points mapped to consecutive glyph ids, in code point order. Code
+   * points mapped to notdef are left out since that is what any code point not in a cmap maps to.
+   */
+  private static final class Runs {
+    final int[] startCode;
+    final int[] endCode;
+    final int[] startGlyphId;
+    int size;
 
-    CMap4Segment(int startCode, int endCode) {
-      this.startCode = startCode;
-      this.endCode = endCode;
-      this.glyphIds = new ArrayList<>();
+    private Runs(int capacity) {
+      startCode = new int[capacity];
+      endCode = new int[capacity];
+      startGlyphId = new int[capacity];
     }
 
-    private boolean isContiguous() {
-      int firstId = glyphIds.get(0);
-      for (int index = 1; index < glyphIds.size(); index++) {
-        if (glyphIds.get(index) != firstId + index) {
-          return false;
+    /**
+     * Find the runs in a sorted mapping.
+     *
+     * @param entries the mapping, sorted by code point
+     * @param maxCode the largest code point to include
+     * @param lastCode a code point that must be in the last run, mapped to notdef if it isn't
+     *     mapped; -1 for none
+     */
+    static Runs of(long[] entries, int maxCode, int lastCode) {
+      Runs runs = new Runs(entries.length + 1);
+      boolean hasLastCode = false;
+      for (long entry : entries) {
+        int unicode = unicode(entry);
+        if (unicode > maxCode) {
+          break;
         }
+        hasLastCode |= unicode == lastCode;
+        if (glyphId(entry) != CMapTable.NOTDEF || unicode == lastCode) {
+          runs.add(unicode, glyphId(entry));
+        }
+      }
+      if (lastCode >= 0 && !hasLastCode) {
+        runs.add(lastCode, CMapTable.NOTDEF);
       }
-      return true;
+      return runs;
     }
 
-    int idDelta() {
-      return isContiguous() ? getGlyphIds().get(0) - getStartCode() : 0;
+    private void add(int unicode, int glyphId) {
+      int last = size - 1;
+      if (size > 0
+          && unicode == endCode[last] + 1
+          && glyphId == startGlyphId[last] + unicode - startCode[last]) {
+        endCode[last] = unicode;
+        return;
+      }
+      startCode[size] = unicode;
+      endCode[size] = unicode;
+      startGlyphId[size] = glyphId;
+      size++;
     }
+  }
 
-    public int getStartCode() {
-      return startCode;
+  /**
+   * Compute the format 12 groups for the mapping. Each group is a run of consecutive code points
+   * mapped to consecutive glyph ids.
+   */
+  private static List<CMapFormat12.Builder.Group> getFormat12Groups(long[] entries) {
+    Runs runs = Runs.of(entries, Integer.MAX_VALUE, -1);
+    List<CMapFormat12.Builder.Group> groups = new ArrayList<>(runs.size);
+    for (int i = 0; i < runs.size; i++) {
+      groups.add(
+          new CMapFormat12.Builder.Group(runs.startCode[i], runs.endCode[i], runs.startGlyphId[i]));
     }
+    return groups;
+  }
 
-    public void setEndCode(int endCode) {
-      this.endCode = endCode;
-    }
+  /**
+   * Choose the format 4 segments that encode the runs in the fewest bytes. Each segment either
+   * maps a single run with an idDelta, or maps any number of consecutive runs through the
+   * glyphIdArray, with the code points between the runs mapped to notdef. A run is never split
+   * across segments since that can't make the cmap smaller.
+   *
+   * <p>The cheapest encoding of the first {@code r} runs is found for each {@code r} in turn. An
+   * array segment from run {@code k} to run {@code r} costs a segment plus a glyph id for each code
+   * point from the start of run {@code k} to the end of run {@code r}, so the best {@code k} for
+   * each {@code r} is tracked as a running minimum and the whole choice takes linear time.
+   *
+   * @param runs the runs to encode, which must end with a run ending at 0xffff
+   * @return for each segment in order, the index of its first run; array segments are given as
+   *     {@code -1 - firstRun}
+   */
+  private static int[] chooseFormat4Segments(Runs runs) {
+    // cost[r] is the size of the cheapest encoding of the first r runs
+    long[] cost = new long[runs.size + 1];
+    // segmentStart[r] is the first run of the last segment in that encoding, negated for an array
+    int[] segmentStart = new int[runs.size + 1];
+    long bestArrayStartCost = Long.MAX_VALUE;
+    int bestArrayStart = 0;
+    for (int r = 1; r <= runs.size; r++) {
+      int run = r - 1;
+      long arrayStartCost = cost[run] - (long) FORMAT4_GLYPH_ID_SIZE * runs.startCode[run];
+      if (arrayStartCost < bestArrayStartCost) {
+        bestArrayStartCost = arrayStartCost;
+        bestArrayStart = run;
+      }
 
-    public int getEndCode() {
-      return endCode;
+      long deltaCost = cost[run] + FORMAT4_SEGMENT_SIZE;
+      long arrayCost =
+          bestArrayStartCost
+              + FORMAT4_SEGMENT_SIZE
+              + (long) FORMAT4_GLYPH_ID_SIZE * (runs.endCode[run] + 1);
+      if (deltaCost <= arrayCost) {
+        cost[r] = deltaCost;
+        segmentStart[r] = run;
+      } else {
+        cost[r] = arrayCost;
+        segmentStart[r] = -1 - bestArrayStart;
+      }
     }
 
-    public List<Integer> getGlyphIds() {
-      return glyphIds;
+    int numSegments = 0;
+    for (int r = runs.size; r > 0; r = firstRun(segmentStart[r])) {
+      numSegments++;
+    }
+    int[] segments = new int[numSegments];
+    for (int r = runs.size; r > 0; r = firstRun(segmentStart[r])) {
+      segments[--numSegments] = segmentStart[r];
     }
+    return segments;
   }
 
-  // TODO(raph): This currently uses a simplistic algorithm to compute segments.
-  // The segments computed are the longest contiguous segments that actually map
-  // glyph ids. A smarter approach would leave "holes", or short runs of glyphs
-  // mapped to notdef, to reduce the number of segments.
-  private List<CMap4Segment> getFormat4Segments() {
-    List<CMap4Segment> result = new ArrayList<>();
-    SortedMap<Integer, Integer> sortedMap = new TreeMap<>(mapping);
-    if (!sortedMap.containsKey(MAX_FORMAT4_ENDCODE)) {
-      sortedMap.put(MAX_FORMAT4_ENDCODE, 0);
-    }
+  private static int firstRun(int segment) {
+    return segment < 0 ? -1 - segment : segment;
+  }
 
-    CMap4Segment curSegment = null;
-    for (Map.Entry<Integer, Integer> entry : sortedMap.entrySet()) {
-      int unicode = entry.getKey();
-      if (unicode > MAX_FORMAT4_ENDCODE) {
-        break;
-      }
-      int glyphId = entry.getValue();
-      if (curSegment == null || unicode != curSegment.getEndCode() + 1) {
-        curSegment = new CMap4Segment(unicode, unicode);
-        result.add(curSegment);
-      } else {
-        curSegment.setEndCode(unicode);
-      }
-      curSegment.getGlyphIds().add(glyphId);
-    }
-    return result;
+  private static int unicode(long entry) {
+    return (int) (entry >>> 32);
   }
 
-  private void buildCMapFormat4(CMapFormat4.Builder builder, List<CMap4Segment> segments) {
-    List<CMapFormat4.Builder.Segment> segmentList = new ArrayList<>();
+  private static int glyphId(long entry) {
+    return (int) entry;
+  }
+
+  private static void buildCMapFormat4(CMapFormat4.Builder builder, long[] entries) {
+    Runs runs = Runs.of(entries, MAX_FORMAT4_ENDCODE, MAX_FORMAT4_ENDCODE);
+    int[] segments = chooseFormat4Segments(runs);
+    List<CMapFormat4.Builder.Segment> segmentList = new ArrayList<>(segments.length);
     List<Integer> glyphIdArray = new ArrayList<>();
 
     // The glyphIndexArray immediately follows the idRangeOffset array, so idOffset counts the
     // offset (in shorts) from the beginning of the idRangeOffset array to the next block of
     // glyphIndexArray data.
-    int idOffset = segments.size();
-    for (int i = 0; i < segments.size(); i++) {
-      CMap4Segment segment = segments.get(i);
-      int idRangeOffset;
-      if (segment.isContiguous()) {
-        idRangeOffset = 0;
-      } else {
-        idRangeOffset = (idOffset - i) * FontData.SizeOf.USHORT;
-        glyphIdArray.addAll(segment.getGlyphIds());
-        idOffset += segment.getGlyphIds().size();
+    int idOffset = segments.length;
+    for (int i = 0; i < segments.length; i++) {
+      int firstRun = firstRun(segments[i]);
+      int lastRun = (i + 1 < segments.length ? firstRun(segments[i + 1]) : runs.size) - 1;
+      int startCode = runs.startCode[firstRun];
+      int endCode = runs.endCode[lastRun];
+      if (segments[i] >= 0) {
+        int idDelta = runs.startGlyphId[firstRun] - startCode;
+        segmentList.add(new CMapFormat4.Builder.Segment(startCode, endCode, idDelta, 0));
+        continue;
+      }
+      int idRangeOffset = (idOffset - i) * FontData.SizeOf.USHORT;
+      int unicode = startCode;
+      for (int run = firstRun; run <= lastRun; run++) {
+        for (; unicode < runs.startCode[run]; unicode++) {
+          glyphIdArray.add(CMapTable.NOTDEF);
+        }
+        for (; unicode <= runs.endCode[run]; unicode++) {
+          glyphIdArray.add(runs.startGlyphId[run] + unicode - runs.startCode[run]);
+        }
       }
-      segmentList.add(
-          new CMapFormat4.Builder.Segment(
-              segment.getStartCode(), segment.getEndCode(), segment.idDelta(), idRangeOffset));
+      idOffset += endCode - startCode + 1;
+      segmentList.add(new CMapFormat4.Builder.Segment(startCode, endCode, 0, idRangeOffset));
     }
     builder.setGlyphIdArray(glyphIdArray);
     builder.setSegments(segmentList);
@@ -148,6 +267,14 @@ public class CMapTableBuilder {
     CMapFormat4.Builder cmapBuilder =
         (CMapFormat4.Builder)
             cmapTableBuilder.newCMapBuilder(CMapTable.CMapId.WINDOWS_BMP, CMap.CMapFormat.Format4);
-    buildCMapFormat4(cmapBuilder, getFormat4Segments());
+    buildCMapFormat4(cmapBuilder, entries);
+
+    if (entries.length > 0 && unicode(entries[entries.length - 1]) > MAX_FORMAT4_ENDCODE) {
+      CMapFormat12.Builder cmap12Builder =
+          (CMapFormat12.Builder)
+              cmapTableBuilder.newCMapBuilder(
+                  CMapTable.CMapId.WINDOWS_UCS4, CMap.CMapFormat.Format12);
+      cmap12Builder.setGroups(getFormat12Groups(entries));
+    }
   }
 }
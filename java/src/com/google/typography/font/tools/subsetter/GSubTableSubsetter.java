@@ -0,0 +1,1230 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.opentype.GSubTable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Subsets the GSUB table. The glyph ids in the coverage tables, class definitions and
+ * substitutions are mapped to the new glyph ids, and substitutions that use a glyph that isn't in
+ * the subset are removed. Lookups that are left empty or that no feature uses any more are
+ * dropped, as are features left without lookups. If no features are left the table is dropped.
+ *
+ * <p>Lookups of an unknown type or format are dropped, since their glyph ids can't be mapped.
+ */
+public class GSubTableSubsetter extends TableSubsetterImpl {
+
+  // lookup types
+  private static final int SINGLE = 1;
+  private static final int MULTIPLE = 2;
+  private static final int ALTERNATE = 3;
+  private static final int LIGATURE = 4;
+  private static final int CONTEXT = 5;
+  private static final int CHAINING_CONTEXT = 6;
+  private static final int EXTENSION = 7;
+  private static final int REVERSE_CHAINING_CONTEXT = 8;
+
+  private static final int USE_MARK_FILTERING_SET = 0x10;
+  private static final int MARK_ATTACHMENT_TYPE = 0xff00;
+  private static final int NO_REQUIRED_FEATURE = 0xffff;
+  private static final int MAX_OFFSET = 0xffff;
+
+  // the index of a feature or lookup that has been dropped
+  private static final int REMOVED = -1;
+
+  protected GSubTableSubsetter() {
+    super(Tag.GSUB);
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
+    if (subsetter.glyphMappingTable() == null) {
+      return false;
+    }
+    GSubTable gsub = font.getTable(Tag.GSUB);
+    if (gsub == null) {
+      return false;
+    }
+    // the mark attachment classes and mark filtering sets of lookups are defined in GDEF
+    boolean keepGdef = font.hasTable(Tag.GDEF) && !subsetter.removesTable(Tag.GDEF);
+    ReadableFontData data =
+        new TableSubset(gsub.readFontData(), subsetter.getInverseMapping(), keepGdef).subset();
+    if (data != null) {
+      fontBuilder.newTableBuilder(Tag.GSUB, data);
+    }
+    return true;
+  }
+
+  /** A lookup of the source table. */
+  private static final class Lookup {
+    final int flag;
+    final int markFilteringSet;
+    final boolean extension;
+    // the type of the subtables, after unwrapping any extension subtables
+    int type;
+    final List<ReadableFontData> subtables = new ArrayList<>();
+    List<byte[]> newSubtables;
+    // the lookups that the rules of contextual subtables refer to
+    final BitSet nestedLookups = new BitSet();
+
+    Lookup(int flag, int markFilteringSet, boolean extension) {
+      this.flag = flag;
+      this.markFilteringSet = markFilteringSet;
+      this.extension = extension;
+    }
+  }
+
+  /** A rule of a contextual subtable. */
+  private static final class Rule {
+    // the glyph, class or coverage sequences: the input sequence for a context rule, and the
+    // backtrack, input and lookahead sequences for a chaining context rule. The input sequence of
+    // a glyph or class rule doesn't have its first element, which is given by the rule set.
+    final int[][] sequences;
+    // pairs of sequence index and lookup index
+    final int[] records;
+
+    Rule(int[][] sequences, int[] records) {
+      this.sequences = sequences;
+      this.records = records;
+    }
+  }
+
+  /** The subsetting of one GSUB table. */
+  private static final class TableSubset {
+    private final ReadableFontData data;
+    private final int[] inverseMapping;
+    private final boolean keepGdef;
+
+    // the new index of each lookup; null until the lookups to keep are known
+    private int[] lookupMap;
+    // collects the lookups referred to by contextual rules while the lookup map is null
+    private BitSet nestedLookups;
+
+    /** @param keepGdef whether the subset font has a GDEF table for lookup flags to refer to */
+    TableSubset(ReadableFontData data, int[] inverseMapping, boolean keepGdef) {
+      this.data = data;
+      this.inverseMapping = inverseMapping;
+      this.keepGdef = keepGdef;
+    }
+
+    ReadableFontData subset() {
+      List<Lookup> lookups = readLookups();
+      for (Lookup lookup : lookups) {
+        lookup.newSubtables = subsetSubtables(lookup);
+      }
+
+      // keep the non-empty lookups used by a feature of a script, directly or through the rules of
+      // another lookup
+      int featureList = data.readUShort(6);
+      int featureCount = featureList == 0 ? 0 : data.readUShort(featureList);
+      BitSet usedFeatures = usedFeatures(featureCount);
+      BitSet keptLookups = new BitSet();
+      List<Integer> pending = new ArrayList<>();
+      for (int feature = usedFeatures.nextSetBit(0);
+          feature >= 0;
+          feature = usedFeatures.nextSetBit(feature + 1)) {
+        for (int lookupIndex : featureLookups(featureList, feature)) {
+          pending.add(lookupIndex);
+        }
+      }
+      while (!pending.isEmpty()) {
+        int lookupIndex = pending.remove(pending.size() - 1);
+        if (lookupIndex < lookups.size()
+            && !keptLookups.get(lookupIndex)
+            && !lookups.get(lookupIndex).newSubtables.isEmpty()) {
+          keptLookups.set(lookupIndex);
+          BitSet nested = lookups.get(lookupIndex).nestedLookups;
+          for (int i = nested.nextSetBit(0); i >= 0; i = nested.nextSetBit(i + 1)) {
+            pending.add(i);
+          }
+        }
+      }
+      lookupMap = new int[lookups.size()];
+      Arrays.fill(lookupMap, REMOVED);
+      int newLookupIndex = 0;
+      for (int i = keptLookups.nextSetBit(0); i >= 0; i = keptLookups.nextSetBit(i + 1)) {
+        lookupMap[i] = newLookupIndex++;
+      }
+
+      int[] featureMap = new int[featureCount];
+      int newFeatureIndex = 0;
+      for (int feature = 0; feature < featureCount; feature++) {
+        featureMap[feature] = REMOVED;
+        if (usedFeatures.get(feature)
+            && mapIndices(featureLookups(featureList, feature), lookupMap).length > 0) {
+          featureMap[feature] = newFeatureIndex++;
+        }
+      }
+      if (newFeatureIndex == 0) {
+        return null;
+      }
+
+      // now that the new lookup indices are known the rules can refer to them
+      List<Lookup> newLookups = new ArrayList<>();
+      for (int i = keptLookups.nextSetBit(0); i >= 0; i = keptLookups.nextSetBit(i + 1)) {
+        Lookup lookup = lookups.get(i);
+        if (lookup.type == CONTEXT || lookup.type == CHAINING_CONTEXT) {
+          lookup.newSubtables = subsetSubtables(lookup);
+        }
+        newLookups.add(lookup);
+      }
+
+      Writer writer = writeTable(newLookups, featureMap, false);
+      if (writer.overflowed()) {
+        // move the subtables to the end of the table, where 32 bit offsets can reach them
+        writer = writeTable(newLookups, featureMap, true);
+        if (writer.overflowed()) {
+          throw new IllegalStateException("Subsetted GSUB table is too large for its offsets.");
+        }
+      }
+      return writer.data();
+    }
+
+    private int map(int glyphId) {
+      return Subsetter.newGlyphId(inverseMapping, glyphId);
+    }
+
+    private List<Lookup> readLookups() {
+      List<Lookup> lookups = new ArrayList<>();
+      int lookupList = data.readUShort(8);
+      int lookupCount = lookupList == 0 ? 0 : data.readUShort(lookupList);
+      for (int i = 0; i < lookupCount; i++) {
+        int lookupOffset = lookupList + data.readUShort(lookupList + 2 + 2 * i);
+        ReadableFontData lookupData = data.slice(lookupOffset);
+        int type = lookupData.readUShort(0);
+        int flag = lookupData.readUShort(2);
+        int subtableCount = lookupData.readUShort(4);
+        int markFilteringSet =
+            (flag & USE_MARK_FILTERING_SET) != 0 ? lookupData.readUShort(6 + 2 * subtableCount) : 0;
+        Lookup lookup = new Lookup(flag, markFilteringSet, type == EXTENSION);
+        lookup.type = type;
+        for (int j = 0; j < subtableCount; j++) {
+          ReadableFontData subtable = lookupData.slice(lookupData.readUShort(6 + 2 * j));
+          if (type == EXTENSION) {
+            int extensionType = subtable.readUShort(2);
+            if (j == 0) {
+              lookup.type = extensionType;
+            } else if (extensionType != lookup.type) {
+              continue;
+            }
+            subtable = subtable.slice(subtable.readULongAsInt(4));
+          }
+          lookup.subtables.add(subtable);
+        }
+        lookups.add(lookup);
+      }
+      return lookups;
+    }
+
+    private BitSet usedFeatures(int featureCount) {
+      BitSet used = new BitSet();
+      for (int langSys : langSysOffsets()) {
+        int required = data.readUShort(langSys + 2);
+        if (required != NO_REQUIRED_FEATURE) {
+          used.set(required);
+        }
+        for (int feature : readUShorts(data, langSys + 6, data.readUShort(langSys + 4))) {
+          used.set(feature);
+        }
+      }
+      used.clear(featureCount, Math.max(featureCount, used.length()));
+      return used;
+    }
+
+    private List<Integer> langSysOffsets() {
+      List<Integer> offsets = new ArrayList<>();
+      int scriptList = data.readUShort(4);
+      int scriptCount = scriptList == 0 ? 0 : data.readUShort(scriptList);
+      for (int i = 0; i < scriptCount; i++) {
+        int script = scriptList + data.readUShort(scriptList + 2 + 6 * i + 4);
+        int defaultLangSys = data.readUShort(script);
+        if (defaultLangSys != 0) {
+          offsets.add(script + defaultLangSys);
+        }
+        int langSysCount = data.readUShort(script + 2);
+        for (int j = 0; j < langSysCount; j++) {
+          offsets.add(script + data.readUShort(script + 4 + 6 * j + 4));
+        }
+      }
+      return offsets;
+    }
+
+    private int[] featureLookups(int featureList, int feature) {
+      int offset = featureList + data.readUShort(featureList + 2 + 6 * feature + 4);
+      return readUShorts(data, offset + 4, data.readUShort(offset + 2));
+    }
+
+    private List<byte[]> subsetSubtables(Lookup lookup) {
+      nestedLookups = lookup.nestedLookups;
+      List<byte[]> newSubtables = new ArrayList<>();
+      for (ReadableFontData subtable : lookup.subtables) {
+        Writer writer = new Writer();
+        if (subsetSubtable(lookup.type, subtable, writer)) {
+          newSubtables.add(writer.toByteArray());
+        }
+      }
+      return newSubtables;
+    }
+
+    private boolean subsetSubtable(int type, ReadableFontData subtable, Writer writer) {
+      int format = subtable.readUShort(0);
+      switch (type) {
+        case SINGLE:
+          return subsetSingle(subtable, format, writer);
+        case MULTIPLE:
+        case ALTERNATE:
+          return format == 1 && subsetSequences(subtable, type == ALTERNATE, writer);
+        case LIGATURE:
+          return format == 1 && subsetLigatures(subtable, writer);
+        case CONTEXT:
+        case CHAINING_CONTEXT:
+          boolean chaining = type == CHAINING_CONTEXT;
+          switch (format) {
+            case 1:
+              return subsetGlyphContext(subtable, chaining, writer);
+            case 2:
+              return subsetClassContext(subtable, chaining, writer);
+            case 3:
+              return subsetCoverageContext(subtable, chaining, writer);
+            default:
+              return false;
+          }
+        case REVERSE_CHAINING_CONTEXT:
+          return format == 1 && subsetReverseChaining(subtable, writer);
+        default:
+          return false;
+      }
+    }
+
+    private boolean subsetSingle(ReadableFontData subtable, int format, Writer writer) {
+      if (format != 1 && format != 2) {
+        return false;
+      }
+      int[] coverage = readCoverage(subtable, subtable.readUShort(2));
+      int[] indices = coveredIndices(coverage);
+      int[] glyphs = new int[indices.length];
+      int[] substitutes = new int[indices.length];
+      int count = 0;
+      for (int index : indices) {
+        int substitute;
+        if (format == 1) {
+          substitute = map((coverage[index] + subtable.readUShort(4)) & 0xffff);
+        } else if (index < subtable.readUShort(4)) {
+          substitute = map(subtable.readUShort(6 + 2 * index));
+        } else {
+          continue;
+        }
+        if (substitute != Subsetter.NO_GLYPH) {
+          glyphs[count] = map(coverage[index]);
+          substitutes[count] = substitute;
+          count++;
+        }
+      }
+      if (count == 0) {
+        return false;
+      }
+      glyphs = Arrays.copyOf(glyphs, count);
+      int delta = substitutes[0] - glyphs[0];
+      boolean sameDelta = true;
+      for (int i = 1; i < count; i++) {
+        sameDelta &= substitutes[i] - glyphs[i] == delta;
+      }
+      int coverageAt;
+      if (sameDelta) {
+        writer.writeUShort(1);
+        coverageAt = writer.reserveOffsets(1);
+        writer.writeUShort(delta & 0xffff);
+      } else {
+        writer.writeUShort(2);
+        coverageAt = writer.reserveOffsets(1);
+        writer.writeUShort(count);
+        writer.writeUShorts(substitutes, 0, count);
+      }
+      writer.setOffset(coverageAt, 0);
+      writeCoverage(writer, glyphs);
+      return true;
+    }
+
+    private boolean subsetSequences(ReadableFontData subtable, boolean alternate, Writer writer) {
+      int[] coverage = readCoverage(subtable, subtable.readUShort(2));
+      int sequenceCount = subtable.readUShort(4);
+      List<int[]> sequences = new ArrayList<>();
+      int[] glyphs = new int[coverage.length];
+      for (int index : coveredIndices(coverage)) {
+        if (index >= sequenceCount) {
+          continue;
+        }
+        int offset = subtable.readUShort(6 + 2 * index);
+        int[] sequence =
+            mapGlyphs(readUShorts(subtable, offset + 2, subtable.readUShort(offset)), alternate);
+        if (sequence != null && (!alternate || sequence.length > 0)) {
+          glyphs[sequences.size()] = map(coverage[index]);
+          sequences.add(sequence);
+        }
+      }
+      if (sequences.isEmpty()) {
+        return false;
+      }
+      writer.writeUShort(1);
+      int coverageAt = writer.reserveOffsets(1);
+      writer.writeUShort(sequences.size());
+      int sequencesAt = writer.reserveOffsets(sequences.size());
+      for (int i = 0; i < sequences.size(); i++) {
+        writer.setOffset(sequencesAt + 2 * i, 0);
+        writer.writeUShort(sequences.get(i).length);
+        writer.writeUShorts(sequences.get(i), 0, sequences.get(i).length);
+      }
+      writer.setOffset(coverageAt, 0);
+      writeCoverage(writer, Arrays.copyOf(glyphs, sequences.size()));
+      return true;
+    }
+
+    private boolean subsetLigatures(ReadableFontData subtable, Writer writer) {
+      int[] coverage = readCoverage(subtable, subtable.readUShort(2));
+      int setCount = subtable.readUShort(4);
+      List<List<int[]>> sets = new ArrayList<>();
+      int[] glyphs = new int[coverage.length];
+      for (int index : coveredIndices(coverage)) {
+        if (index >= setCount) {
+          continue;
+        }
+        int set = subtable.readUShort(6 + 2 * index);
+        int ligatureCount = subtable.readUShort(set);
+        List<int[]> ligatures = new ArrayList<>();
+        for (int i = 0; i < ligatureCount; i++) {
+          int offset = set + subtable.readUShort(set + 2 + 2 * i);
+          int componentCount = subtable.readUShort(offset + 2);
+          if (componentCount == 0) {
+            continue;
+          }
+          // the ligature glyph followed by the components after the first
+          int[] ligature = readUShorts(subtable, offset + 2, componentCount);
+          ligature[0] = subtable.readUShort(offset);
+          ligature = mapGlyphs(ligature, false);
+          if (ligature != null) {
+            ligatures.add(ligature);
+          }
+        }
+        if (!ligatures.isEmpty()) {
+          glyphs[sets.size()] = map(coverage[index]);
+          sets.add(ligatures);
+        }
+      }
+      if (sets.isEmpty()) {
+        return false;
+      }
+      writer.writeUShort(1);
+      int coverageAt = writer.reserveOffsets(1);
+      writer.writeUShort(sets.size());
+      int setsAt = writer.reserveOffsets(sets.size());
+      for (int i = 0; i < sets.size(); i++) {
+        writer.setOffset(setsAt + 2 * i, 0);
+        List<int[]> ligatures = sets.get(i);
+        int set = writer.size();
+        writer.writeUShort(ligatures.size());
+        int ligaturesAt = writer.reserveOffsets(ligatures.size());
+        for (int j = 0; j < ligatures.size(); j++) {
+          writer.setOffset(ligaturesAt + 2 * j, set);
+          int[] ligature = ligatures.get(j);
+          writer.writeUShort(ligature[0]);
+          writer.writeUShort(ligature.length);
+          writer.writeUShorts(ligature, 1, ligature.length);
+        }
+      }
+      writer.setOffset(coverageAt, 0);
+      writeCoverage(writer, Arrays.copyOf(glyphs, sets.size()));
+      return true;
+    }
+
+    private boolean subsetGlyphContext(ReadableFontData subtable, boolean chaining, Writer writer) {
+      int[] coverage = readCoverage(subtable, subtable.readUShort(2));
+      int setCount = subtable.readUShort(4);
+      List<List<Rule>> sets = new ArrayList<>();
+      int[] glyphs = new int[coverage.length];
+      for (int index : coveredIndices(coverage)) {
+        int set = index < setCount ? subtable.readUShort(6 + 2 * index) : 0;
+        if (set == 0) {
+          continue;
+        }
+        List<Rule> rules = subsetRuleSet(subtable, set, chaining, null);
+        if (!rules.isEmpty()) {
+          glyphs[sets.size()] = map(coverage[index]);
+          sets.add(rules);
+        }
+      }
+      if (sets.isEmpty()) {
+        return false;
+      }
+      writer.writeUShort(1);
+      int coverageAt = writer.reserveOffsets(1);
+      writer.writeUShort(sets.size());
+      writeRuleSets(writer, writer.reserveOffsets(sets.size()), sets, chaining);
+      writer.setOffset(coverageAt, 0);
+      writeCoverage(writer, Arrays.copyOf(glyphs, sets.size()));
+      return true;
+    }
+
+    private boolean subsetClassContext(ReadableFontData subtable, boolean chaining, Writer writer) {
+      int[] glyphs = mapCoverage(readCoverage(subtable, subtable.readUShort(2)));
+      int classDefCount = chaining ? 3 : 1;
+      long[][] classDefs = new long[classDefCount][];
+      BitSet[] classes = new BitSet[classDefCount];
+      for (int i = 0; i < classDefCount; i++) {
+        classDefs[i] = readClassDef(subtable, subtable.readUShort(4 + 2 * i));
+        classes[i] = classes(classDefs[i]);
+      }
+      BitSet inputClasses = classes[chaining ? 1 : 0];
+      int setCountAt = 4 + 2 * classDefCount;
+      int setCount = subtable.readUShort(setCountAt);
+      List<List<Rule>> sets = new ArrayList<>();
+      int newSetCount = 0;
+      for (int inputClass = 0; inputClass < setCount; inputClass++) {
+        int set = subtable.readUShort(setCountAt + 2 + 2 * inputClass);
+        List<Rule> rules = new ArrayList<>();
+        if (set != 0 && inputClasses.get(inputClass)) {
+          rules = subsetRuleSet(subtable, set, chaining, classes);
+        }
+        sets.add(rules);
+        if (!rules.isEmpty()) {
+          newSetCount = sets.size();
+        }
+      }
+      if (glyphs.length == 0 || newSetCount == 0) {
+        return false;
+      }
+      sets = sets.subList(0, newSetCount);
+      writer.writeUShort(2);
+      int coverageAt = writer.reserveOffsets(1);
+      int classDefsAt = writer.reserveOffsets(classDefCount);
+      writer.writeUShort(newSetCount);
+      writeRuleSets(writer, writer.reserveOffsets(newSetCount), sets, chaining);
+      writer.setOffset(coverageAt, 0);
+      writeCoverage(writer, glyphs);
+      for (int i = 0; i < classDefCount; i++) {
+        writer.setOffset(classDefsAt + 2 * i, 0);
+        writeClassDef(writer, classDefs[i]);
+      }
+      return true;
+    }
+
+    private boolean subsetCoverageContext(
+        ReadableFontData subtable, boolean chaining, Writer writer) {
+      int[][][] coverages = new int[chaining ? 3 : 1][][];
+      int[] records;
+      if (chaining) {
+        int offset = 2;
+        for (int i = 0; i < coverages.length; i++) {
+          coverages[i] = readCoverages(subtable, offset + 2, subtable.readUShort(offset));
+          offset += 2 + 2 * coverages[i].length;
+        }
+        records = readUShorts(subtable, offset + 2, 2 * subtable.readUShort(offset));
+      } else {
+        int glyphCount = subtable.readUShort(2);
+        coverages[0] = readCoverages(subtable, 6, glyphCount);
+        records = readUShorts(subtable, 6 + 2 * glyphCount, 2 * subtable.readUShort(4));
+      }
+      if (coverages[chaining ? 1 : 0].length == 0) {
+        return false;
+      }
+      for (int[][] sequence : coverages) {
+        for (int[] coverage : sequence) {
+          if (coverage.length == 0) {
+            return false;
+          }
+        }
+      }
+      records = subsetRecords(records);
+
+      writer.writeUShort(3);
+      int[] coveragesAt = new int[coverages.length];
+      if (chaining) {
+        for (int i = 0; i < coverages.length; i++) {
+          writer.writeUShort(coverages[i].length);
+          coveragesAt[i] = writer.reserveOffsets(coverages[i].length);
+        }
+        writer.writeUShort(records.length / 2);
+      } else {
+        writer.writeUShort(coverages[0].length);
+        writer.writeUShort(records.length / 2);
+        coveragesAt[0] = writer.reserveOffsets(coverages[0].length);
+      }
+      writer.writeUShorts(records, 0, records.length);
+      for (int i = 0; i < coverages.length; i++) {
+        writeCoverages(writer, coveragesAt[i], coverages[i]);
+      }
+      return true;
+    }
+
+    private boolean subsetReverseChaining(ReadableFontData subtable, Writer writer) {
+      int[] coverage = readCoverage(subtable, subtable.readUShort(2));
+      int[][][] contexts = new int[2][][];
+      int offset = 4;
+      for (int i = 0; i < contexts.length; i++) {
+        contexts[i] = readCoverages(subtable, offset + 2, subtable.readUShort(offset));
+        offset += 2 + 2 * contexts[i].length;
+      }
+      for (int[][] context : contexts) {
+        for (int[] glyphs : context) {
+          if (glyphs.length == 0) {
+            return false;
+          }
+        }
+      }
+      int substituteCount = subtable.readUShort(offset);
+      int[] indices = coveredIndices(coverage);
+      int[] glyphs = new int[indices.length];
+      int[] substitutes = new int[indices.length];
+      int count = 0;
+      for (int index : indices) {
+        int substitute =
+            index < substituteCount
+                ? map(subtable.readUShort(offset + 2 + 2 * index))
+                : Subsetter.NO_GLYPH;
+        if (substitute != Subsetter.NO_GLYPH) {
+          glyphs[count] = map(coverage[index]);
+          substitutes[count] = substitute;
+          count++;
+        }
+      }
+      if (count == 0) {
+        return false;
+      }
+      writer.writeUShort(1);
+      int coverageAt = writer.reserveOffsets(1);
+      int[] contextsAt = new int[contexts.length];
+      for (int i = 0; i < contexts.length; i++) {
+        writer.writeUShort(contexts[i].length);
+        contextsAt[i] = writer.reserveOffsets(contexts[i].length);
+      }
+      writer.writeUShort(count);
+      writer.writeUShorts(substitutes, 0, count);
+      writer.setOffset(coverageAt, 0);
+      writeCoverage(writer, Arrays.copyOf(glyphs, count));
+      for (int i = 0; i < contexts.length; i++) {
+        writeCoverages(writer, contextsAt[i], contexts[i]);
+      }
+      return true;
+    }
+
+    /**
+     * Subsets the rules of a rule set of a contextual subtable.
+     *
+     * @param subtable the subtable data
+     * @param set the offset of the rule set in the subtable
+     * @param chaining whether the subtable is a chaining context subtable
+     * @param classes the classes left in each class definition of a class based subtable; null
+     *     for a glyph based subtable
+     * @return the rules that can still match
+     */
+    private List<Rule> subsetRuleSet(
+        ReadableFontData subtable, int set, boolean chaining, BitSet[] classes) {
+      List<Rule> rules = new ArrayList<>();
+      int ruleCount = subtable.readUShort(set);
+      for (int i = 0; i < ruleCount; i++) {
+        Rule rule = readRule(subtable, set + subtable.readUShort(set + 2 + 2 * i), chaining);
+        int[][] sequences = new int[rule.sequences.length][];
+        boolean matches = true;
+        for (int j = 0; j < sequences.length && matches; j++) {
+          if (classes == null) {
+            sequences[j] = mapGlyphs(rule.sequences[j], false);
+            matches = sequences[j] != null;
+          } else {
+            sequences[j] = rule.sequences[j];
+            matches = hasClasses(classes[j], sequences[j]);
+          }
+        }
+        if (matches) {
+          rules.add(new Rule(sequences, subsetRecords(rule.records)));
+        }
+      }
+      return rules;
+    }
+
+    /**
+     * Maps the lookup indices of the sequence lookup records of a rule. Before the lookups to keep
+     * are known, the lookups are only collected and the records are left as they are.
+     */
+    private int[] subsetRecords(int[] records) {
+      int[] newRecords = new int[records.length];
+      int length = 0;
+      for (int i = 0; i + 1 < records.length; i += 2) {
+        int lookupIndex = records[i + 1];
+        if (lookupMap == null) {
+          nestedLookups.set(lookupIndex);
+        } else {
+          lookupIndex = lookupIndex < lookupMap.length ? lookupMap[lookupIndex] : REMOVED;
+          if (lookupIndex == REMOVED) {
+            continue;
+          }
+        }
+        newRecords[length++] = records[i];
+        newRecords[length++] = lookupIndex;
+      }
+      return Arrays.copyOf(newRecords, length);
+    }
+
+    /**
+     * Gets the indices into a coverage table of the glyphs that are in the subset, in the order of
+     * their new glyph ids.
+     */
+    private int[] coveredIndices(int[] coverage) {
+      long[] keys = new long[coverage.length];
+      int count = 0;
+      for (int i = 0; i < coverage.length; i++) {
+        int glyphId = map(coverage[i]);
+        if (glyphId != Subsetter.NO_GLYPH) {
+          keys[count++] = (long) glyphId << 32 | i;
+        }
+      }
+      Arrays.sort(keys, 0, count);
+      int[] indices = new int[count];
+      for (int i = 0; i < count; i++) {
+        indices[i] = (int) keys[i];
+      }
+      return indices;
+    }
+
+    /** Gets the new glyph ids of the glyphs of a coverage table that are in the subset, sorted. */
+    private int[] mapCoverage(int[] coverage) {
+      int[] glyphs = mapGlyphs(coverage, true);
+      Arrays.sort(glyphs);
+      return glyphs;
+    }
+
+    private int[][] readCoverages(ReadableFontData subtable, int offset, int count) {
+      int[][] coverages = new int[count][];
+      for (int i = 0; i < count; i++) {
+        coverages[i] = mapCoverage(readCoverage(subtable, subtable.readUShort(offset + 2 * i)));
+      }
+      return coverages;
+    }
+
+    /**
+     * Maps glyph ids to the new glyph ids.
+     *
+     * @param glyphs the old glyph ids
+     * @param dropMissing whether to drop the glyphs that aren't in the subset
+     * @return the new glyph ids; null if a glyph isn't in the subset and missing glyphs aren't
+     *     dropped
+     */
+    private int[] mapGlyphs(int[] glyphs, boolean dropMissing) {
+      int[] newGlyphs = new int[glyphs.length];
+      int count = 0;
+      for (int glyphId : glyphs) {
+        int newGlyphId = map(glyphId);
+        if (newGlyphId != Subsetter.NO_GLYPH) {
+          newGlyphs[count++] = newGlyphId;
+        } else if (!dropMissing) {
+          return null;
+        }
+      }
+      return Arrays.copyOf(newGlyphs, count);
+    }
+
+    /**
+     * Reads a class definition table, keeping the glyphs in the subset.
+     *
+     * @return the glyphs that aren't in class 0 as new glyph id and class pairs, each packed into a
+     *     long with the glyph id in the high bits, sorted
+     */
+    private long[] readClassDef(ReadableFontData subtable, int offset) {
+      if (offset == 0) {
+        return new long[0];
+      }
+      int format = subtable.readUShort(offset);
+      long[] entries = new long[0];
+      int count = 0;
+      if (format == 1) {
+        int startGlyph = subtable.readUShort(offset + 2);
+        int glyphCount = subtable.readUShort(offset + 4);
+        entries = new long[glyphCount];
+        for (int i = 0; i < glyphCount; i++) {
+          count = addClass(entries, count, startGlyph + i, subtable.readUShort(offset + 6 + 2 * i));
+        }
+      } else if (format == 2) {
+        int rangeCount = subtable.readUShort(offset + 2);
+        int glyphCount = 0;
+        for (int i = 0; i < rangeCount; i++) {
+          int range = offset + 4 + 6 * i;
+          int length = subtable.readUShort(range + 2) - subtable.readUShort(range) + 1;
+          glyphCount += Math.max(0, length);
+        }
+        entries = new long[glyphCount];
+        for (int i = 0; i < rangeCount; i++) {
+          int range = offset + 4 + 6 * i;
+          int glyphClass = subtable.readUShort(range + 4);
+          for (int g = subtable.readUShort(range); g <= subtable.readUShort(range + 2); g++) {
+            count = addClass(entries, count, g, glyphClass);
+          }
+        }
+      }
+      Arrays.sort(entries, 0, count);
+      return Arrays.copyOf(entries, count);
+    }
+
+    private int addClass(long[] entries, int count, int glyphId, int glyphClass) {
+      int newGlyphId = map(glyphId);
+      if (glyphClass != 0 && newGlyphId != Subsetter.NO_GLYPH) {
+        entries[count++] = (long) newGlyphId << 16 | glyphClass;
+      }
+      return count;
+    }
+
+    private Writer writeTable(List<Lookup> lookups, int[] featureMap, boolean useExtensions) {
+      Writer writer = new Writer();
+      writer.writeUShort(1);
+      writer.writeUShort(0);
+      int listsAt = writer.reserveOffsets(3);
+      writer.setOffset(listsAt, 0);
+      writeScriptList(writer, featureMap);
+      writer.setOffset(listsAt + 2, 0);
+      writeFeatureList(writer, featureMap);
+      writer.setOffset(listsAt + 4, 0);
+
+      int lookupList = writer.size();
+      writer.writeUShort(lookups.size());
+      int lookupsAt = writer.reserveOffsets(lookups.size());
+      List<Integer> extensionsAt = new ArrayList<>();
+      List<byte[]> extensionSubtables = new ArrayList<>();
+      for (int i = 0; i < lookups.size(); i++) {
+        writer.setOffset(lookupsAt + 2 * i, lookupList);
+        Lookup lookup = lookups.get(i);
+        boolean extension = useExtensions || lookup.extension;
+        int lookupTable = writer.size();
+        int flag = lookup.flag;
+        if (!keepGdef) {
+          flag &= ~(MARK_ATTACHMENT_TYPE | USE_MARK_FILTERING_SET);
+        }
+        writer.writeUShort(extension ? EXTENSION : lookup.type);
+        writer.writeUShort(flag);
+        writer.writeUShort(lookup.newSubtables.size());
+        int subtablesAt = writer.reserveOffsets(lookup.newSubtables.size());
+        if ((flag & USE_MARK_FILTERING_SET) != 0) {
+          writer.writeUShort(lookup.markFilteringSet);
+        }
+        for (int j = 0; j < lookup.newSubtables.size(); j++) {
+          writer.setOffset(subtablesAt + 2 * j, lookupTable);
+          if (extension) {
+            extensionsAt.add(writer.size());
+            extensionSubtables.add(lookup.newSubtables.get(j));
+            writer.writeUShort(1);
+            writer.writeUShort(lookup.type);
+            writer.writeULong(0);
+          } else {
+            writer.writeBytes(lookup.newSubtables.get(j));
+          }
+        }
+      }
+      // the subtables of extension lookups go after everything else, at 32 bit offsets
+      for (int i = 0; i < extensionsAt.size(); i++) {
+        writer.setLongOffset(extensionsAt.get(i) + 4, extensionsAt.get(i));
+        writer.writeBytes(extensionSubtables.get(i));
+      }
+      return writer;
+    }
+
+    private void writeScriptList(Writer writer, int[] featureMap) {
+      int scriptList = data.readUShort(4);
+      int scriptCount = scriptList == 0 ? 0 : data.readUShort(scriptList);
+      int newScriptList = writer.size();
+      writer.writeUShort(scriptCount);
+      int recordsAt = writeTagRecords(writer, scriptList + 2, scriptCount);
+      for (int i = 0; i < scriptCount; i++) {
+        writer.setOffset(recordsAt + 6 * i + 4, newScriptList);
+        int script = scriptList + data.readUShort(scriptList + 2 + 6 * i + 4);
+        int newScript = writer.size();
+        int defaultLangSys = data.readUShort(script);
+        int langSysCount = data.readUShort(script + 2);
+        int defaultLangSysAt = writer.reserveOffsets(1);
+        writer.writeUShort(langSysCount);
+        int langSysRecordsAt = writeTagRecords(writer, script + 4, langSysCount);
+        if (defaultLangSys != 0) {
+          writer.setOffset(defaultLangSysAt, newScript);
+          writeLangSys(writer, script + defaultLangSys, featureMap);
+        }
+        for (int j = 0; j < langSysCount; j++) {
+          writer.setOffset(langSysRecordsAt + 6 * j + 4, newScript);
+          writeLangSys(writer, script + data.readUShort(script + 4 + 6 * j + 4), featureMap);
+        }
+      }
+    }
+
+    private void writeLangSys(Writer writer, int langSys, int[] featureMap) {
+      int required = data.readUShort(langSys + 2);
+      if (required != NO_REQUIRED_FEATURE) {
+        required = required < featureMap.length ? featureMap[required] : REMOVED;
+      }
+      int[] features =
+          mapIndices(readUShorts(data, langSys + 6, data.readUShort(langSys + 4)), featureMap);
+      writer.writeUShort(0); // lookup order
+      writer.writeUShort(required == REMOVED ? NO_REQUIRED_FEATURE : required);
+      writer.writeUShort(features.length);
+      writer.writeUShorts(features, 0, features.length);
+    }
+
+    private void writeFeatureList(Writer writer, int[] featureMap) {
+      int featureList = data.readUShort(6);
+      int newFeatureList = writer.size();
+      List<Integer> features = new ArrayList<>();
+      for (int feature = 0; feature < featureMap.length; feature++) {
+        if (featureMap[feature] != REMOVED) {
+          features.add(feature);
+        }
+      }
+      writer.writeUShort(features.size());
+      int recordsAt = writer.size();
+      for (int feature : features) {
+        writer.writeULong(data.readULong(featureList + 2 + 6 * feature));
+        writer.reserveOffsets(1);
+      }
+      for (int i = 0; i < features.size(); i++) {
+        writer.setOffset(recordsAt + 6 * i + 4, newFeatureList);
+        int record = featureList + 2 + 6 * features.get(i);
+        int feature = featureList + data.readUShort(record + 4);
+        int newFeature = writer.size();
+        int params = data.readUShort(feature);
+        int paramsLength =
+            params == 0 ? 0 : featureParamsLength(data.readULongAsInt(record), feature + params);
+        int paramsAt = writer.reserveOffsets(1);
+        int[] lookups = mapIndices(featureLookups(featureList, features.get(i)), lookupMap);
+        writer.writeUShort(lookups.length);
+        writer.writeUShorts(lookups, 0, lookups.length);
+        if (paramsLength > 0) {
+          writer.setOffset(paramsAt, newFeature);
+          writer.writeBytes(readBytes(data, feature + params, paramsLength));
+        }
+      }
+    }
+
+    /**
+     * Gets the length of the feature parameters of a feature. The parameters of the stylistic set
+     * and character variant features are kept, and those of other features are dropped.
+     */
+    private int featureParamsLength(int tag, int params) {
+      String name = Tag.stringValue(tag);
+      if (name.startsWith("ss")) {
+        return 4; // version and UI name id
+      }
+      if (name.startsWith("cv")) {
+        return 14 + 3 * data.readUShort(params + 12); // name ids and 24 bit characters
+      }
+      return 0;
+    }
+
+    /** Copies tag records, leaving their offsets to be set, and gets where they were written. */
+    private int writeTagRecords(Writer writer, int records, int count) {
+      int recordsAt = writer.size();
+      for (int i = 0; i < count; i++) {
+        writer.writeULong(data.readULong(records + 6 * i));
+        writer.reserveOffsets(1);
+      }
+      return recordsAt;
+    }
+  }
+
+  private static int[] readUShorts(ReadableFontData data, int offset, int count) {
+    int[] values = new int[Math.max(0, count)];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = data.readUShort(offset + 2 * i);
+    }
+    return values;
+  }
+
+  private static byte[] readBytes(ReadableFontData data, int offset, int length) {
+    byte[] b = new byte[length];
+    if (length > 0) {
+      data.readBytes(offset, b, 0, length);
+    }
+    return b;
+  }
+
+  /**
+   * Reads a coverage table.
+   *
+   * @return the glyph ids in coverage index order
+   */
+  private static int[] readCoverage(ReadableFontData data, int offset) {
+    int format = offset == 0 ? 0 : data.readUShort(offset);
+    if (format == 1) {
+      return readUShorts(data, offset + 4, data.readUShort(offset + 2));
+    }
+    if (format != 2) {
+      return new int[0];
+    }
+    int rangeCount = data.readUShort(offset + 2);
+    int glyphCount = 0;
+    for (int i = 0; i < rangeCount; i++) {
+      int range = offset + 4 + 6 * i;
+      int length = data.readUShort(range + 2) - data.readUShort(range) + 1;
+      glyphCount = Math.max(glyphCount, data.readUShort(range + 4) + length);
+    }
+    int[] glyphs = new int[glyphCount];
+    for (int i = 0; i < rangeCount; i++) {
+      int range = offset + 4 + 6 * i;
+      int start = data.readUShort(range);
+      int startIndex = data.readUShort(range + 4);
+      for (int g = start; g <= data.readUShort(range + 2); g++) {
+        glyphs[startIndex + g - start] = g;
+      }
+    }
+    return glyphs;
+  }
+
+  /** Writes a coverage table for sorted glyph ids, in whichever format is smaller. */
+  private static void writeCoverage(Writer writer, int[] glyphs) {
+    int rangeCount = 0;
+    for (int i = 0; i < glyphs.length; i++) {
+      if (i == 0 || glyphs[i] != glyphs[i - 1] + 1) {
+        rangeCount++;
+      }
+    }
+    if (6 * rangeCount < 2 * glyphs.length) {
+      writer.writeUShort(2);
+      writer.writeUShort(rangeCount);
+      for (int start = 0, end = 0; start < glyphs.length; start = ++end) {
+        while (end + 1 < glyphs.length && glyphs[end + 1] == glyphs[end] + 1) {
+          end++;
+        }
+        writer.writeUShort(glyphs[start]);
+        writer.writeUShort(glyphs[end]);
+        writer.writeUShort(start);
+      }
+    } else {
+      writer.writeUShort(1);
+      writer.writeUShort(glyphs.length);
+      writer.writeUShorts(glyphs, 0, glyphs.length);
+    }
+  }
+
+  private static void writeCoverages(Writer writer, int offsetsAt, int[][] coverages) {
+    for (int i = 0; i < coverages.length; i++) {
+      writer.setOffset(offsetsAt + 2 * i, 0);
+      writeCoverage(writer, coverages[i]);
+    }
+  }
+
+  /** Gets the classes of a class definition, including class 0. */
+  private static BitSet classes(long[] classDef) {
+    BitSet classes = new BitSet();
+    classes.set(0);
+    for (long entry : classDef) {
+      classes.set((int) entry & 0xffff);
+    }
+    return classes;
+  }
+
+  private static boolean hasClasses(BitSet classes, int[] sequence) {
+    for (int glyphClass : sequence) {
+      if (!classes.get(glyphClass)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Writes a class definition table from sorted entries, in whichever format is smaller. */
+  private static void writeClassDef(Writer writer, long[] classDef) {
+    int rangeCount = 0;
+    for (int i = 0; i < classDef.length; i++) {
+      if (i == 0 || classDef[i] != classDef[i - 1] + (1 << 16)) {
+        rangeCount++;
+      }
+    }
+    int firstGlyph = classDef.length == 0 ? 0 : (int) (classDef[0] >> 16);
+    int lastGlyph = classDef.length == 0 ? -1 : (int) (classDef[classDef.length - 1] >> 16);
+    if (4 + 6 * rangeCount <= 6 + 2 * (lastGlyph - firstGlyph + 1)) {
+      writer.writeUShort(2);
+      writer.writeUShort(rangeCount);
+      for (int start = 0, end = 0; start < classDef.length; start = ++end) {
+        while (end + 1 < classDef.length && classDef[end + 1] == classDef[end] + (1 << 16)) {
+          end++;
+        }
+        writer.writeUShort((int) (classDef[start] >> 16));
+        writer.writeUShort((int) (classDef[end] >> 16));
+        writer.writeUShort((int) classDef[start] & 0xffff);
+      }
+    } else {
+      writer.writeUShort(1);
+      writer.writeUShort(firstGlyph);
+      writer.writeUShort(lastGlyph - firstGlyph + 1);
+      int i = 0;
+      for (int glyphId = firstGlyph; glyphId <= lastGlyph; glyphId++) {
+        if (classDef[i] >> 16 == glyphId) {
+          writer.writeUShort((int) classDef[i++] & 0xffff);
+        } else {
+          writer.writeUShort(0);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads a rule of a glyph or class based contextual subtable.
+   *
+   * @param data the subtable data
+   * @param offset the offset of the rule
+   * @param chaining whether the subtable is a chaining context subtable
+   */
+  private static Rule readRule(ReadableFontData data, int offset, boolean chaining) {
+    if (!chaining) {
+      int glyphCount = data.readUShort(offset);
+      int[] input = readUShorts(data, offset + 4, glyphCount - 1);
+      int[] records =
+          readUShorts(data, offset + 4 + 2 * input.length, 2 * data.readUShort(offset + 2));
+      return new Rule(new int[][] {input}, records);
+    }
+    int[][] sequences = new int[3][];
+    for (int i = 0; i < sequences.length; i++) {
+      // the input sequence count includes the first glyph
+      int count = data.readUShort(offset) - (i == 1 ? 1 : 0);
+      sequences[i] = readUShorts(data, offset + 2, count);
+      offset += 2 + 2 * sequences[i].length;
+    }
+    return new Rule(sequences, readUShorts(data, offset + 2, 2 * data.readUShort(offset)));
+  }
+
+  private static void writeRule(Writer writer, Rule rule, boolean chaining) {
+    int recordCount = rule.records.length / 2;
+    if (!chaining) {
+      writer.writeUShort(rule.sequences[0].length + 1);
+      writer.writeUShort(recordCount);
+      writer.writeUShorts(rule.sequences[0], 0, rule.sequences[0].length);
+    } else {
+      for (int i = 0; i < rule.sequences.length; i++) {
+        writer.writeUShort(rule.sequences[i].length + (i == 1 ? 1 : 0));
+        writer.writeUShorts(rule.sequences[i], 0, rule.sequences[i].length);
+      }
+      writer.writeUShort(recordCount);
+    }
+    writer.writeUShorts(rule.records, 0, rule.records.length);
+  }
+
+  /**
+   * Writes the rule sets of a contextual subtable. An empty rule set gets a null offset.
+   *
+   * @param writer the writer of the subtable
+   * @param offsetsAt where the offsets to the rule sets are in the subtable
+   * @param sets the rule sets
+   * @param chaining whether the subtable is a chaining context subtable
+   */
+  private static void writeRuleSets(
+      Writer writer, int offsetsAt, List<List<Rule>> sets, boolean chaining) {
+    for (int i = 0; i < sets.size(); i++) {
+      List<Rule> rules = sets.get(i);
+      if (rules.isEmpty()) {
+        continue;
+      }
+      writer.setOffset(offsetsAt + 2 * i, 0);
+      int set = writer.size();
+      writer.writeUShort(rules.size());
+      int rulesAt = writer.reserveOffsets(rules.size());
+      for (int j = 0; j < rules.size(); j++) {
+        writer.setOffset(rulesAt + 2 * j, set);
+        writeRule(writer, rules.get(j), chaining);
+      }
+    }
+  }
+
+  private static int[] mapIndices(int[] indices, int[] map) {
+    int[] newIndices = new int[indices.length];
+    int count = 0;
+    for (int index : indices) {
+      if (index < map.length && map[index] != REMOVED) {
+        newIndices[count++] = map[index];
+      }
+    }
+    return Arrays.copyOf(newIndices, count);
+  }
+
+  /**
+   * Writes a table or subtable sequentially, with 16 bit offsets that are reserved when the
+   * referring table is written and set when the table they refer to is written after it.
+   */
+  private static final class Writer {
+    private final WritableFontData data = WritableFontData.createWritableFontData(0);
+    private int size;
+    private boolean overflowed;
+
+    int size() {
+      return size;
+    }
+
+    void writeUShort(int value) {
+      size += data.writeUShort(size, value);
+    }
+
+    void writeUShorts(int[] values, int start, int end) {
+      for (int i = start; i < end; i++) {
+        writeUShort(values[i]);
+      }
+    }
+
+    void writeULong(long value) {
+      size += data.writeULong(size, value);
+    }
+
+    void writeBytes(byte[] b) {
+      if (b.length > 0) {
+        size += data.writeBytes(size, b);
+      }
+    }
+
+    /** Reserves space for 16 bit offsets, and gets where they are. */
+    int reserveOffsets(int count) {
+      int at = size;
+      for (int i = 0; i < count; i++) {
+        writeUShort(0);
+      }
+      return at;
+    }
+
+    /** Sets a reserved 16 bit offset, relative to the given base, to the current position. */
+    void setOffset(int at, int base) {
+      int offset = size - base;
+      overflowed |= offset > MAX_OFFSET;
+      data.writeUShort(at, offset);
+    }
+
+    /** Sets a 32 bit offset, relative to the given base, to the current position. */
+    void setLongOffset(int at, int base) {
+      data.writeULong(at, size - base);
+    }
+
+    boolean overflowed() {
+      return overflowed;
+    }
+
+    ReadableFontData data() {
+      return data;
+    }
+
+    byte[] toByteArray() {
+      if (overflowed) {
+        throw new IllegalStateException("Subsetted GSUB subtable is too large for its offsets.");
+      }
+      return readBytes(data, 0, size);
+    }
+  }
+}
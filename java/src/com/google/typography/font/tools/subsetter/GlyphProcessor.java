@@ -0,0 +1,99 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Runs the per glyph work of a table subsetter. When the subsetter has an executor the glyphs are
+ * processed in chunks on it, otherwise they are processed one after another on the calling thread.
+ * Either way the results are in glyph order, so the table built from them is the same.
+ */
+final class GlyphProcessor {
+
+  // the number of glyphs handed to the executor in each task
+  static final int CHUNK_SIZE = 256;
+
+  private GlyphProcessor() {}
+
+  /**
+   * Process each glyph.
+   *
+   * @param numGlyphs the number of glyphs to process
+   * @param processor processes the glyph at an index; must be safe to call from several threads
+   *     at once when an executor is given
+   * @param executor the executor to process chunks of glyphs on; null to process on this thread
+   * @return the result for each glyph, in index order
+   */
+  static <T> List<T> process(int numGlyphs, IntFunction<T> processor, Executor executor) {
+    @SuppressWarnings("unchecked")
+    T[] results = (T[]) new Object[numGlyphs];
+    forEach(numGlyphs, i -> results[i] = processor.apply(i), executor);
+    return Arrays.asList(results);
+  }
+
+  /**
+   * Run an action for each glyph. The action must only write state belonging to the glyph it is
+   * given, such as the glyph's own range of an output array.
+   *
+   * @param numGlyphs the number of glyphs to process
+   * @param action the action to run for the glyph at an index; must be safe to call from several
+   *     threads at once when an executor is given
+   * @param executor the executor to process chunks of glyphs on; null to process on this thread
+   */
+  static void forEach(int numGlyphs, IntConsumer action, Executor executor) {
+    if (executor == null || numGlyphs <= CHUNK_SIZE) {
+      for (int i = 0; i < numGlyphs; i++) {
+        action.accept(i);
+      }
+      return;
+    }
+
+    List<CompletableFuture<Void>> chunks = new ArrayList<>();
+    for (int start = 0; start < numGlyphs; start += CHUNK_SIZE) {
+      int chunkStart = start;
+      int chunkEnd = Math.min(start + CHUNK_SIZE, numGlyphs);
+      chunks.add(
+          CompletableFuture.runAsync(
+              () -> {
+                for (int i = chunkStart; i < chunkEnd; i++) {
+                  action.accept(i);
+                }
+              },
+              executor));
+    }
+    try {
+      CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+}
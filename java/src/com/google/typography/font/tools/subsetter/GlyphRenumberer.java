@@ -21,6 +21,7 @@ import com.google.typography.font.sfntly.data.WritableFontData;
 import com.google.typography.font.sfntly.table.truetype.CompositeGlyph;
 import com.google.typography.font.sfntly.table.truetype.GlyphTable;
 import java.util.Map;
+import java.util.function.IntUnaryOperator;
 
 /**
  * A utility class for applying a mapping to glyph number references within a TrueType composite
@@ -58,7 +59,77 @@ public class GlyphRenumberer {
    */
   public static ReadableFontData renumberGlyph(
       ReadableFontData glyph, Map<Integer, Integer> mapping) {
-    return isCompositeGlyph(glyph) ? renumberCompositeGlyph(glyph, mapping) : glyph;
+    return isCompositeGlyph(glyph) ? renumberCompositeGlyph(glyph, mapping::get) : glyph;
+  }
+
+  /**
+   * Apply a renumbering referenced glyphs in TrueType glyph data, using a dense mapping array
+   * indexed by old glyph id.
+   *
+   * @param glyph the glyph data
+   * @param mapping the new glyph id for each old glyph id
+   * @return renumbered glyph data
+   * @throws IllegalArgumentException if a referenced glyph has no new glyph id
+   */
+  public static ReadableFontData renumberGlyph(ReadableFontData glyph, int[] mapping) {
+    if (!isCompositeGlyph(glyph)) {
+      return glyph;
+    }
+    return renumberCompositeGlyph(
+        glyph,
+        oldGlyphIndex -> {
+          int newGlyphIndex = Subsetter.newGlyphId(mapping, oldGlyphIndex);
+          if (newGlyphIndex == Subsetter.NO_GLYPH) {
+            throw new IllegalArgumentException(
+                "Composite glyph references glyph " + oldGlyphIndex + " not in the mapping.");
+          }
+          return newGlyphIndex;
+        });
+  }
+
+  /**
+   * Apply a renumbering to the glyphs referenced by a TrueType glyph that has already been copied
+   * into an array. A composite glyph's references are rewritten in place and any other glyph is
+   * left alone.
+   *
+   * @param b the array holding the glyph
+   * @param offset the offset of the glyph in the array
+   * @param length the length of the glyph
+   * @param mapping the new glyph id for each old glyph id
+   * @throws IllegalArgumentException if a referenced glyph has no new glyph id
+   * @throws IndexOutOfBoundsException if a composite glyph's components run past its end
+   */
+  static void renumberGlyph(byte[] b, int offset, int length, int[] mapping) {
+    if (length < 2 || readUShort(b, offset + Offset.numberOfContours) < 0x8000) {
+      return;
+    }
+    // the array holds other glyphs after this one, so nothing past the end may be read or written
+    int end = offset + length;
+    int flags = CompositeGlyph.FLAG_MORE_COMPONENTS;
+    int index = offset + Offset.SIZE;
+
+    while ((flags & CompositeGlyph.FLAG_MORE_COMPONENTS) != 0) {
+      if (index + CompositeOffset.glyphIndex + 2 > end) {
+        throw new IndexOutOfBoundsException("Composite glyph is truncated.");
+      }
+      flags = readUShort(b, index + CompositeOffset.flags);
+      if (index + compositeReferenceSize(flags) > end) {
+        throw new IndexOutOfBoundsException("Composite glyph is truncated.");
+      }
+      int oldGlyphIndex = readUShort(b, index + CompositeOffset.glyphIndex);
+      int newGlyphIndex = Subsetter.newGlyphId(mapping, oldGlyphIndex);
+      if (newGlyphIndex == Subsetter.NO_GLYPH) {
+        throw new IllegalArgumentException(
+            "Composite glyph references glyph " + oldGlyphIndex + " not in the mapping.");
+      }
+      b[index + CompositeOffset.glyphIndex] = (byte) (newGlyphIndex >> 8);
+      b[index + CompositeOffset.glyphIndex + 1] = (byte) newGlyphIndex;
+      index += compositeReferenceSize(flags);
+    }
+  }
+
+  private static int readUShort(byte[] b, int index) {
+    return (b[index] & 0xff) << 8 | (b[index + 1] & 0xff);
   }
 
   /**
@@ -70,7 +141,7 @@ public class GlyphRenumberer {
   }
 
   private static ReadableFontData renumberCompositeGlyph(
-      ReadableFontData glyph, Map<Integer, Integer> mapping) {
+      ReadableFontData glyph, IntUnaryOperator mapping) {
     WritableFontData result = WritableFontData.createWritableFontData(glyph.length());
     glyph.copyTo(result);
 
@@ -80,7 +151,7 @@ public class GlyphRenumberer {
     while ((flags & CompositeGlyph.FLAG_MORE_COMPONENTS) != 0) {
       flags = glyph.readUShort(index + CompositeOffset.flags);
       int oldGlyphIndex = glyph.readUShort(index + CompositeOffset.glyphIndex);
-      int newGlyphIndex = mapping.get(oldGlyphIndex);
+      int newGlyphIndex = mapping.applyAsInt(oldGlyphIndex);
       result.writeUShort(index + CompositeOffset.glyphIndex, newGlyphIndex);
       index += compositeReferenceSize(flags);
     }
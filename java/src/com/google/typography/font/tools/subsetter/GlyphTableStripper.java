@@ -18,7 +18,6 @@ package com.google.typography.font.tools.subsetter;
 
 import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.Tag;
-import com.google.typography.font.sfntly.data.ReadableFontData;
 import com.google.typography.font.sfntly.table.truetype.Glyph;
 import com.google.typography.font.sfntly.table.truetype.GlyphTable;
 import com.google.typography.font.sfntly.table.truetype.LocaTable;
@@ -41,21 +40,23 @@ public class GlyphTableStripper extends TableSubsetterImpl {
     if (glyphTable == null || locaTable == null) {
       throw new RuntimeException("Font to subset is not valid.");
     }
-    ReadableFontData originalGlyfData = glyphTable.readFontData();
-
     GlyphTable.Builder glyphTableBuilder =
         (GlyphTable.Builder) fontBuilder.newTableBuilder(Tag.glyf);
     LocaTable.Builder locaTableBuilder = (LocaTable.Builder) fontBuilder.newTableBuilder(Tag.loca);
-    List<Glyph.Builder<? extends Glyph>> glyphBuilders = glyphTableBuilder.glyphBuilders();
 
     GlyphStripper glyphStripper = new GlyphStripper(glyphTableBuilder);
 
-    for (int i = 0; i < locaTable.numGlyphs(); i++) {
-      int oldOffset = locaTable.glyphOffset(i);
-      int oldLength = locaTable.glyphLength(i);
-      Glyph glyph = glyphTable.glyph(oldOffset, oldLength);
-      glyphBuilders.add(glyphStripper.stripGlyph(glyph));
-    }
+    List<Glyph.Builder<? extends Glyph>> glyphBuilders =
+        GlyphProcessor.process(
+            locaTable.numGlyphs(),
+            i -> {
+              int oldOffset = locaTable.glyphOffset(i);
+              int oldLength = locaTable.glyphLength(i);
+              Glyph glyph = glyphTable.glyph(oldOffset, oldLength);
+              return glyphStripper.stripGlyph(glyph);
+            },
+            subsetter.executor());
+    glyphTableBuilder.glyphBuilders().addAll(glyphBuilders);
 
     List<Integer> locaList = glyphTableBuilder.generateLocaList();
     locaTableBuilder.setLocaList(locaList);
@@ -19,13 +19,13 @@ package com.google.typography.font.tools.subsetter;
 import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.Tag;
 import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
 import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
-import com.google.typography.font.sfntly.table.truetype.Glyph;
 import com.google.typography.font.sfntly.table.truetype.GlyphTable;
 import com.google.typography.font.sfntly.table.truetype.LocaTable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /** @author Stuart Gill */
 public class GlyphTableSubsetter extends TableSubsetterImpl {
@@ -44,7 +44,7 @@ public class GlyphTableSubsetter extends TableSubsetterImpl {
     if (DEBUG) {
       System.out.println("GlyphTableSubsetter.subset()");
     }
-    List<Integer> permutationTable = subsetter.glyphMappingTable();
+    int[] permutationTable = subsetter.glyphMappingTable();
     if (permutationTable == null) {
       return false;
     }
@@ -61,28 +61,44 @@ public class GlyphTableSubsetter extends TableSubsetterImpl {
     if (glyphTableBuilder == null || locaTableBuilder == null) {
       throw new RuntimeException("Builder for subset is not valid.");
     }
-    Map<Integer, Integer> inverseMap = subsetter.getInverseMapping();
+    int[] inverseMap = subsetter.getInverseMapping();
 
-    List<Glyph.Builder<? extends Glyph>> glyphBuilders = glyphTableBuilder.glyphBuilders();
-    for (int oldGlyphId : permutationTable) {
-      // TODO(stuartg): add subsetting individual glyph data - remove hints etc.
+    // TODO(stuartg): add subsetting individual glyph data - remove hints etc.
 
-      int oldOffset = locaTable.glyphOffset(oldGlyphId);
-      int oldLength = locaTable.glyphLength(oldGlyphId);
-      Glyph glyph = glyphTable.glyph(oldOffset, oldLength);
-      ReadableFontData data = glyph.readFontData();
-      ReadableFontData renumberedData = GlyphRenumberer.renumberGlyph(data, inverseMap);
-      Glyph.Builder<? extends Glyph> glyphBuilder = glyphTableBuilder.glyphBuilder(renumberedData);
-      if (DEBUG) {
-        System.out.println("\toldGlyphId = " + oldGlyphId);
-        System.out.println("\toldOffset = " + oldOffset);
-        System.out.println("\toldLength = " + oldLength);
-        System.out.println("\told glyph = " + glyph);
-        System.out.println("\tnew glyph builder = " + glyphBuilder);
-      }
-      glyphBuilders.add(glyphBuilder);
+    // the glyph data is copied through unchanged except for the component glyph ids of composite
+    // glyphs, so the new table is assembled from the old one without parsing any glyphs
+    int[] oldOffsets = new int[permutationTable.length];
+    int[] loca = new int[permutationTable.length + 1];
+    for (int newGlyphId = 0; newGlyphId < permutationTable.length; newGlyphId++) {
+      int oldGlyphId = permutationTable[newGlyphId];
+      oldOffsets[newGlyphId] = locaTable.glyphOffset(oldGlyphId);
+      loca[newGlyphId + 1] = loca[newGlyphId] + locaTable.glyphLength(oldGlyphId);
+    }
+    ReadableFontData oldData = glyphTable.readFontData();
+    byte[] newData = new byte[loca[permutationTable.length]];
+    GlyphProcessor.forEach(
+        permutationTable.length,
+        newGlyphId -> {
+          int newOffset = loca[newGlyphId];
+          int length = loca[newGlyphId + 1] - newOffset;
+          if (length > 0) {
+            oldData.readBytes(oldOffsets[newGlyphId], newData, newOffset, length);
+            GlyphRenumberer.renumberGlyph(newData, newOffset, length, inverseMap);
+          }
+          if (DEBUG) {
+            System.out.println("\toldGlyphId = " + permutationTable[newGlyphId]);
+            System.out.println("\toldOffset = " + oldOffsets[newGlyphId]);
+            System.out.println("\tnewOffset = " + newOffset);
+            System.out.println("\tlength = " + length);
+          }
+        },
+        subsetter.executor());
+    glyphTableBuilder.setData(WritableFontData.createWritableFontData(newData));
+
+    List<Integer> locaList = new ArrayList<>(loca.length);
+    for (int offset : loca) {
+      locaList.add(offset);
     }
-    List<Integer> locaList = glyphTableBuilder.generateLocaList();
     if (DEBUG) {
       System.out.println("\tlocaList = " + locaList);
     }
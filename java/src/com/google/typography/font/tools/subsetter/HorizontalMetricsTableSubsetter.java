@@ -33,12 +33,13 @@ public class HorizontalMetricsTableSubsetter extends TableSubsetterImpl {
 
   @Override
   public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
-    List<Integer> permutationTable = subsetter.glyphMappingTable();
+    int[] permutationTable = subsetter.glyphMappingTable();
     if (permutationTable == null) {
       return false;
     }
     HorizontalMetricsTable origMetrics = font.getTable(Tag.hmtx);
-    List<HorizontalMetricsTableBuilder.LongHorMetric> metrics = new ArrayList<>();
+    List<HorizontalMetricsTableBuilder.LongHorMetric> metrics =
+        new ArrayList<>(permutationTable.length);
     for (int origGlyphId : permutationTable) {
       int advanceWidth = origMetrics.advanceWidth(origGlyphId);
       int lsb = origMetrics.leftSideBearing(origGlyphId);
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Subsets the glyph table without renumbering the glyphs. Every glyph id of the font is kept, and
+ * the glyphs that aren't in the subset are left empty.
+ */
+public class IncrementalGlyphTableSubsetter extends TableSubsetterImpl {
+
+  protected IncrementalGlyphTableSubsetter() {
+    super(Tag.glyf, Tag.loca);
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder)
+      throws IOException {
+    if (subsetter.glyphMappingTable() == null) {
+      return false;
+    }
+
+    GlyphTable glyphTable = font.getTable(Tag.glyf);
+    LocaTable locaTable = font.getTable(Tag.loca);
+    if (glyphTable == null || locaTable == null) {
+      throw new RuntimeException("Font to subset is not valid.");
+    }
+
+    GlyphTable.Builder glyphTableBuilder =
+        (GlyphTable.Builder) fontBuilder.newTableBuilder(Tag.glyf);
+    LocaTable.Builder locaTableBuilder = (LocaTable.Builder) fontBuilder.newTableBuilder(Tag.loca);
+    if (glyphTableBuilder == null || locaTableBuilder == null) {
+      throw new RuntimeException("Builder for subset is not valid.");
+    }
+    int[] inverseMap = subsetter.getInverseMapping();
+
+    // kept glyphs are copied through unchanged since their component glyph ids stay the same
+    int numGlyphs = locaTable.numGlyphs();
+    int[] loca = new int[numGlyphs + 1];
+    for (int glyphId = 0; glyphId < numGlyphs; glyphId++) {
+      boolean kept = Subsetter.newGlyphId(inverseMap, glyphId) != Subsetter.NO_GLYPH;
+      loca[glyphId + 1] = loca[glyphId] + (kept ? locaTable.glyphLength(glyphId) : 0);
+    }
+    ReadableFontData oldData = glyphTable.readFontData();
+    byte[] newData = new byte[loca[numGlyphs]];
+    for (int glyphId = 0; glyphId < numGlyphs; glyphId++) {
+      int length = loca[glyphId + 1] - loca[glyphId];
+      if (length > 0) {
+        oldData.readBytes(locaTable.glyphOffset(glyphId), newData, loca[glyphId], length);
+      }
+    }
+    glyphTableBuilder.setData(WritableFontData.createWritableFontData(newData));
+
+    List<Integer> locaList = new ArrayList<>(loca.length);
+    for (int offset : loca) {
+      locaList.add(offset);
+    }
+    locaTableBuilder.setLocaList(locaList);
+    return true;
+  }
+}
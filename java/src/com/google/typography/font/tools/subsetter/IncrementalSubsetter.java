@@ -0,0 +1,66 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A subsetter that keeps the original glyph ids. The glyphs not in the subset are left empty, so
+ * the subsets of a font for growing sets of glyphs differ only in the glyphs added and in the
+ * tables that map to them. {@link SubsetPatch} can turn one such subset into the next.
+ *
+ * <p>The order of the glyphs set on this subsetter doesn't matter.
+ */
+public class IncrementalSubsetter extends Subsetter {
+
+  {
+    Set<TableSubsetter> temp = new HashSet<>();
+    temp.add(new IncrementalGlyphTableSubsetter());
+    temp.add(new RenumberingCMapTableSubsetter());
+    temp.add(new GSubTableSubsetter());
+    tableSubsetters = temp;
+  }
+
+  public IncrementalSubsetter(Font font, FontFactory fontFactory) {
+    super(font, fontFactory);
+  }
+
+  /**
+   * Get the mapping from old glyph id to new. Every glyph in the subset keeps its glyph id, and
+   * the others map to {@link #NO_GLYPH}.
+   *
+   * @return the inverse mapping
+   */
+  @Override
+  int[] getInverseMapping() {
+    MaximumProfileTable maxp = font.getTable(Tag.maxp);
+    int[] oldToNew = new int[maxp.numGlyphs()];
+    Arrays.fill(oldToNew, NO_GLYPH);
+    for (int oldGlyph : glyphMappingTable()) {
+      if (oldGlyph >= 0 && oldGlyph < oldToNew.length) {
+        oldToNew[oldGlyph] = oldGlyph;
+      }
+    }
+    return oldToNew;
+  }
+}
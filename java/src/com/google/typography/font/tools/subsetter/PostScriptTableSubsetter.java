@@ -31,7 +31,7 @@ public class PostScriptTableSubsetter extends TableSubsetterImpl {
 
   @Override
   public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
-    List<Integer> permutationTable = subsetter.glyphMappingTable();
+    int[] permutationTable = subsetter.glyphMappingTable();
     if (permutationTable == null) {
       return false;
     }
@@ -39,8 +39,8 @@ public class PostScriptTableSubsetter extends TableSubsetterImpl {
     PostScriptTable post = font.getTable(Tag.post);
     postBuilder.initV1From(post);
     if (post.version() == 0x10000 || post.version() == 0x20000) {
-      List<String> names = new ArrayList<>();
-      for (Integer glyphId : permutationTable) {
+      List<String> names = new ArrayList<>(permutationTable.length);
+      for (int glyphId : permutationTable) {
         names.add(post.glyphName(glyphId));
       }
       postBuilder.setNames(names);
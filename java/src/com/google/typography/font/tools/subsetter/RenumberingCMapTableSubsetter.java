@@ -19,11 +19,9 @@ package com.google.typography.font.tools.subsetter;
 import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.Tag;
 import com.google.typography.font.sfntly.table.core.CMap;
-import com.google.typography.font.sfntly.table.core.CMapFormat4;
 import com.google.typography.font.sfntly.table.core.CMapTable;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /** @author Raph Levien */
 public class RenumberingCMapTableSubsetter extends TableSubsetterImpl {
@@ -32,30 +30,49 @@ public class RenumberingCMapTableSubsetter extends TableSubsetterImpl {
     super(Tag.cmap);
   }
 
-  private static CMapFormat4 getCMapFormat4(Font font) {
+  /**
+   * Get the Unicode cmap to take the mapping from. A format 12 cmap is used if there is one since
+   * it also covers the code points outside the BMP.
+   */
+  private static CMap getUnicodeCMap(Font font) {
     CMapTable cmapTable = font.getTable(Tag.cmap);
+    CMap cmap4 = null;
     for (CMap cmap : cmapTable) {
-      if (cmap.format() == CMap.CMapFormat.Format4.value()) {
-        return (CMapFormat4) cmap;
+      if (cmap.format() == CMap.CMapFormat.Format12.value()) {
+        return cmap;
+      }
+      if (cmap4 == null && cmap.format() == CMap.CMapFormat.Format4.value()) {
+        cmap4 = cmap;
       }
     }
-    return null;
+    return cmap4;
   }
 
-  static Map<Integer, Integer> computeMapping(Subsetter subsetter, Font font) {
-    CMapFormat4 cmap4 = getCMapFormat4(font);
-    if (cmap4 == null) {
-      throw new RuntimeException("CMap format 4 table in source font not found");
+  /**
+   * Computes the cmap of the subset, from the code points of the source font's cmap whose glyphs
+   * are in the subset.
+   *
+   * @return the mapping as entries for {@link CMapTableBuilder#CMapTableBuilder(Font.Builder,
+   *     long[])}
+   */
+  static long[] computeMapping(Subsetter subsetter, Font font) {
+    CMap cmap = getUnicodeCMap(font);
+    if (cmap == null) {
+      throw new RuntimeException("CMap format 4 or 12 table in source font not found");
     }
-    Map<Integer, Integer> inverseMapping = subsetter.getInverseMapping();
-    Map<Integer, Integer> mapping = new HashMap<>();
-    for (Integer unicode : cmap4) {
-      int glyph = cmap4.glyphId(unicode);
-      if (inverseMapping.containsKey(glyph)) {
-        mapping.put(unicode, inverseMapping.get(glyph));
+    int[] inverseMapping = subsetter.getInverseMapping();
+    long[] mapping = new long[256];
+    int size = 0;
+    for (int unicode : cmap) {
+      int newGlyph = Subsetter.newGlyphId(inverseMapping, cmap.glyphId(unicode));
+      if (newGlyph != Subsetter.NO_GLYPH) {
+        if (size == mapping.length) {
+          mapping = Arrays.copyOf(mapping, 2 * size);
+        }
+        mapping[size++] = CMapTableBuilder.entry(unicode, newGlyph);
       }
     }
-    return mapping;
+    return Arrays.copyOf(mapping, size);
   }
 
   @Override
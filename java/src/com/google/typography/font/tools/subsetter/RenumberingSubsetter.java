@@ -31,6 +31,7 @@ public class RenumberingSubsetter extends Subsetter {
     temp.add(new RenumberingCMapTableSubsetter());
     temp.add(new PostScriptTableSubsetter());
     temp.add(new HorizontalMetricsTableSubsetter());
+    temp.add(new GSubTableSubsetter());
     tableSubsetters = temp;
   }
 
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of serialized font subsets. A subset is identified by the digest of the source font, the
+ * set of glyphs kept, the tables removed and the name of the output format, such as "ttf" or
+ * "woff". A request that matches an earlier one gets the bytes produced the first time, without
+ * subsetting or converting the font again.
+ *
+ * <p>The glyphs are keyed as a set, so requests that list the same glyphs in a different order
+ * share an entry. Callers that renumber glyphs should list them in a canonical order, such as the
+ * sorted order returned by {@code GlyphCoverage}. Any other setting that changes the output, such
+ * as the cmaps built, must be the same for every request using a format name, or be part of it.
+ *
+ * <p>Fonts without a {@link Font#digest() digest} can't be identified and are never cached. Load
+ * fonts with {@link com.google.typography.font.sfntly.FontFactory#fingerprintFont(boolean)
+ * fingerprinting} turned on to cache their subsets.
+ *
+ * <p>The cache holds at most a fixed number of bytes of subsets and evicts the least recently used
+ * ones when it is full. All methods are thread safe. Two threads that miss on the same subset at
+ * the same time may both produce it, but only the first result to be added is kept.
+ */
+public final class SubsetCache {
+
+  /** Produces the serialized bytes of a subset on a cache miss. */
+  public interface SubsetProducer {
+    byte[] produce() throws IOException;
+  }
+
+  private final long maximumBytes;
+  private final Map<Key, byte[]> subsets = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytes;
+  private long hitCount;
+  private long missCount;
+
+  /**
+   * Constructs a subset cache.
+   *
+   * @param maximumBytes the maximum total size of the subsets to hold
+   */
+  public SubsetCache(long maximumBytes) {
+    if (maximumBytes < 1) {
+      throw new IllegalArgumentException("Cache size must be positive.");
+    }
+    this.maximumBytes = maximumBytes;
+  }
+
+  /**
+   * Gets a subset, producing it and adding it to the cache if it isn't already there.
+   *
+   * @param font the source font
+   * @param glyphs the old glyph ids of the glyphs kept
+   * @param removeTables the tags of the tables removed
+   * @param format the name of the output format
+   * @param producer produces the subset bytes if they are not in the cache
+   * @return the subset bytes
+   * @throws IOException if the producer fails
+   */
+  public byte[] subset(
+      Font font,
+      Collection<Integer> glyphs,
+      Collection<Integer> removeTables,
+      String format,
+      SubsetProducer producer)
+      throws IOException {
+    byte[] digest = font.digest();
+    if (digest == null) {
+      synchronized (this) {
+        missCount++;
+      }
+      return producer.produce();
+    }
+    Key key = new Key(digest, glyphs, removeTables, format);
+    byte[] cached = get(key);
+    if (cached != null) {
+      return cached.clone();
+    }
+    return put(key, producer.produce()).clone();
+  }
+
+  /**
+   * Gets the number of subsets in the cache.
+   *
+   * @return the number of subsets
+   */
+  public synchronized int size() {
+    return subsets.size();
+  }
+
+  /**
+   * Gets the total size of the subsets in the cache.
+   *
+   * @return the number of bytes held
+   */
+  public synchronized long byteSize() {
+    return bytes;
+  }
+
+  /**
+   * Gets the number of requests that were answered from the cache.
+   *
+   * @return the number of hits
+   */
+  public synchronized long hitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Gets the number of requests whose subsets were produced.
+   *
+   * @return the number of misses
+   */
+  public synchronized long missCount() {
+    return missCount;
+  }
+
+  /** Removes all the subsets from the cache. The hit and miss counts are kept. */
+  public synchronized void clear() {
+    subsets.clear();
+    bytes = 0;
+  }
+
+  private synchronized byte[] get(Key key) {
+    byte[] cached = subsets.get(key);
+    if (cached != null) {
+      hitCount++;
+    } else {
+      missCount++;
+    }
+    return cached;
+  }
+
+  private synchronized byte[] put(Key key, byte[] subset) {
+    byte[] cached = subsets.get(key);
+    if (cached != null) {
+      return cached;
+    }
+    if (subset.length > maximumBytes) {
+      return subset;
+    }
+    subsets.put(key, subset);
+    bytes += subset.length;
+    for (Iterator<byte[]> it = subsets.values().iterator(); bytes > maximumBytes; ) {
+      bytes -= it.next().length;
+      it.remove();
+    }
+    return subset;
+  }
+
+  /** The identity of a subset usable as a map key. */
+  private static final class Key {
+    private final byte[] digest;
+    private final BitSet glyphs;
+    private final int[] removeTables;
+    private final String format;
+    private final int hashCode;
+
+    Key(
+        byte[] digest,
+        Collection<Integer> glyphs,
+        Collection<Integer> removeTables,
+        String format) {
+      this.digest = digest;
+      this.glyphs = new BitSet();
+      for (int glyph : glyphs) {
+        this.glyphs.set(glyph);
+      }
+      this.removeTables = new int[removeTables.size()];
+      int i = 0;
+      for (int tag : removeTables) {
+        this.removeTables[i++] = tag;
+      }
+      Arrays.sort(this.removeTables);
+      this.format = format;
+      int hash = Arrays.hashCode(digest);
+      hash = 31 * hash + this.glyphs.hashCode();
+      hash = 31 * hash + Arrays.hashCode(this.removeTables);
+      this.hashCode = 31 * hash + format.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return Arrays.equals(digest, other.digest)
+          && glyphs.equals(other.glyphs)
+          && Arrays.equals(removeTables, other.removeTables)
+          && format.equals(other.format);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
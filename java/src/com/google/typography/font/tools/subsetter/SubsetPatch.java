@@ -0,0 +1,251 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Patches that turn one subset of a font into another, for loading a font progressively. A client
+ * that already has a subset downloads only a patch with the changes that give it a bigger subset,
+ * rather than the whole bigger subset.
+ *
+ * <p>Patches are meant for the subsets made by an {@link IncrementalSubsetter}, which keep the
+ * original glyph ids. A patch holds the glyphs whose data changed, the other tables that changed,
+ * such as the {@code loca} and {@code cmap}, and the tags of the tables that were removed. The
+ * patch data is, in big-endian order:
+ *
+ * <pre>
+ * uint32  version (0x00010000)
+ * uint16  numGlyphs in the patched glyph table
+ * uint16  glyphCount
+ * uint16  tableCount
+ * uint16  removedTableCount
+ * glyphCount * { uint16 glyphId, uint32 length, uint8[length] data }
+ * tableCount * { uint32 tag, uint32 length, uint8[length] data }
+ * removedTableCount * { uint32 tag }
+ * </pre>
+ */
+public final class SubsetPatch {
+
+  private static final int VERSION = 0x00010000;
+
+  private SubsetPatch() {}
+
+  /**
+   * Creates the patch that turns one subset of a font into another. If both subsets have glyph
+   * tables then only the glyphs that differ are put in the patch. Other tables are put in whole if
+   * they differ at all.
+   *
+   * @param previous the subset the client has
+   * @param next the subset the client needs
+   * @return the patch
+   */
+  public static byte[] create(Font previous, Font next) {
+    LocaTable previousLoca = previous.getTable(Tag.loca);
+    LocaTable nextLoca = next.getTable(Tag.loca);
+    boolean patchGlyphs =
+        previousLoca != null
+            && nextLoca != null
+            && previous.hasTable(Tag.glyf)
+            && next.hasTable(Tag.glyf);
+
+    WritableFontData patch = WritableFontData.createWritableFontData(0);
+    int size = 12;
+    int glyphCount = 0;
+    int numGlyphs = 0;
+    if (patchGlyphs) {
+      ReadableFontData previousGlyphs = previous.getTable(Tag.glyf).readFontData();
+      ReadableFontData nextGlyphs = next.getTable(Tag.glyf).readFontData();
+      numGlyphs = nextLoca.numGlyphs();
+      for (int glyphId = 0; glyphId < numGlyphs; glyphId++) {
+        byte[] glyph = glyphBytes(nextGlyphs, nextLoca, glyphId);
+        if (glyphId < previousLoca.numGlyphs()
+            && Arrays.equals(glyph, glyphBytes(previousGlyphs, previousLoca, glyphId))) {
+          continue;
+        }
+        size += patch.writeUShort(size, glyphId);
+        size += patch.writeULong(size, glyph.length);
+        size += patch.writeBytes(size, glyph);
+        glyphCount++;
+      }
+    }
+
+    int tableCount = 0;
+    for (Map.Entry<Integer, ? extends Table> entry : next.tableMap().entrySet()) {
+      int tag = entry.getKey();
+      if (patchGlyphs && tag == Tag.glyf) {
+        continue;
+      }
+      byte[] data = tableBytes(entry.getValue());
+      Table previousTable = previous.getTable(tag);
+      if (previousTable != null && Arrays.equals(data, tableBytes(previousTable))) {
+        continue;
+      }
+      size += patch.writeULong(size, tag);
+      size += patch.writeULong(size, data.length);
+      size += patch.writeBytes(size, data);
+      tableCount++;
+    }
+
+    int removedTableCount = 0;
+    for (int tag : previous.tableMap().keySet()) {
+      if (!next.hasTable(tag)) {
+        size += patch.writeULong(size, tag);
+        removedTableCount++;
+      }
+    }
+
+    patch.writeULong(0, VERSION);
+    patch.writeUShort(4, numGlyphs);
+    patch.writeUShort(6, glyphCount);
+    patch.writeUShort(8, tableCount);
+    patch.writeUShort(10, removedTableCount);
+    byte[] b = new byte[size];
+    patch.readBytes(0, b, 0, size);
+    return b;
+  }
+
+  /**
+   * Applies a patch to the subset it was created from.
+   *
+   * @param fontFactory the factory to build the patched font with
+   * @param base the subset the patch was created from
+   * @param patch the patch
+   * @return a builder for the patched subset
+   * @throws IOException if the patch is not valid or was not created from this subset
+   */
+  public static Font.Builder apply(FontFactory fontFactory, Font base, byte[] patch)
+      throws IOException {
+    ReadableFontData data = ReadableFontData.createReadableFontData(patch);
+    try {
+      if (data.readULongAsInt(0) != VERSION) {
+        throw new IOException("Unsupported subset patch version.");
+      }
+      int numGlyphs = data.readUShort(4);
+      int glyphCount = data.readUShort(6);
+      int tableCount = data.readUShort(8);
+      int removedTableCount = data.readUShort(10);
+      int offset = 12;
+
+      Map<Integer, byte[]> glyphs = new HashMap<>();
+      for (int i = 0; i < glyphCount; i++) {
+        int glyphId = data.readUShort(offset);
+        byte[] glyph = new byte[data.readULongAsInt(offset + 2)];
+        offset += 6;
+        offset += readBytes(data, offset, glyph);
+        glyphs.put(glyphId, glyph);
+      }
+      Map<Integer, byte[]> tables = new HashMap<>();
+      for (int i = 0; i < tableCount; i++) {
+        int tag = data.readULongAsInt(offset);
+        byte[] table = new byte[data.readULongAsInt(offset + 4)];
+        offset += 8;
+        offset += readBytes(data, offset, table);
+        tables.put(tag, table);
+      }
+      Set<Integer> removedTables = new HashSet<>();
+      for (int i = 0; i < removedTableCount; i++) {
+        removedTables.add(data.readULongAsInt(offset));
+        offset += 4;
+      }
+
+      Font.Builder fontBuilder = fontFactory.newFontBuilder();
+      for (Map.Entry<Integer, ? extends Table> entry : base.tableMap().entrySet()) {
+        int tag = entry.getKey();
+        if (!removedTables.contains(tag) && !tables.containsKey(tag)) {
+          fontBuilder.newTableBuilder(tag, entry.getValue().readFontData());
+        }
+      }
+      for (Map.Entry<Integer, byte[]> entry : tables.entrySet()) {
+        fontBuilder.newTableBuilder(
+            entry.getKey(), WritableFontData.createWritableFontData(entry.getValue()));
+      }
+      if (numGlyphs > 0) {
+        byte[] glyphTable = patchGlyphs(base, glyphs, numGlyphs);
+        fontBuilder.newTableBuilder(Tag.glyf, WritableFontData.createWritableFontData(glyphTable));
+      }
+      return fontBuilder;
+    } catch (IndexOutOfBoundsException e) {
+      throw new IOException("Subset patch is truncated.", e);
+    }
+  }
+
+  private static byte[] patchGlyphs(Font base, Map<Integer, byte[]> glyphs, int numGlyphs)
+      throws IOException {
+    LocaTable baseLoca = base.getTable(Tag.loca);
+    if (baseLoca == null || !base.hasTable(Tag.glyf)) {
+      throw new IOException("Subset patch has glyphs but the font has no glyph table.");
+    }
+    ReadableFontData baseGlyphs = base.getTable(Tag.glyf).readFontData();
+    List<byte[]> glyphData = new ArrayList<>(numGlyphs);
+    int length = 0;
+    for (int glyphId = 0; glyphId < numGlyphs; glyphId++) {
+      byte[] glyph = glyphs.get(glyphId);
+      if (glyph == null) {
+        if (glyphId >= baseLoca.numGlyphs()) {
+          throw new IOException("Subset patch was not created from this font.");
+        }
+        glyph = glyphBytes(baseGlyphs, baseLoca, glyphId);
+      }
+      glyphData.add(glyph);
+      length += glyph.length;
+    }
+    byte[] glyphTable = new byte[length];
+    int offset = 0;
+    for (byte[] glyph : glyphData) {
+      System.arraycopy(glyph, 0, glyphTable, offset, glyph.length);
+      offset += glyph.length;
+    }
+    return glyphTable;
+  }
+
+  private static byte[] glyphBytes(ReadableFontData glyphs, LocaTable loca, int glyphId) {
+    return readBytes(glyphs, loca.glyphOffset(glyphId), loca.glyphLength(glyphId));
+  }
+
+  private static byte[] tableBytes(Table table) {
+    ReadableFontData data = table.readFontData();
+    return readBytes(data, 0, data.length());
+  }
+
+  private static byte[] readBytes(ReadableFontData data, int offset, int length) {
+    byte[] b = new byte[length];
+    readBytes(data, offset, b);
+    return b;
+  }
+
+  private static int readBytes(ReadableFontData data, int offset, byte[] b) {
+    if (b.length > 0) {
+      data.readBytes(offset, b, 0, b.length);
+    }
+    return b.length;
+  }
+}
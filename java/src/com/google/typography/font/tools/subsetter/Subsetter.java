@@ -25,12 +25,12 @@ import com.google.typography.font.sfntly.table.core.CMapTable;
 import java.io.IOException;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Executor;
 
 /**
  * sfntly sample code demonstrating subsetting. Work in progress.
@@ -39,6 +39,9 @@ import java.util.TreeSet;
  */
 public class Subsetter {
 
+  /** The value in the inverse glyph mapping for an old glyph that isn't in the subset. */
+  static final int NO_GLYPH = -1;
+
   protected final Font font;
 
   // TODO(stuartg): add SmartFontBuilder
@@ -49,19 +52,41 @@ public class Subsetter {
 
   // settings from user
   private Set<Integer> removeTables;
-  private List<Integer> newToOldGlyphs;
+  private int[] newToOldGlyphs;
   private List<CMapTable.CMapId> cmapIds;
+  private Executor executor;
 
   // inverse of mapping, computed lazily
-  private Map<Integer, Integer> oldToNewGlyphs = null;
+  private int[] oldToNewGlyphs = null;
 
   protected Subsetter(Font font, FontFactory fontFactory) {
     this.font = font;
     this.fontFactory = fontFactory;
   }
 
+  /**
+   * Set the glyphs to keep in the subsetted font. The glyph at each index of the list is the old
+   * glyph id of the glyph that gets that index as its new glyph id.
+   *
+   * @param glyphs the old glyph ids in new glyph id order
+   */
   public void setGlyphs(List<Integer> glyphs) {
-    this.newToOldGlyphs = new ArrayList<>(glyphs);
+    int[] newToOld = new int[glyphs.size()];
+    for (int i = 0; i < newToOld.length; i++) {
+      newToOld[i] = glyphs.get(i);
+    }
+    setGlyphs(newToOld);
+  }
+
+  /**
+   * Set the glyphs to keep in the subsetted font. The glyph at each index of the array is the old
+   * glyph id of the glyph that gets that index as its new glyph id.
+   *
+   * @param glyphs the old glyph ids in new glyph id order
+   */
+  public void setGlyphs(int[] glyphs) {
+    this.newToOldGlyphs = glyphs.clone();
+    this.oldToNewGlyphs = null;
   }
 
   /**
@@ -112,6 +137,18 @@ public class Subsetter {
     this.removeTables = new HashSet<>(removeTables);
   }
 
+  /**
+   * Set the executor used to process glyphs in parallel. Glyphs are handed to the executor in
+   * chunks and the glyph table is assembled from the results in glyph order, so the subsetted font
+   * is the same as when the glyphs are processed on the calling thread. By default there is no
+   * executor and all the work is done on the calling thread.
+   *
+   * @param executor the executor to process glyphs on; null to process them on the calling thread
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
   public Font.Builder subset() throws IOException {
     Font.Builder fontBuilder = fontFactory.newFontBuilder();
 
@@ -123,6 +160,9 @@ public class Subsetter {
     }
 
     for (TableSubsetter tableSubsetter : tableSubsetters) {
+      if (removeTables != null && removeTables.containsAll(tableSubsetter.tagsHandled())) {
+        continue;
+      }
       boolean handled = tableSubsetter.subset(this, font, fontBuilder);
       if (handled) {
         tableTags.removeAll(tableSubsetter.tagsHandled());
@@ -138,30 +178,68 @@ public class Subsetter {
   }
 
   /**
-   * Get the permutation table of the old glyph id to the new glyph id.
+   * Is the table removed from the subset font?
    *
-   * @return the permutation table
+   * @param tag the tag of the table
+   * @return true if the table is one of the tables to remove; false otherwise
    */
-  List<Integer> glyphMappingTable() {
+  boolean removesTable(int tag) {
+    return removeTables != null && removeTables.contains(tag);
+  }
+
+  /**
+   * Get the permutation table of the old glyph id to the new glyph id. The array is indexed by new
+   * glyph id and holds the old glyph id. The array must not be modified.
+   *
+   * @return the permutation table; null if no glyphs have been set
+   */
+  int[] glyphMappingTable() {
     return newToOldGlyphs;
   }
 
   /**
-   * Get the inverse mapping, from new glyph id to old.
+   * Get the inverse mapping, from old glyph id to new. The array is indexed by old glyph id and
+   * holds the new glyph id, or {@link #NO_GLYPH} for a glyph that isn't in the subset. Old glyph
+   * ids past the end of the array aren't in the subset either. The array must not be modified.
    *
    * @return the inverse mapping
    */
-  Map<Integer, Integer> getInverseMapping() {
+  int[] getInverseMapping() {
     if (oldToNewGlyphs == null) {
-      oldToNewGlyphs = new HashMap<>();
-      List<Integer> mapping = glyphMappingTable();
-      for (int i = 0; i < mapping.size(); i++) {
-        oldToNewGlyphs.put(mapping.get(i), i);
+      int maxOldGlyph = NO_GLYPH;
+      for (int oldGlyph : newToOldGlyphs) {
+        maxOldGlyph = Math.max(maxOldGlyph, oldGlyph);
+      }
+      int[] oldToNew = new int[maxOldGlyph + 1];
+      Arrays.fill(oldToNew, NO_GLYPH);
+      for (int i = 0; i < newToOldGlyphs.length; i++) {
+        oldToNew[newToOldGlyphs[i]] = i;
       }
+      oldToNewGlyphs = oldToNew;
     }
     return oldToNewGlyphs;
   }
 
+  /**
+   * Get the new glyph id for an old glyph id.
+   *
+   * @param inverseMapping the mapping from {@link #getInverseMapping()}
+   * @param oldGlyph the old glyph id
+   * @return the new glyph id; {@link #NO_GLYPH} if the glyph isn't in the subset
+   */
+  static int newGlyphId(int[] inverseMapping, int oldGlyph) {
+    return oldGlyph >= 0 && oldGlyph < inverseMapping.length ? inverseMapping[oldGlyph] : NO_GLYPH;
+  }
+
+  /**
+   * Get the executor to process glyphs on.
+   *
+   * @return the executor; null if glyphs are processed on the calling thread
+   */
+  Executor executor() {
+    return executor;
+  }
+
   List<CMapTable.CMapId> cmapId() {
     return cmapIds;
   }
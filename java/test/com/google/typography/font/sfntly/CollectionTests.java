@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.testutils.TestFont;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.util.Arrays;
+import java.util.Map;
+import junit.framework.TestCase;
+
+public class CollectionTests extends TestCase {
+
+  private static final byte[] FONT = readFont(TestFont.TestFontNames.OPENSANS);
+
+  public void testStreamedCollection() throws Exception {
+    FontFactory factory = FontFactory.getInstance();
+    Font font = factory.loadFonts(FONT)[0];
+    byte[] ttc = TestFontUtils.buildCollection(FONT, FONT);
+
+    Font[] fonts = factory.loadFonts(new UnknownLengthInputStream(ttc));
+    assertEquals(2, fonts.length);
+    for (Font member : fonts) {
+      assertSameTables(font, member);
+    }
+  }
+
+  public void testSharedTables() throws Exception {
+    FontFactory factory = FontFactory.getInstance();
+    Font font = factory.loadFonts(FONT)[0];
+    byte[] ttc = TestFontUtils.buildSharedCollection(FONT, 3);
+
+    Font[] streamed = factory.loadFonts(new UnknownLengthInputStream(ttc));
+    Font[] loaded = factory.loadFonts(ttc);
+    for (Font[] fonts : Arrays.asList(streamed, loaded)) {
+      assertEquals(3, fonts.length);
+      assertSame(fonts[0].getTable(Tag.glyf), fonts[1].getTable(Tag.glyf));
+      assertSame(fonts[0].getTable(Tag.GSUB), fonts[2].getTable(Tag.GSUB));
+      // tables built using values from other tables are not shared
+      assertNotSame(fonts[0].getTable(Tag.loca), fonts[1].getTable(Tag.loca));
+      for (Font member : fonts) {
+        assertSameTables(font, member);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        factory.serializeFont(member, os);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        factory.serializeFont(font, expected);
+        assertTrue(Arrays.equals(expected.toByteArray(), os.toByteArray()));
+      }
+    }
+  }
+
+  public void testStreamedCollectionForBuilding() throws Exception {
+    FontFactory factory = FontFactory.getInstance();
+    byte[] ttc = TestFontUtils.buildSharedCollection(FONT, 2);
+
+    Font.Builder[] builders = factory.loadFontsForBuilding(new UnknownLengthInputStream(ttc));
+    assertEquals(2, builders.length);
+    assertNotSame(builders[0].getTableBuilder(Tag.glyf), builders[1].getTableBuilder(Tag.glyf));
+    Font font = factory.loadFonts(FONT)[0];
+    assertSameTables(font, builders[0].build());
+    assertSameTables(font, builders[1].build());
+  }
+
+  public void testStreamedCollectionDigests() throws Exception {
+    FontFactory factory = FontFactory.getInstance();
+    factory.fingerprintFont(true);
+    byte[] ttc = TestFontUtils.buildSharedCollection(FONT, 2);
+
+    Font[] streamed = factory.loadFonts(new UnknownLengthInputStream(ttc));
+    Font[] loaded = factory.loadFonts(ttc);
+    assertTrue(Arrays.equals(loaded[0].digest(), streamed[0].digest()));
+    assertTrue(Arrays.equals(loaded[1].digest(), streamed[1].digest()));
+  }
+
+  public void testSerializeCollection() throws Exception {
+    FontFactory factory = FontFactory.getInstance();
+    Font openSans = factory.loadFonts(FONT)[0];
+    Font roboto = factory.loadFonts(readFont(TestFont.TestFontNames.ROBOTO))[0];
+    Font[] fonts = {openSans, roboto, factory.loadFonts(FONT)[0]};
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    factory.serializeCollection(fonts, os);
+    byte[] ttc = os.toByteArray();
+    Font[] loaded = factory.loadFonts(ttc);
+    assertEquals(fonts.length, loaded.length);
+    for (int i = 0; i < fonts.length; i++) {
+      assertSameTables(fonts[i], loaded[i]);
+    }
+    // the second copy of Open Sans adds only its offset table
+    ByteArrayOutputStream single = new ByteArrayOutputStream();
+    factory.serializeCollection(new Font[] {openSans, roboto}, single);
+    int offsetTableSize = 12 + openSans.numTables() * 16;
+    assertEquals(single.size() + 4 + offsetTableSize, ttc.length);
+    assertSame(loaded[0].getTable(Tag.glyf), loaded[2].getTable(Tag.glyf));
+  }
+
+  private static void assertSameTables(Font expected, Font actual) {
+    assertEquals(expected.numTables(), actual.numTables());
+    for (Map.Entry<Integer, ? extends Table> entry : expected.tableMap().entrySet()) {
+      Table table = actual.getTable(entry.getKey());
+      assertNotNull(table);
+      assertEquals(entry.getValue().dataLength(), table.dataLength());
+      assertEquals(entry.getValue().calculatedChecksum(), table.calculatedChecksum());
+    }
+  }
+
+  private static byte[] readFont(TestFont.TestFontNames font) {
+    try {
+      return TestUtils.readFile(font.getFile());
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** A stream that, like many network streams, doesn't know how much data is available. */
+  private static final class UnknownLengthInputStream extends FilterInputStream {
+    UnknownLengthInputStream(byte[] b) {
+      super(new ByteArrayInputStream(b));
+    }
+
+    @Override
+    public int available() {
+      return 0;
+    }
+  }
+}
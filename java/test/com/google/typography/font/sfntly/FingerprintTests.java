@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+import com.google.typography.font.sfntly.FontFactory.FingerprintAlgorithm;
+import com.google.typography.font.sfntly.testutils.TestFont;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+public class FingerprintTests extends TestCase {
+
+  private static final File TEST_FONT_FILE = TestFont.TestFontNames.OPENSANS.getFile();
+
+  public void testByteArrayAndMappedDigests() throws Exception {
+    FontFactory factory = FontFactory.getInstance();
+    factory.fingerprintFont(true);
+    byte[] b = TestUtils.readFile(TEST_FONT_FILE);
+    byte[] expected = MessageDigest.getInstance("SHA-1").digest(b);
+
+    assertTrue(Arrays.equals(expected, factory.loadFonts(b)[0].digest()));
+    assertTrue(Arrays.equals(expected, factory.loadFontsForBuilding(b)[0].build().digest()));
+    assertTrue(Arrays.equals(expected, factory.loadFonts(TEST_FONT_FILE.toPath())[0].digest()));
+
+    factory.fingerprintFont(false);
+    assertNull(factory.loadFonts(b)[0].digest());
+  }
+
+  public void testMurmur3Digests() throws Exception {
+    FontFactory factory = FontFactory.getInstance();
+    factory.fingerprintFont(true);
+    factory.fingerprintAlgorithm(FingerprintAlgorithm.MURMUR3_128);
+    byte[] b = TestUtils.readFile(TEST_FONT_FILE);
+    byte[] expected = new Murmur3Digest().digest(b);
+
+    assertEquals(16, expected.length);
+    assertTrue(Arrays.equals(expected, factory.loadFonts(b)[0].digest()));
+    assertTrue(Arrays.equals(expected, factory.loadFonts(TEST_FONT_FILE.toPath())[0].digest()));
+  }
+
+  public void testCollectionDigests() throws Exception {
+    FontFactory factory = FontFactory.getInstance();
+    factory.fingerprintFont(true);
+    byte[] font = TestUtils.readFile(TEST_FONT_FILE);
+    byte[] ttc = TestFontUtils.buildCollection(font, font);
+
+    Font[] fonts = factory.loadFonts(ttc);
+    assertEquals(2, fonts.length);
+    assertNotNull(fonts[0].digest());
+    assertNotNull(fonts[1].digest());
+    assertFalse(Arrays.equals(fonts[0].digest(), fonts[1].digest()));
+    assertTrue(Arrays.equals(fonts[1].digest(), factory.loadFonts(ttc)[1].digest()));
+    Font[] streamed = factory.loadFonts(new ByteArrayInputStream(ttc));
+    assertTrue(Arrays.equals(fonts[0].digest(), streamed[0].digest()));
+  }
+
+  public void testMurmur3ReferenceValues() throws Exception {
+    assertEquals("00000000000000000000000000000000", murmur3Hex(new byte[0]));
+    assertEquals("029bbd41b3a7d8cb191dae486a901e5b", murmur3Hex("hello".getBytes("US-ASCII")));
+    assertEquals(
+        "6c1b07bc7bbc4be347939ac4a93c437a",
+        murmur3Hex("The quick brown fox jumps over the lazy dog".getBytes("US-ASCII")));
+  }
+
+  public void testMurmur3IncrementalUpdates() throws Exception {
+    byte[] b = new byte[1000];
+    for (int i = 0; i < b.length; i++) {
+      b[i] = (byte) (i * 31 + 7);
+    }
+    assertEquals("45c99d896b9dfe1729ce34cea6aaa7d3", murmur3Hex(b));
+
+    for (int chunk : new int[] {1, 3, 15, 16, 17, 100}) {
+      MessageDigest digest = new Murmur3Digest();
+      for (int offset = 0; offset < b.length; offset += chunk) {
+        digest.update(b, offset, Math.min(chunk, b.length - offset));
+      }
+      assertEquals(murmur3Hex(b), toHex(digest.digest()));
+    }
+  }
+
+  private static String murmur3Hex(byte[] b) {
+    return toHex(new Murmur3Digest().digest(b));
+  }
+
+  private static String toHex(byte[] b) {
+    StringBuilder sb = new StringBuilder();
+    for (byte value : b) {
+      sb.append(String.format("%02x", value & 0xff));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.PostScriptTable;
+import com.google.typography.font.sfntly.table.truetype.Glyph;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import com.google.typography.font.sfntly.testutils.TestFont;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import junit.framework.TestCase;
+
+public class FontCacheTests extends TestCase {
+
+  private static final File OPENSANS = TestFont.TestFontNames.OPENSANS.getFile();
+  private static final File ROBOTO = TestFont.TestFontNames.ROBOTO.getFile();
+
+  public void testSameDataSharesFonts() throws Exception {
+    FontCache cache = new FontCache(FontFactory.getInstance(), 2);
+    Font[] first = cache.loadFonts(TestUtils.readFile(OPENSANS));
+    Font[] second = cache.loadFonts(TestUtils.readFile(OPENSANS));
+    Font[] mapped = cache.loadFonts(OPENSANS.toPath());
+    assertSame(first[0], second[0]);
+    assertSame(first[0], mapped[0]);
+    assertEquals(1, cache.size());
+  }
+
+  public void testLeastRecentlyUsedEviction() throws Exception {
+    FontCache cache = new FontCache(FontFactory.getInstance(), 1);
+    Font openSans = cache.loadFonts(TestUtils.readFile(OPENSANS))[0];
+    Font roboto = cache.loadFonts(TestUtils.readFile(ROBOTO))[0];
+    assertEquals(1, cache.size());
+    assertSame(roboto, cache.loadFonts(TestUtils.readFile(ROBOTO))[0]);
+    assertNotSame(openSans, cache.loadFonts(TestUtils.readFile(OPENSANS))[0]);
+
+    cache.clear();
+    assertEquals(0, cache.size());
+  }
+
+  public void testConcurrentReads() throws Exception {
+    FontFactory factory = FontFactory.getInstance();
+    List<String> expected = describeGlyphs(factory.loadFonts(TestUtils.readFile(OPENSANS))[0]);
+
+    factory.loadTablesLazily(true);
+    FontCache cache = new FontCache(factory, 1);
+    final Font font = cache.loadFonts(TestUtils.readFile(OPENSANS))[0];
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<List<String>>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        results.add(
+            executor.submit(
+                new Callable<List<String>>() {
+                  @Override
+                  public List<String> call() {
+                    return describeGlyphs(font);
+                  }
+                }));
+      }
+      for (Future<List<String>> result : results) {
+        assertEquals(expected, result.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /** Reads the parts of the font that are parsed on first use. */
+  private static List<String> describeGlyphs(Font font) {
+    List<String> description = new ArrayList<>();
+    for (Table table : font.tableMap().values()) {
+      description.add(table.header().tag() + ": " + table.calculatedChecksum());
+    }
+    LocaTable loca = font.getTable(Tag.loca);
+    GlyphTable glyf = font.getTable(Tag.glyf);
+    PostScriptTable post = font.getTable(Tag.post);
+    for (int glyphId = 0; glyphId < loca.numGlyphs(); glyphId++) {
+      Glyph glyph = glyf.glyph(loca.glyphOffset(glyphId), loca.glyphLength(glyphId));
+      description.add(post.glyphName(glyphId) + ": " + glyph.padding() + " " + glyph.padding());
+    }
+    return description;
+  }
+}
@@ -18,9 +18,16 @@ package com.google.typography.font.sfntly;
 
 import com.google.typography.font.sfntly.table.Header;
 import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.HorizontalMetricsTable;
 import com.google.typography.font.sfntly.testutils.TestFont;
 import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Map;
 import junit.framework.TestCase;
 
@@ -38,7 +45,100 @@ public class LoadingTests extends TestCase {
   public void testLoadingComparison() throws Exception {
     Font[] sFonts = TestFontUtils.loadFont(TEST_FONT_FILE);
     Font[] bFonts = TestFontUtils.loadFontUsingByteArray(TEST_FONT_FILE);
+    assertSameFonts(sFonts, bFonts);
+  }
+
+  public void testMappedLoadingComparison() throws Exception {
+    Font[] sFonts = TestFontUtils.loadFont(TEST_FONT_FILE);
+    Font[] mFonts = FontFactory.getInstance().loadFonts(TEST_FONT_FILE.toPath());
+    assertSameFonts(sFonts, mFonts);
+  }
+
+  public void testHeaderChecksums() throws Exception {
+    FontFactory factory = FontFactory.getInstance();
+    Font font = factory.loadFonts(TestUtils.readFile(TEST_FONT_FILE))[0];
+    ByteArrayOutputStream computed = new ByteArrayOutputStream();
+    factory.serializeFont(font, computed);
+
+    factory.useHeaderChecksums(true);
+    Font trustingFont = factory.loadFonts(TestUtils.readFile(TEST_FONT_FILE))[0];
+    ByteArrayOutputStream trusted = new ByteArrayOutputStream();
+    factory.serializeFont(trustingFont, trusted);
+
+    assertEquals(font.checksum(), trustingFont.checksum());
+    assertTrue(Arrays.equals(computed.toByteArray(), trusted.toByteArray()));
+  }
+
+  public void testChannelSerialization() throws Exception {
+    FontFactory factory = FontFactory.getInstance();
+    Font font = factory.loadFonts(TestUtils.readFile(TEST_FONT_FILE))[0];
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    factory.serializeFont(font, expected);
+
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    factory.serializeFont(font, Channels.newChannel(actual));
+    assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+
+    Font mappedFont = factory.loadFonts(TEST_FONT_FILE.toPath())[0];
+    File file = File.createTempFile("sfntly", ".ttf");
+    try {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+        factory.serializeFont(mappedFont, channel);
+      }
+      assertTrue(Arrays.equals(expected.toByteArray(), TestUtils.readFile(file)));
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testLazyLoading() throws Exception {
+    FontFactory factory = FontFactory.getInstance();
+    Font font = factory.loadFonts(TestUtils.readFile(TEST_FONT_FILE))[0];
+    ByteArrayOutputStream eager = new ByteArrayOutputStream();
+    factory.serializeFont(font, eager);
+
+    factory.loadTablesLazily(true);
+    Font lazyFont = factory.loadFonts(TestUtils.readFile(TEST_FONT_FILE))[0];
+    assertEquals(font.numTables(), lazyFont.numTables());
+    assertEquals(font.checksum(), lazyFont.checksum());
+    assertTrue(lazyFont.hasTable(Tag.GSUB));
+
+    // serialize before and after building some of the tables
+    ByteArrayOutputStream lazy = new ByteArrayOutputStream();
+    factory.serializeFont(lazyFont, lazy);
+    assertTrue(Arrays.equals(eager.toByteArray(), lazy.toByteArray()));
+    HorizontalMetricsTable hmtx = lazyFont.getTable(Tag.hmtx);
+    HorizontalMetricsTable eagerHmtx = font.getTable(Tag.hmtx);
+    assertEquals(eagerHmtx.numberOfHMetrics(), hmtx.numberOfHMetrics());
+    assertEquals(eagerHmtx.advanceWidth(10), hmtx.advanceWidth(10));
+    lazy.reset();
+    factory.serializeFont(lazyFont, lazy);
+    assertTrue(Arrays.equals(eager.toByteArray(), lazy.toByteArray()));
+
+    assertSameFonts(new Font[] {font}, new Font[] {lazyFont});
+  }
+
+  public void testLazyLoadingForBuilding() throws Exception {
+    FontFactory factory = FontFactory.getInstance();
+    factory.loadTablesLazily(true);
+    Font.Builder builder = factory.loadFontsForBuilding(TestUtils.readFile(TEST_FONT_FILE))[0];
+    Font font = factory.loadFonts(TestUtils.readFile(TEST_FONT_FILE))[0];
+    assertEquals(font.numTables(), builder.tableBuilderCount());
+    assertTrue(builder.hasTableBuilder(Tag.cmap));
+    assertNotNull(builder.getTableBuilder(Tag.cmap));
+    builder.removeTableBuilder(Tag.DSIG);
+    assertFalse(builder.hasTableBuilder(Tag.DSIG));
+
+    Font built = builder.build();
+    assertEquals(font.numTables() - 1, built.numTables());
+    assertFalse(built.hasTable(Tag.DSIG));
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    factory.serializeFont(built, os);
+    Font reloaded = factory.loadFonts(os.toByteArray())[0];
+    assertEquals(built.numTables(), reloaded.numTables());
+  }
 
+  private static void assertSameFonts(Font[] sFonts, Font[] bFonts) {
     assertEquals(sFonts.length, bFonts.length);
     for (int i = 0; i < sFonts.length; i++) {
       Font streamFont = sFonts[i];
@@ -17,6 +17,9 @@
 package com.google.typography.font.sfntly.data;
 
 import com.google.typography.font.sfntly.testutils.TestUtils;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import junit.framework.TestCase;
 import org.junit.ComparisonFailure;
 
@@ -43,6 +46,13 @@ public class ByteArrayTests extends TestCase {
     }
   }
 
+  public void testMappedByteArray() throws Exception {
+    for (int size : BYTE_ARRAY_SIZES) {
+      ByteArray ba = new MappedByteArray(ByteBuffer.allocateDirect(size));
+      byteArrayTester(fillTestByteArray(ba, size));
+    }
+  }
+
   private void byteArrayTester(ByteArray ba) throws Exception {
     copyTest(ba);
     // slicingCopyTest(ba);
@@ -58,6 +68,15 @@ public class ByteArrayTests extends TestCase {
     ba.copyTo(growableCopy);
     assertEquals(ba.length(), growableCopy.length());
     readComparison(ba, growableCopy);
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    int offset = ba.length() / 3;
+    int length = ba.length() - offset;
+    assertEquals(length, ba.copyTo(Channels.newChannel(os), offset, length));
+    MemoryByteArray channelCopy = new MemoryByteArray(os.toByteArray());
+    for (int i = 0; i < length; i++) {
+      assertEquals(ba.get(offset + i), channelCopy.get(i));
+    }
   }
 
   private void readComparison(ByteArray ba1, ByteArray ba2) throws Exception {
@@ -15,6 +15,7 @@
  */
 package com.google.typography.font.sfntly.data;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import junit.framework.TestCase;
 
@@ -41,6 +42,70 @@ public class OpenTypeDataTests extends TestCase {
     assertEquals(-16711423, data.readLong(0));
   }
 
+  public void testReadWideBackings() {
+    ByteArray[] arrays = {
+      new GrowableMemoryByteArray(),
+      new SegmentedGrowableMemoryByteArray(1),
+      new MappedByteArray(ByteBuffer.allocateDirect(testBytes.length))
+    };
+    for (ByteArray array : arrays) {
+      array.put(0, testBytes);
+      ReadableFontData data = new ReadableFontData(array);
+
+      assertEquals(65281, data.readUShort(0));
+      assertEquals(-255, data.readShort(0));
+      assertEquals(16711937, data.readUInt24(0));
+      assertEquals(4278255873L, data.readULong(0));
+      assertEquals(-16711423, data.readLong(0));
+      assertEquals(0x01010101L, data.readULong(4));
+    }
+  }
+
+  public void testReadOutOfBounds() {
+    MemoryByteArray array = new MemoryByteArray(Arrays.copyOf(testBytes, testBytes.length));
+    ReadableFontData data = new ReadableFontData(array).slice(1, 4);
+
+    assertEquals(0x01010101L, data.readULong(0));
+    try {
+      data.readULong(1);
+      fail("read past the end of the slice");
+    } catch (IndexOutOfBoundsException e) {
+      assertTrue(e.getMessage().startsWith("Index attempted to be read from is out of bounds"));
+    }
+    try {
+      data.readUShort(3);
+      fail("read past the end of the slice");
+    } catch (IndexOutOfBoundsException e) {
+      assertTrue(e.getMessage().startsWith("Index attempted to be read from is out of bounds"));
+    }
+    try {
+      data.readUInt24(-1);
+      fail("read before the start of the slice");
+    } catch (IndexOutOfBoundsException e) {
+      assertTrue(e.getMessage().startsWith("Index attempted to be read from is out of bounds"));
+    }
+  }
+
+  public void testChecksum() {
+    byte[] b = new byte[1031];
+    for (int i = 0; i < b.length; i++) {
+      b[i] = (byte) (i * 37);
+    }
+    ReadableFontData data = ReadableFontData.createReadableFontData(b);
+    for (int length : new int[] {0, 1, 2, 3, 4, 5, 8, 1024, 1027, 1031}) {
+      long expected = 0;
+      for (int i = 0; i < length; i++) {
+        expected += (b[i] & 0xffL) << (24 - 8 * (i % 4));
+      }
+      assertEquals(expected & 0xffffffffL, data.slice(0, length).checksum());
+    }
+    ReadableFontData ranged = data.slice(0, 16);
+    ranged.setCheckSumRanges(0, 4, 8);
+    assertEquals(
+        (data.readULong(0) + data.readULong(8) + data.readULong(12)) & 0xffffffffL,
+        ranged.checksum());
+  }
+
   public void testCopy() throws Exception {
     byte[] sourceBytes = new byte[1024];
 
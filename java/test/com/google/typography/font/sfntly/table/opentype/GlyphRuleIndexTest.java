@@ -0,0 +1,84 @@
+package com.google.typography.font.sfntly.table.opentype;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.table.opentype.component.GlyphGroup;
+import com.google.typography.font.sfntly.table.opentype.component.GlyphRuleIndex;
+import com.google.typography.font.sfntly.table.opentype.component.Rule;
+import com.google.typography.font.sfntly.testutils.TestFont;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import junit.framework.TestCase;
+
+public class GlyphRuleIndexTest extends TestCase {
+
+  private static final String[] TEXTS = {"fi", "office", "flaw", "affluent", "The end"};
+  private static final File ANDIKA = new File("../cpp/data/fonts/andika/Andika-R.ttf");
+  private static final int A = 68;
+  private static final int COMBINING_E = 232; // uni0363
+  private static final int DIAERESIS = 2735; // uni0308
+  private static final int DIAERESIS_SUPERSCRIPT = 2739; // uni0308.Sup
+
+  public void testIndexIsSharedByFont() throws Exception {
+    Font font = TestFontUtils.loadFont(TestFont.TestFontNames.OPENSANS.getFile())[0];
+    assertSame(GlyphRuleIndex.forFont(font), GlyphRuleIndex.forFont(font));
+  }
+
+  public void testConcurrentClosures() throws Exception {
+    final Font font = TestFontUtils.loadFont(TestFont.TestFontNames.OPENSANS.getFile())[0];
+    final CMapTable cmap = font.getTable(Tag.cmap);
+    List<GlyphGroup> expected = new ArrayList<>();
+    for (String text : TEXTS) {
+      expected.add(Rule.closure(Rule.glyphRulesMap(font), Rule.glyphGroupForText(text, cmap)));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<GlyphGroup>> futures = new ArrayList<>();
+      for (int i = 0; i < 8 * TEXTS.length; i++) {
+        final String text = TEXTS[i % TEXTS.length];
+        futures.add(executor.submit(() -> Rule.charGlyphClosure(font, text)));
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        assertEquals(TEXTS[i % TEXTS.length], expected.get(i % TEXTS.length), futures.get(i).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testClassZeroContext() throws Exception {
+    // Andika swaps a combining diaeresis for a superscript form after any glyph that is not in one
+    // of the mark classes, that is after a glyph of class 0
+    Font font = TestFontUtils.loadFont(ANDIKA)[0];
+    assertTrue(Rule.charGlyphClosure(font, "a\u0308").get(DIAERESIS_SUPERSCRIPT));
+    assertTrue(Rule.charGlyphClosure(font, "\u00e4\u0308").get(DIAERESIS_SUPERSCRIPT));
+    assertFalse(Rule.charGlyphClosure(font, "\u0308").get(DIAERESIS_SUPERSCRIPT));
+    assertFalse(Rule.charGlyphClosure(font, "\u0363\u0308").get(DIAERESIS_SUPERSCRIPT));
+  }
+
+  public void testClassZeroGlyphAddedLater() throws Exception {
+    Font font = TestFontUtils.loadFont(ANDIKA)[0];
+    GlyphRuleIndex index = GlyphRuleIndex.forFont(font);
+    // the diaeresis is checked first, while only a mark is before it, and then waits for a glyph of
+    // class 0, which comes from the mark referring to a
+    GlyphGroup glyphs = new GlyphGroup();
+    glyphs.add(COMBINING_E);
+    glyphs.add(DIAERESIS);
+    GlyphGroup closure =
+        index.closure(glyphs, glyph -> glyph == COMBINING_E ? new int[] {A} : new int[0]);
+    assertTrue(closure.get(A));
+    assertTrue(closure.get(DIAERESIS_SUPERSCRIPT));
+
+    glyphs = new GlyphGroup();
+    glyphs.add(COMBINING_E);
+    glyphs.add(DIAERESIS);
+    assertFalse(index.closure(glyphs).get(DIAERESIS_SUPERSCRIPT));
+  }
+}
@@ -32,6 +32,9 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Set;
 import java.util.TreeSet;
@@ -118,6 +121,66 @@ public class TestFontUtils {
     return fontFactory.loadFonts(b);
   }
 
+  /**
+   * Builds a TrueType collection file holding copies of the given font files. Each font keeps its
+   * own tables; nothing is shared between the fonts.
+   *
+   * @param fonts the font files
+   * @return the collection file
+   */
+  public static byte[] buildCollection(byte[]... fonts) {
+    int headerSize = 12 + 4 * fonts.length;
+    int size = headerSize;
+    for (byte[] font : fonts) {
+      size += (font.length + 3) & ~3;
+    }
+    ByteBuffer ttc = ByteBuffer.allocate(size);
+    ttc.putInt(Tag.ttcf).putInt(0x00010000).putInt(fonts.length);
+    int offset = headerSize;
+    for (int fontNumber = 0; fontNumber < fonts.length; fontNumber++) {
+      ByteBuffer font = ByteBuffer.wrap(fonts[fontNumber].clone());
+      int numTables = font.getShort(4) & 0xffff;
+      for (int i = 0; i < numTables; i++) {
+        int recordOffset = 12 + 16 * i + 8;
+        font.putInt(recordOffset, font.getInt(recordOffset) + offset);
+      }
+      ttc.putInt(12 + 4 * fontNumber, offset);
+      ((Buffer) ttc).position(offset);
+      ttc.put(font);
+      offset += (font.capacity() + 3) & ~3;
+    }
+    return ttc.array();
+  }
+
+  /**
+   * Builds a TrueType collection file holding the given font several times. The font's tables are
+   * stored once and every font in the collection refers to the same table data.
+   *
+   * @param font the font file
+   * @param numFonts the number of fonts in the collection
+   * @return the collection file
+   */
+  public static byte[] buildSharedCollection(byte[] font, int numFonts) {
+    int numTables = ((font[4] & 0xff) << 8) | (font[5] & 0xff);
+    int directorySize = 12 + 16 * numTables;
+    int fontOffset = 12 + 4 * numFonts + numFonts * directorySize;
+    ByteBuffer ttc = ByteBuffer.allocate(fontOffset + font.length);
+    ttc.putInt(Tag.ttcf).putInt(0x00010000).putInt(numFonts);
+    for (int fontNumber = 0; fontNumber < numFonts; fontNumber++) {
+      ttc.putInt(12 + 4 * numFonts + fontNumber * directorySize);
+    }
+    for (int fontNumber = 0; fontNumber < numFonts; fontNumber++) {
+      ByteBuffer directory = ByteBuffer.wrap(Arrays.copyOf(font, directorySize));
+      for (int i = 0; i < numTables; i++) {
+        int recordOffset = 12 + 16 * i + 8;
+        directory.putInt(recordOffset, directory.getInt(recordOffset) + fontOffset);
+      }
+      ttc.put(directory);
+    }
+    ttc.put(font);
+    return ttc.array();
+  }
+
   private static final Comparator<Table> TABLE_COMPARATOR_BY_OFFSET =
       Comparator.comparingInt(o -> o.header().offset());
 
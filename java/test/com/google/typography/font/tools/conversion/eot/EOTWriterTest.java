@@ -23,6 +23,9 @@ import com.google.typography.font.sfntly.testutils.TestFontUtils;
 import com.google.typography.font.sfntly.testutils.TestUtils;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import junit.framework.TestCase;
 
 /** @author Raph Levien */
@@ -44,4 +47,26 @@ public class EOTWriterTest extends TestCase {
     assertEquals(EOT_VERSION, eotData.readULongLE(8));
     // TODO: more sanity-checking and validation
   }
+
+  public void testCompressedEotWithExecutor() throws IOException {
+    Font srcFont = TestFontUtils.loadFont(fontFile)[0];
+    byte[] expected = toBytes(new EOTWriter(true).convert(srcFont));
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      EOTWriter eotWriter = new EOTWriter(true);
+      eotWriter.setExecutor(executor);
+      WritableFontData eotData = eotWriter.convert(srcFont);
+      assertTrue(Arrays.equals(expected, toBytes(eotData)));
+      assertEquals(eotData.length(), eotData.readULongLE(0));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static byte[] toBytes(WritableFontData data) {
+    byte[] bytes = new byte[data.length()];
+    data.readBytes(0, bytes, 0, bytes.length);
+    return bytes;
+  }
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.testutils.TestFont;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntUnaryOperator;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import junit.framework.TestCase;
+
+public class WoffWriterTest extends TestCase {
+
+  private static final int WOFF_HEADER_SIZE = 44;
+  private static final int ENTRY_SIZE = 20;
+
+  public void testParallelCompression() throws Exception {
+    Font font = TestFontUtils.loadFont(TestFont.TestFontNames.OPENSANS.getFile())[0];
+    byte[] serial = toBytes(new WoffWriter().convert(font));
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      WoffWriter writer = new WoffWriter();
+      writer.setExecutor(executor);
+      for (int i = 0; i < 3; i++) {
+        assertTrue(Arrays.equals(serial, toBytes(writer.convert(font))));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testCompressionLevels() throws Exception {
+    Font font = TestFontUtils.loadFont(TestFont.TestFontNames.OPENSANS.getFile())[0];
+    WoffWriter writer = new WoffWriter();
+    writer.setCompressionLevel(Deflater.BEST_COMPRESSION);
+    writer.setCompressionLevel(Tag.glyf, Deflater.NO_COMPRESSION);
+    writer.setCompressionLevel(Tag.cmap, Deflater.BEST_SPEED);
+    // a second writer sharing the deflater pool must not be affected by the first one's levels
+    WoffWriter other = new WoffWriter();
+    for (int i = 0; i < 2; i++) {
+      checkCompressedTables(
+          font,
+          toBytes(writer.convert(font)),
+          tag ->
+              tag == Tag.glyf
+                  ? Deflater.NO_COMPRESSION
+                  : tag == Tag.cmap ? Deflater.BEST_SPEED : Deflater.BEST_COMPRESSION);
+      checkCompressedTables(
+          font, toBytes(other.convert(font)), tag -> Deflater.DEFAULT_COMPRESSION);
+    }
+
+    try {
+      writer.setCompressionLevel(Tag.cmap, 10);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testDeflaterPool() {
+    DeflaterPool pool = new DeflaterPool(1);
+    Deflater first = pool.acquire(Deflater.BEST_SPEED);
+    Deflater second = pool.acquire(Deflater.BEST_SPEED);
+    assertNotSame(first, second);
+    pool.release(first);
+    pool.release(second);
+    assertEquals(1, pool.idleCount());
+    assertSame(first, pool.acquire(Deflater.BEST_COMPRESSION));
+    assertEquals(0, pool.idleCount());
+  }
+
+  public void testStreamingConversion() throws Exception {
+    Font font = TestFontUtils.loadFont(TestFont.TestFontNames.OPENSANS.getFile())[0];
+    byte[] expected = toBytes(new WoffWriter().convert(font));
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    assertEquals(expected.length, new WoffWriter().convert(font, os));
+    assertTrue(Arrays.equals(expected, os.toByteArray()));
+
+    ByteArrayOutputStream channelOs = new ByteArrayOutputStream();
+    assertEquals(expected.length, new WoffWriter().convert(font, Channels.newChannel(channelOs)));
+    assertTrue(Arrays.equals(expected, channelOs.toByteArray()));
+  }
+
+  public void testLoadWoff() throws Exception {
+    Font font = TestFontUtils.loadFont(TestFont.TestFontNames.OPENSANS.getFile())[0];
+    byte[] woff = toBytes(new WoffWriter().convert(font));
+
+    FontFactory factory = FontFactory.getInstance();
+    Font fromBytes = factory.loadFonts(woff)[0];
+    Font fromStream = factory.loadFonts(new ByteArrayInputStream(woff))[0];
+    for (Font loaded : new Font[] {fromBytes, fromStream}) {
+      assertEquals(font.sfntVersion(), loaded.sfntVersion());
+      assertEquals(font.numTables() - (font.hasTable(Tag.DSIG) ? 1 : 0), loaded.numTables());
+      for (Table table : loaded.tableMap().values()) {
+        byte[] expected = tableBytes(font.getTable(table.headerTag()));
+        assertTrue(Tag.stringValue(table.headerTag()), Arrays.equals(expected, tableBytes(table)));
+      }
+    }
+  }
+
+  public void testWoffTablesInflatedOnFirstUse() throws Exception {
+    Font font = TestFontUtils.loadFont(TestFont.TestFontNames.OPENSANS.getFile())[0];
+    byte[] woff = toBytes(new WoffWriter().convert(font));
+    ReadableFontData data = ReadableFontData.createReadableFontData(woff);
+    for (int i = 0; i < data.readUShort(12); i++) {
+      int entry = WOFF_HEADER_SIZE + i * ENTRY_SIZE;
+      if (data.readULongAsInt(entry) == Tag.GPOS) {
+        // corrupt the compressed GPOS table
+        int offset = data.readULongAsInt(entry + 4);
+        Arrays.fill(woff, offset, offset + 16, (byte) 0xff);
+      }
+    }
+
+    FontFactory factory = FontFactory.getInstance();
+    factory.loadTablesLazily(true);
+    factory.useHeaderChecksums(true);
+    Font loaded = factory.loadFonts(woff)[0];
+    byte[] cmap = tableBytes(font.getTable(Tag.cmap));
+    assertTrue(Arrays.equals(cmap, tableBytes(loaded.getTable(Tag.cmap))));
+    assertTrue(loaded.hasTable(Tag.GPOS));
+    try {
+      loaded.getTable(Tag.GPOS).readFontData().readUShort(0);
+      fail();
+    } catch (RuntimeException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Checks that every table that deflates to fewer bytes at its level is stored compressed, that
+   * the others are stored as they are, and that every table inflates back to the font's own table.
+   */
+  private static void checkCompressedTables(Font font, byte[] bytes, IntUnaryOperator levels)
+      throws Exception {
+    ReadableFontData woff = ReadableFontData.createReadableFontData(bytes);
+    int numTables = woff.readUShort(12);
+    for (int i = 0; i < numTables; i++) {
+      int entry = WOFF_HEADER_SIZE + i * ENTRY_SIZE;
+      int tag = woff.readULongAsInt(entry);
+      int offset = woff.readULongAsInt(entry + 4);
+      int compLength = woff.readULongAsInt(entry + 8);
+      int origLength = woff.readULongAsInt(entry + 12);
+      byte[] expected = tableBytes(font.getTable(tag));
+      assertEquals(expected.length, origLength);
+      byte[] actual = new byte[origLength];
+      if (deflatedLength(expected, levels.applyAsInt(tag)) < origLength) {
+        assertTrue(Tag.stringValue(tag), compLength < origLength);
+        Inflater inflater = new Inflater();
+        inflater.setInput(bytes, offset, compLength);
+        assertEquals(Tag.stringValue(tag), origLength, inflater.inflate(actual));
+        assertTrue(inflater.finished());
+        inflater.end();
+      } else {
+        assertEquals(Tag.stringValue(tag), origLength, compLength);
+        woff.readBytes(offset, actual, 0, compLength);
+      }
+      assertTrue(Tag.stringValue(tag), Arrays.equals(expected, actual));
+    }
+  }
+
+  private static int deflatedLength(byte[] input, int level) {
+    Deflater deflater = new Deflater(level);
+    deflater.setInput(input);
+    deflater.finish();
+    byte[] output = new byte[2 * input.length + 64];
+    int length = deflater.deflate(output);
+    assertTrue(deflater.finished());
+    deflater.end();
+    return length;
+  }
+
+  private static byte[] tableBytes(Table table) {
+    byte[] bytes = new byte[table.dataLength()];
+    table.readFontData().readBytes(0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  private static byte[] toBytes(WritableFontData data) {
+    byte[] bytes = new byte[data.length()];
+    data.readBytes(0, bytes, 0, bytes.length);
+    return bytes;
+  }
+}
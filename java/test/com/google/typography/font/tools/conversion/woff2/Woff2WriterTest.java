@@ -0,0 +1,456 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff2;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.HorizontalHeaderTable;
+import com.google.typography.font.sfntly.table.truetype.Glyph;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import com.google.typography.font.sfntly.table.truetype.SimpleGlyph;
+import com.google.typography.font.sfntly.testutils.TestFont;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+
+public class Woff2WriterTest extends TestCase {
+
+  private static final TestFont.TestFontNames[] FONTS = {
+    TestFont.TestFontNames.OPENSANS, TestFont.TestFontNames.ROBOTO, TestFont.TestFontNames.DROIDSANS
+  };
+
+  public void testStoredBrotli() {
+    StoredBrotliCompressor compressor = new StoredBrotliCompressor();
+    assertTrue(Arrays.equals(new byte[] {0x06}, compressor.compress(new byte[0])));
+    byte[] expected = {0x20, 0x00, 0x10, 1, 2, 3, 0x03};
+    assertTrue(Arrays.equals(expected, compressor.compress(new byte[] {1, 2, 3})));
+
+    byte[] data = new byte[150000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    assertTrue(Arrays.equals(data, decompress(compressor.compress(data))));
+  }
+
+  public void testTables() throws Exception {
+    Font font = TestFontUtils.loadFont(TestFont.TestFontNames.OPENSANS.getFile())[0];
+    Woff2Font woff2 = new Woff2Font(new Woff2Writer().convert(font));
+
+    assertEquals(font.sfntVersion(), woff2.flavor);
+    assertEquals(font.numTables() - (font.hasTable(Tag.DSIG) ? 1 : 0), woff2.tables.size());
+    assertFalse(woff2.tables.containsKey(Tag.DSIG));
+    for (int tag : woff2.tables.keySet()) {
+      if (tag == Tag.glyf || tag == Tag.loca || tag == Tag.hmtx) {
+        continue;
+      }
+      assertEquals(Tag.stringValue(tag), 0, (int) woff2.versions.get(tag));
+      byte[] expected = tableBytes(font.getTable(tag));
+      assertTrue(Tag.stringValue(tag), Arrays.equals(expected, woff2.table(tag)));
+    }
+
+    // loca is rebuilt from glyf, so it has the original length but no data of its own
+    assertEquals(0, (int) woff2.versions.get(Tag.loca));
+    assertEquals(font.getTable(Tag.loca).dataLength(), (int) woff2.origLengths.get(Tag.loca));
+    assertEquals(0, woff2.table(Tag.loca).length);
+  }
+
+  public void testGlyfTransform() throws Exception {
+    for (TestFont.TestFontNames name : FONTS) {
+      Font font = TestFontUtils.loadFont(name.getFile())[0];
+      Woff2Font woff2 = new Woff2Font(new Woff2Writer().convert(font));
+      assertEquals(0, (int) woff2.versions.get(Tag.glyf));
+      assertTrue(woff2.table(Tag.glyf).length < font.getTable(Tag.glyf).dataLength());
+      new GlyfDecoder(woff2.table(Tag.glyf)).check(font);
+    }
+  }
+
+  public void testHmtxTransform() throws Exception {
+    for (TestFont.TestFontNames name : FONTS) {
+      Font font = TestFontUtils.loadFont(name.getFile())[0];
+      Woff2Font woff2 = new Woff2Font(new Woff2Writer().convert(font));
+      assertEquals(1, (int) woff2.versions.get(Tag.hmtx));
+      int[] xMins = new GlyfDecoder(woff2.table(Tag.glyf)).check(font);
+
+      HorizontalHeaderTable hhea = font.getTable(Tag.hhea);
+      int numberOfHMetrics = hhea.numberOfHMetrics();
+      ReadableFontData hmtx = font.getTable(Tag.hmtx).readFontData();
+      Reader transformed = new Reader(woff2.table(Tag.hmtx), 0);
+      int flags = transformed.readUByte();
+      assertTrue((flags & ~3) == 0 && flags != 0);
+      int[] advances = new int[numberOfHMetrics];
+      for (int i = 0; i < numberOfHMetrics; i++) {
+        advances[i] = transformed.readUShort();
+      }
+      for (int i = 0; i < numberOfHMetrics; i++) {
+        int lsb = (flags & 1) != 0 ? xMins[i] : transformed.readShort();
+        assertEquals(hmtx.readUShort(4 * i), advances[i]);
+        assertEquals(hmtx.readShort(4 * i + 2), lsb);
+      }
+      for (int i = numberOfHMetrics; i < xMins.length; i++) {
+        int lsb = (flags & 2) != 0 ? xMins[i] : transformed.readShort();
+        assertEquals(hmtx.readShort(2 * numberOfHMetrics + 2 * i), lsb);
+      }
+      assertEquals(woff2.table(Tag.hmtx).length, transformed.position);
+    }
+  }
+
+  /** The tables of a WOFF2 font, untransformed tables as they were and the others transformed. */
+  private static final class Woff2Font {
+    final int flavor;
+    final Map<Integer, byte[]> tables = new HashMap<>();
+    final Map<Integer, Integer> versions = new HashMap<>();
+    final Map<Integer, Integer> origLengths = new HashMap<>();
+
+    Woff2Font(WritableFontData data) {
+      byte[] b = new byte[data.length()];
+      data.readBytes(0, b, 0, b.length);
+      Reader header = new Reader(b, 0);
+      assertEquals(0x774F4632, header.readULong());
+      flavor = header.readULong();
+      assertEquals(b.length, header.readULong());
+      assertEquals(0, b.length % 4);
+      int numTables = header.readUShort();
+      header.position = 20;
+      int compressedLength = header.readULong();
+
+      Reader directory = new Reader(b, 48);
+      int[] tags = new int[numTables];
+      int[] lengths = new int[numTables];
+      for (int i = 0; i < numTables; i++) {
+        int flags = directory.readUByte();
+        int version = flags >> 6;
+        tags[i] =
+            (flags & 0x3f) == 63
+                ? directory.readULong()
+                : Tag.intValue(Woff2Writer.KNOWN_TAGS[flags & 0x3f]);
+        if (i > 0) {
+          assertTrue(Integer.compareUnsigned(tags[i - 1], tags[i]) < 0);
+        }
+        lengths[i] = directory.readUIntBase128();
+        origLengths.put(tags[i], lengths[i]);
+        boolean glyfOrLoca = tags[i] == Tag.glyf || tags[i] == Tag.loca;
+        if (glyfOrLoca == (version == 0)) {
+          lengths[i] = directory.readUIntBase128();
+        }
+        versions.put(tags[i], version);
+      }
+      int end = directory.position + compressedLength;
+      byte[] stream = decompress(Arrays.copyOfRange(b, directory.position, end));
+      int offset = 0;
+      for (int i = 0; i < numTables; i++) {
+        tables.put(tags[i], Arrays.copyOfRange(stream, offset, offset + lengths[i]));
+        offset += lengths[i];
+      }
+      assertEquals(stream.length, offset);
+    }
+
+    byte[] table(int tag) {
+      return tables.get(tag);
+    }
+  }
+
+  /** Decodes the transformed glyf table, as per section 5.1 of the WOFF2 spec. */
+  private static final class GlyfDecoder {
+    private final byte[] b;
+    private final int numGlyphs;
+    private final Reader nContours;
+    private final Reader nPoints;
+    private final Reader flags;
+    private final Reader glyphs;
+    private final Reader composites;
+    private final Reader bboxes;
+    private final Reader instructions;
+    private final int[] ends = new int[7];
+    private final int bboxBitmap;
+
+    GlyfDecoder(byte[] b) {
+      this.b = b;
+      Reader header = new Reader(b, 0);
+      assertEquals(0, header.readUShort()); // reserved
+      assertEquals(0, header.readUShort()); // optionFlags, no overlap bitmap
+      numGlyphs = header.readUShort();
+      header.readUShort(); // indexFormat
+      Reader[] streams = new Reader[7];
+      int offset = 36;
+      for (int i = 0; i < 7; i++) {
+        streams[i] = new Reader(b, offset);
+        offset += header.readULong();
+        ends[i] = offset;
+      }
+      assertEquals(b.length, offset);
+      nContours = streams[0];
+      nPoints = streams[1];
+      flags = streams[2];
+      glyphs = streams[3];
+      composites = streams[4];
+      bboxes = streams[5];
+      instructions = streams[6];
+      bboxBitmap = bboxes.position;
+      bboxes.position += 4 * ((numGlyphs + 31) / 32);
+    }
+
+    /**
+     * Checks every glyph against the font's own glyph table.
+     *
+     * @return the xMin of each glyph, 0 for empty glyphs
+     */
+    int[] check(Font font) {
+      LocaTable loca = font.getTable(Tag.loca);
+      GlyphTable glyf = font.getTable(Tag.glyf);
+      assertEquals(loca.numGlyphs(), numGlyphs);
+      int[] xMins = new int[numGlyphs];
+      for (int glyphId = 0; glyphId < numGlyphs; glyphId++) {
+        int numberOfContours = (short) nContours.readUShort();
+        boolean hasBbox = (b[bboxBitmap + (glyphId >> 3)] & (0x80 >> (glyphId & 7))) != 0;
+        if (numberOfContours == 0) {
+          assertFalse(hasBbox);
+          assertTrue(loca.glyphLength(glyphId) == 0 || emptyGlyph(glyf, loca, glyphId));
+          continue;
+        }
+        Glyph glyph = glyf.glyph(loca.glyphOffset(glyphId), loca.glyphLength(glyphId));
+        int[] bbox;
+        if (numberOfContours > 0) {
+          int[] pointBbox = checkSimpleGlyph((SimpleGlyph) glyph, numberOfContours);
+          bbox = hasBbox ? readBbox() : pointBbox;
+        } else {
+          assertTrue(hasBbox);
+          checkCompositeGlyph(glyf.readFontData().slice(loca.glyphOffset(glyphId)), glyph);
+          bbox = readBbox();
+        }
+        assertEquals(glyph.xMin(), bbox[0]);
+        assertEquals(glyph.yMin(), bbox[1]);
+        assertEquals(glyph.xMax(), bbox[2]);
+        assertEquals(glyph.yMax(), bbox[3]);
+        xMins[glyphId] = bbox[0];
+      }
+      Reader[] streams = {
+        nContours, nPoints, flags, glyphs, composites, bboxes, instructions
+      };
+      for (int i = 0; i < streams.length; i++) {
+        assertEquals(ends[i], streams[i].position);
+      }
+      return xMins;
+    }
+
+    private static boolean emptyGlyph(GlyphTable glyf, LocaTable loca, int glyphId) {
+      return glyf.readFontData().readShort(loca.glyphOffset(glyphId)) == 0;
+    }
+
+    /** @return the bounding box of the points */
+    private int[] checkSimpleGlyph(SimpleGlyph glyph, int numberOfContours) {
+      assertEquals(glyph.numberOfContours(), numberOfContours);
+      int[] bbox = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+      int x = 0;
+      int y = 0;
+      for (int contour = 0; contour < numberOfContours; contour++) {
+        int numberOfPoints = nPoints.read255UShort();
+        assertEquals(glyph.numberOfPoints(contour), numberOfPoints);
+        for (int point = 0; point < numberOfPoints; point++) {
+          int flag = flags.readUByte();
+          int[] delta = readTriplet(flag & 0x7f);
+          x += delta[0];
+          y += delta[1];
+          assertEquals(glyph.xCoordinate(contour, point), x);
+          assertEquals(glyph.yCoordinate(contour, point), y);
+          assertEquals(glyph.onCurve(contour, point), (flag & 0x80) == 0);
+          bbox[0] = Math.min(bbox[0], x);
+          bbox[1] = Math.min(bbox[1], y);
+          bbox[2] = Math.max(bbox[2], x);
+          bbox[3] = Math.max(bbox[3], y);
+        }
+      }
+      int instructionSize = glyphs.read255UShort();
+      assertEquals(glyph.instructionSize(), instructionSize);
+      byte[] expected = new byte[instructionSize];
+      if (instructionSize > 0) {
+        glyph.instructions().readBytes(0, expected, 0, instructionSize);
+      }
+      assertTrue(Arrays.equals(expected, instructions.readBytes(instructionSize)));
+      return bbox;
+    }
+
+    /** Decodes a point's coordinate deltas, as per section 5.2 of the WOFF2 spec. */
+    private int[] readTriplet(int flag) {
+      int dx;
+      int dy;
+      if (flag < 10) {
+        dx = 0;
+        dy = ((flag & 14) << 7) + glyphs.readUByte();
+      } else if (flag < 20) {
+        dx = (((flag - 10) & 14) << 7) + glyphs.readUByte();
+        dy = 0;
+      } else if (flag < 84) {
+        int b0 = flag - 20;
+        int b1 = glyphs.readUByte();
+        dx = 1 + (b0 & 0x30) + (b1 >> 4);
+        dy = 1 + ((b0 & 0x0c) << 2) + (b1 & 0x0f);
+      } else if (flag < 120) {
+        int b0 = flag - 84;
+        dx = 1 + ((b0 / 12) << 8) + glyphs.readUByte();
+        dy = 1 + (((b0 % 12) >> 2) << 8) + glyphs.readUByte();
+      } else if (flag < 124) {
+        int b1 = glyphs.readUByte();
+        int b2 = glyphs.readUByte();
+        int b3 = glyphs.readUByte();
+        dx = (b1 << 4) + (b2 >> 4);
+        dy = ((b2 & 0x0f) << 8) + b3;
+      } else {
+        dx = glyphs.readUShort();
+        dy = glyphs.readUShort();
+      }
+      if (flag < 10) {
+        return new int[] {0, (flag & 1) != 0 ? dy : -dy};
+      }
+      if (flag < 20) {
+        return new int[] {(flag & 1) != 0 ? dx : -dx, 0};
+      }
+      return new int[] {(flag & 1) != 0 ? dx : -dx, (flag & 2) != 0 ? dy : -dy};
+    }
+
+    private void checkCompositeGlyph(ReadableFontData source, Glyph glyph) {
+      // the components are stored as they are in the glyph, after its header
+      int start = composites.position;
+      boolean haveInstructions = false;
+      int flag;
+      do {
+        flag = composites.readUShort();
+        haveInstructions |= (flag & 0x100) != 0;
+        composites.position += 2 + ((flag & 1) != 0 ? 4 : 2);
+        if ((flag & 0x08) != 0) {
+          composites.position += 2;
+        } else if ((flag & 0x40) != 0) {
+          composites.position += 4;
+        } else if ((flag & 0x80) != 0) {
+          composites.position += 8;
+        }
+      } while ((flag & 0x20) != 0);
+      int length = composites.position - start;
+      byte[] expected = new byte[length];
+      source.readBytes(10, expected, 0, length);
+      assertTrue(Arrays.equals(expected, Arrays.copyOfRange(b, start, composites.position)));
+
+      if (haveInstructions) {
+        int instructionSize = glyphs.read255UShort();
+        assertEquals(source.readUShort(10 + length), instructionSize);
+        byte[] expectedInstructions = new byte[instructionSize];
+        source.readBytes(12 + length, expectedInstructions, 0, instructionSize);
+        assertTrue(Arrays.equals(expectedInstructions, instructions.readBytes(instructionSize)));
+      }
+    }
+
+    private int[] readBbox() {
+      return new int[] {
+        bboxes.readShort(), bboxes.readShort(), bboxes.readShort(), bboxes.readShort()
+      };
+    }
+  }
+
+  /** Reads big-endian values from a position in an array that moves past each value read. */
+  private static final class Reader {
+    private final byte[] b;
+    int position;
+
+    Reader(byte[] b, int position) {
+      this.b = b;
+      this.position = position;
+    }
+
+    int readUByte() {
+      return b[position++] & 0xff;
+    }
+
+    int readUShort() {
+      return readUByte() << 8 | readUByte();
+    }
+
+    int readShort() {
+      return (short) readUShort();
+    }
+
+    int readULong() {
+      return readUShort() << 16 | readUShort();
+    }
+
+    int readUIntBase128() {
+      int value = 0;
+      int b;
+      do {
+        b = readUByte();
+        value = (value << 7) | (b & 0x7f);
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+
+    int read255UShort() {
+      int code = readUByte();
+      if (code == 253) {
+        return readUShort();
+      } else if (code == 254) {
+        return 506 + readUByte();
+      } else if (code == 255) {
+        return 253 + readUByte();
+      }
+      return code;
+    }
+
+    byte[] readBytes(int length) {
+      position += length;
+      return Arrays.copyOfRange(b, position - length, position);
+    }
+  }
+
+  private static byte[] tableBytes(Table table) {
+    byte[] bytes = new byte[table.dataLength()];
+    table.readFontData().readBytes(0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  /** Decompresses a Brotli stream made only of uncompressed meta-blocks. */
+  private static byte[] decompress(byte[] stream) {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    assertEquals(0, stream[0] & 1); // WBITS = 16
+    int bit = 1;
+    while (true) {
+      if (bits(stream, bit, 1) == 1) {
+        assertEquals(1, bits(stream, bit + 1, 1)); // ISLASTEMPTY
+        assertEquals(stream.length, (bit + 2 + 7) / 8);
+        return os.toByteArray();
+      }
+      assertEquals(0, bits(stream, bit + 1, 2)); // MNIBBLES = 4
+      int length = bits(stream, bit + 3, 16) + 1;
+      assertEquals(1, bits(stream, bit + 19, 1)); // ISUNCOMPRESSED
+      int offset = (bit + 20 + 7) / 8;
+      os.write(stream, offset, length);
+      bit = 8 * (offset + length);
+    }
+  }
+
+  private static int bits(byte[] stream, int bit, int count) {
+    int value = 0;
+    for (int i = 0; i < count; i++, bit++) {
+      value |= ((stream[bit >> 3] >> (bit & 7)) & 1) << i;
+    }
+    return value;
+  }
+}
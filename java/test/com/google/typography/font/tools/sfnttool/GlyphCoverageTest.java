@@ -0,0 +1,56 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.sfnttool;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.testutils.TestFont;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+public class GlyphCoverageTest extends TestCase {
+
+  private static final int A_GRAVE = 162;
+  private static final int GRAVE = 67;
+  private static final int A = 68;
+  private static final int FI = 564;
+  private static final int FL = 565;
+
+  public void testLigatures() throws Exception {
+    Font font = TestFontUtils.loadFont(TestFont.TestFontNames.OPENSANS.getFile())[0];
+    List<Integer> coverage = GlyphCoverage.getGlyphCoverage(font, "fi");
+    assertEquals(0, coverage.get(0).intValue());
+    assertTrue(coverage.contains(FI));
+    assertFalse(coverage.contains(FL));
+  }
+
+  public void testComponents() throws Exception {
+    Font font = TestFontUtils.loadFont(TestFont.TestFontNames.OPENSANS.getFile())[0];
+    List<Integer> coverage = GlyphCoverage.getGlyphCoverage(font, "à");
+    assertTrue(coverage.containsAll(Arrays.asList(GRAVE, A, A_GRAVE)));
+  }
+
+  public void testReusedInstance() throws Exception {
+    Font font = TestFontUtils.loadFont(TestFont.TestFontNames.OPENSANS.getFile())[0];
+    GlyphCoverage glyphCoverage = new GlyphCoverage(font);
+    for (String string : new String[] {"fi", "à", "office", "fi"}) {
+      assertEquals(
+          GlyphCoverage.getGlyphCoverage(font, string), glyphCoverage.getGlyphCoverage(string));
+    }
+  }
+}
@@ -19,10 +19,14 @@ package com.google.typography.font.tools.subsetter;
 import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.FontFactory;
 import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
 import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMapFormat12;
 import com.google.typography.font.sfntly.table.core.CMapTable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 import junit.framework.TestCase;
 
 /** @author Raph Levien */
@@ -45,6 +49,12 @@ public class CMapTableBuilderTest extends TestCase {
     assertEquals(CMapTable.NOTDEF, cmap.glyphId(0xfffe));
   }
 
+  private static CMapTable buildCmapTable(Map<Integer, Integer> mapping) {
+    Font.Builder fontBuilder = FontFactory.getInstance().newFontBuilder();
+    new CMapTableBuilder(fontBuilder, mapping).build();
+    return fontBuilder.build().getTable(Tag.cmap);
+  }
+
   public void testCmapBuilding() {
     Map<Integer, Integer> mapping = new HashMap<>();
     mapping.put(32, 0);
@@ -54,5 +64,97 @@ public class CMapTableBuilderTest extends TestCase {
     mapping.put(43, 2);
     mapping.put(0x1234, 4);
     verifyCmap(mapping);
+    assertNull(buildCmapTable(mapping).cmap(CMapTable.CMapId.WINDOWS_UCS4));
+  }
+
+  public void testSparseMappingUsesGlyphIdArray() {
+    Map<Integer, Integer> mapping = new HashMap<>();
+    mapping.put(0x41, 5);
+    mapping.put(0x43, 9);
+    mapping.put(0x45, 2);
+    verifyCmap(mapping);
+
+    // one glyphIdArray segment for 0x41-0x45 and the final segment, rather than four segments
+    CMap cmap = buildCmapTable(mapping).cmap(CMapTable.CMapId.WINDOWS_BMP);
+    assertEquals(CMapTable.NOTDEF, cmap.glyphId(0x42));
+    assertEquals(16 + 2 * 8 + 5 * 2, cmap.readFontData().length());
+  }
+
+  public void testRandomMappings() {
+    Random random = new Random(42);
+    for (int density : new int[] {2, 10, 100}) {
+      Map<Integer, Integer> mapping = new HashMap<>();
+      int glyphId = 1;
+      for (int unicode = 0x4e00; unicode < 0x5e00; unicode++) {
+        if (random.nextInt(density) == 0) {
+          // mostly consecutive glyphs, with some jumps
+          glyphId = random.nextInt(4) == 0 ? random.nextInt(30000) + 1 : glyphId + 1;
+          mapping.put(unicode, glyphId);
+        }
+      }
+      CMap cmap = buildCmapTable(mapping).cmap(CMapTable.CMapId.WINDOWS_BMP);
+      for (int unicode = 0; unicode <= 0xffff; unicode++) {
+        Integer expected = mapping.get(unicode);
+        assertEquals(expected == null ? CMapTable.NOTDEF : expected, cmap.glyphId(unicode));
+      }
+    }
+  }
+
+  public void testPackedMapping() {
+    Map<Integer, Integer> mapping = new HashMap<>();
+    mapping.put(0x20, 3);
+    mapping.put(0x41, 1);
+    mapping.put(0x42, 2);
+    mapping.put(0x1f600, 4);
+    // out of code point order
+    long[] entries = {
+      CMapTableBuilder.entry(0x1f600, 4),
+      CMapTableBuilder.entry(0x41, 1),
+      CMapTableBuilder.entry(0x20, 3),
+      CMapTableBuilder.entry(0x42, 2)
+    };
+    Font.Builder fontBuilder = FontFactory.getInstance().newFontBuilder();
+    new CMapTableBuilder(fontBuilder, entries).build();
+    CMapTable cmapTable = fontBuilder.build().getTable(Tag.cmap);
+
+    CMapTable expected = buildCmapTable(mapping);
+    assertEquals(expected.readFontData().length(), cmapTable.readFontData().length());
+    for (int i = 0; i < expected.readFontData().length(); i++) {
+      assertEquals(expected.readFontData().readUByte(i), cmapTable.readFontData().readUByte(i));
+    }
+  }
+
+  public void testSupplementaryCmapBuilding() {
+    Map<Integer, Integer> mapping = new HashMap<>();
+    mapping.put(0x41, 1);
+    mapping.put(0x42, 2);
+    mapping.put(0x1f600, 3);
+    mapping.put(0x1f601, 4);
+    mapping.put(0x1f602, 5);
+    mapping.put(0x1f604, 6);
+    mapping.put(0x20000, 8);
+    mapping.put(0x20001, 7);
+    mapping.put(0x20002, 0);
+
+    CMapTable cmapTable = buildCmapTable(mapping);
+    CMap bmp = cmapTable.cmap(CMapTable.CMapId.WINDOWS_BMP);
+    assertEquals(1, bmp.glyphId(0x41));
+    assertEquals(2, bmp.glyphId(0x42));
+    assertEquals(CMapTable.NOTDEF, bmp.glyphId(0x1f600));
+    CMap cmap12 = cmapTable.cmap(CMapTable.CMapId.WINDOWS_UCS4);
+    assertEquals(CMap.CMapFormat.Format12.value(), cmap12.format());
+    for (Map.Entry<Integer, Integer> entry : mapping.entrySet()) {
+      assertEquals((int) entry.getValue(), cmap12.glyphId(entry.getKey()));
+    }
+    assertEquals(CMapTable.NOTDEF, cmap12.glyphId(0x1f603));
+
+    // 0x41-0x42, 0x1f600-0x1f602, 0x1f604, 0x20000 and 0x20001
+    CMapFormat12.Builder builder =
+        (CMapFormat12.Builder)
+            CMapTable.Builder.createBuilder(
+                    new Header(Tag.cmap),
+                    WritableFontData.createWritableFontData(cmapTable.readFontData()))
+                .cmapBuilder(CMapTable.CMapId.WINDOWS_UCS4);
+    assertEquals(5, builder.getGroups().size());
   }
 }
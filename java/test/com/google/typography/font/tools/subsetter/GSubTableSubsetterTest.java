@@ -0,0 +1,470 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.table.opentype.component.GlyphGroup;
+import com.google.typography.font.sfntly.table.opentype.component.Rule;
+import com.google.typography.font.sfntly.testutils.TestFont;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+import com.google.typography.font.tools.sfnttool.GlyphCoverage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link GSubTableSubsetter}. Most of them check that the glyph closure of a text over
+ * the subset's GSUB table is the closure over the source font's table, mapped to the new glyph ids.
+ */
+public class GSubTableSubsetterTest extends TestCase {
+
+  private static final File OPENSANS = TestFont.TestFontNames.OPENSANS.getFile();
+
+  // lookup types
+  private static final int SINGLE = 1;
+  private static final int CONTEXT = 5;
+  private static final int CHAINING_CONTEXT = 6;
+  private static final int EXTENSION = 7;
+  private static final int REVERSE_CHAINING_CONTEXT = 8;
+
+  // glyph ids in OpenSans
+  private static final int A = 36;
+  private static final int E = 40;
+  private static final int K = 46;
+  private static final int L = 47;
+  private static final int a = 68;
+  private static final int b = 69;
+  private static final int c = 70;
+  private static final int d = 71;
+  private static final int e = 72;
+  private static final int g = 74;
+  private static final int h = 75;
+  private static final int i = 76;
+  private static final int j = 77;
+  private static final int k = 78;
+  private static final int l = 79;
+  private static final int m = 80;
+  private static final int n = 81;
+  private static final int z = 93;
+
+  /** Class based context and chaining context lookups, with rules that match class 0. */
+  public void testAndika() throws IOException {
+    Font font = loadFont(new File("../cpp/data/fonts/andika/Andika-R.ttf"));
+    assertClosurePreserved(font, "a\u0308");
+    assertClosurePreserved(font, "\u0308");
+    assertClosurePreserved(font, "\u00e4\u0308 \u0363\u0308");
+    assertClosurePreserved(font, "fi \u0131\u0301 \u1ec7 \u01c6");
+    assertClosurePreserved(font, sampleText(font, 0, 5));
+    assertClosurePreserved(font, sampleText(font, 3, 7));
+  }
+
+  /** Class based chaining context lookups. */
+  public void testCrimsonTextItalic() throws IOException {
+    Font font = loadFont(new File("../cpp/data/fonts/crimson/CrimsonText-Italic.ttf"));
+    assertClosurePreserved(font, "Th ffi st");
+    assertClosurePreserved(font, sampleText(font, 0, 3));
+    assertClosurePreserved(font, sampleText(font, 1, 4));
+  }
+
+  /** Coverage based chaining context lookups. */
+  public void testCardo() throws IOException {
+    Font font = loadFont(new File("../cpp/data/fonts/cardo/Cardo-Regular.ttf"));
+    assertClosurePreserved(font, "Th ffi st");
+    assertClosurePreserved(font, sampleText(font, 0, 3));
+  }
+
+  /**
+   * Glyph based context and chaining context lookups, reverse chaining and extension lookups, and
+   * feature parameters.
+   */
+  public void testGlyphContexts() throws IOException {
+    Font font = withGsub(OPENSANS, contextGsub());
+    for (String text : new String[] {"ab", "dc", "hgij", "gi", "mkn", "kl", "e", "abdchgijmkne"}) {
+      assertClosurePreserved(font, text);
+    }
+    // the contextual substitutions are all there for the closure to find
+    assertTrue(Rule.charGlyphClosure(font, "ab").get(A));
+    assertFalse(Rule.charGlyphClosure(font, "a").get(A));
+    assertTrue(Rule.charGlyphClosure(font, "hgij").get(z));
+    assertFalse(Rule.charGlyphClosure(font, "gij").get(z));
+    assertTrue(Rule.charGlyphClosure(font, "mkn").get(K));
+
+    ReadableFontData gsub = subset(font, GlyphCoverage.getGlyphCoverage(font, "abdchgijmkne"));
+    int[] types = new int[6];
+    for (int lookup = 0; lookup < types.length; lookup++) {
+      types[lookup] = gsub.readUShort(lookupOffset(gsub, lookup));
+    }
+    // the extension lookups stay extension lookups
+    int[] expectedTypes = {SINGLE, CONTEXT, EXTENSION, SINGLE, EXTENSION, SINGLE};
+    assertEquals(6, gsub.readUShort(gsub.readUShort(8)));
+    assertTrue(Arrays.equals(expectedTypes, types));
+    int chaining = lookupOffset(gsub, 2);
+    int extension = chaining + gsub.readUShort(chaining + 6);
+    assertEquals(CHAINING_CONTEXT, gsub.readUShort(extension + 2));
+    int reverse = lookupOffset(gsub, 4);
+    extension = reverse + gsub.readUShort(reverse + 6);
+    assertEquals(REVERSE_CHAINING_CONTEXT, gsub.readUShort(extension + 2));
+  }
+
+  /** The parameters of the stylistic set and character variant features are kept. */
+  public void testFeatureParameters() throws IOException {
+    Font font = withGsub(OPENSANS, contextGsub());
+    ReadableFontData source = font.getTable(Tag.GSUB).readFontData();
+    ReadableFontData gsub = subset(font, GlyphCoverage.getGlyphCoverage(font, "e"));
+
+    // only the features using the lookup of e are left
+    int featureList = gsub.readUShort(6);
+    assertEquals(2, gsub.readUShort(featureList));
+    assertEquals(Tag.intValue("cv01"), gsub.readULongAsInt(featureList + 2));
+    assertEquals(Tag.intValue("ss01"), gsub.readULongAsInt(featureList + 8));
+    int sourceFeatureList = source.readUShort(6);
+    int[] lengths = {20, 4};
+    for (int feature = 0; feature < 2; feature++) {
+      int params = featureParams(gsub, featureList, feature);
+      // the source features are calt, cv01 and ss01
+      int sourceParams = featureParams(source, sourceFeatureList, feature + 1);
+      for (int offset = 0; offset < lengths[feature]; offset++) {
+        assertEquals(source.readUByte(sourceParams + offset), gsub.readUByte(params + offset));
+      }
+    }
+
+    // a lookup left with no substitutions leaves no features and so no table
+    assertNull(subset(font, GlyphCoverage.getGlyphCoverage(font, "a")));
+  }
+
+  /** Coverage based context lookups, which the closure doesn't support. */
+  public void testCoverageContext() throws IOException {
+    Font font = withGsub(OPENSANS, coverageContextGsub());
+    // a is given new glyph id 2 and b 3
+    ReadableFontData gsub = subset(font, List.of(0, A, a, b));
+    assertEquals(2, gsub.readUShort(gsub.readUShort(8)));
+    // a to A is written as a delta
+    int single = subtableOffset(gsub, lookupOffset(gsub, 0));
+    assertEquals(1, gsub.readUShort(single));
+    assertCoverage(gsub, single + gsub.readUShort(single + 2), 2);
+    assertEquals(-1, gsub.readShort(single + 4));
+
+    int context = subtableOffset(gsub, lookupOffset(gsub, 1));
+    assertEquals(3, gsub.readUShort(context));
+    assertEquals(2, gsub.readUShort(context + 2));
+    assertEquals(1, gsub.readUShort(context + 4));
+    assertCoverage(gsub, context + gsub.readUShort(context + 6), 2);
+    assertCoverage(gsub, context + gsub.readUShort(context + 8), 3);
+    assertEquals(0, gsub.readUShort(context + 10));
+    assertEquals(0, gsub.readUShort(context + 12));
+
+    // without b the context can't match
+    assertNull(subset(font, List.of(0, A, a, e)));
+  }
+
+  /**
+   * Lookups that no longer fit at 16 bit offsets are written as extension lookups, keeping their
+   * mark filtering sets.
+   */
+  public void testExtensionFallback() throws IOException {
+    Font font = withGsub(OPENSANS, largeGsub(40, loadFont(OPENSANS)));
+    assertTrue(font.getTable(Tag.GSUB).dataLength() < 0x10000);
+    int numGlyphs = ((MaximumProfileTable) font.getTable(Tag.maxp)).numGlyphs();
+    List<Integer> glyphs = new ArrayList<>();
+    for (int glyph = 0; glyph < numGlyphs; glyph++) {
+      glyphs.add(glyph);
+    }
+    ReadableFontData gsub = subset(font, glyphs);
+    assertTrue(gsub.length() > 0x10000);
+    assertEquals(40, gsub.readUShort(gsub.readUShort(8)));
+    for (int lookup = 0; lookup < 40; lookup++) {
+      int offset = lookupOffset(gsub, lookup);
+      assertEquals(EXTENSION, gsub.readUShort(offset));
+      assertEquals(0x0010, gsub.readUShort(offset + 2));
+      assertEquals(1, gsub.readUShort(offset + 4));
+      assertEquals(1, gsub.readUShort(offset + 8));
+      int extension = offset + gsub.readUShort(offset + 6);
+      assertEquals(SINGLE, gsub.readUShort(extension + 2));
+      // every glyph but notdef is still substituted by its reverse
+      int single = extension + gsub.readULongAsInt(extension + 4);
+      assertEquals(2, gsub.readUShort(single));
+      assertEquals(numGlyphs - 1, gsub.readUShort(single + 4));
+      for (int index = 0; index < numGlyphs - 1; index++) {
+        assertEquals(numGlyphs - 1 - index, gsub.readUShort(single + 6 + 2 * index));
+      }
+    }
+  }
+
+  private static Font loadFont(File file) throws IOException {
+    return FontFactory.getInstance().loadFonts(TestUtils.readFile(file))[0];
+  }
+
+  private static Font withGsub(File file, Object[] gsub) throws IOException {
+    FontFactory factory = FontFactory.getInstance();
+    Font.Builder builder = factory.loadFontsForBuilding(TestUtils.readFile(file))[0];
+    builder.newTableBuilder(Tag.GSUB, ReadableFontData.createReadableFontData(toBytes(gsub)));
+    return builder.build();
+  }
+
+  /** Gets the GSUB table of a subset of a font, or null if it has none. */
+  private static ReadableFontData subset(Font font, List<Integer> glyphs) throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(font, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs);
+    Font subset = subsetter.subset().build();
+    return subset.hasTable(Tag.GSUB) ? subset.getTable(Tag.GSUB).readFontData() : null;
+  }
+
+  /** Subsets a font to the glyphs needed for a text, and compares their closures. */
+  private static void assertClosurePreserved(Font font, String text) throws IOException {
+    List<Integer> glyphs = GlyphCoverage.getGlyphCoverage(font, text);
+    Subsetter subsetter = new RenumberingSubsetter(font, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs);
+    Font subset = subsetter.subset().build();
+    GlyphGroup expected = Rule.charGlyphClosure(font, text);
+    GlyphGroup actual = new GlyphGroup();
+    if (subset.hasTable(Tag.GSUB)) {
+      for (int glyph : Rule.charGlyphClosure(subset, text)) {
+        actual.add(glyphs.get(glyph));
+      }
+    } else {
+      // without a GSUB table the closure is just the glyphs of the text
+      for (int glyph : Rule.glyphGroupForText(text, subset.getTable(Tag.cmap))) {
+        actual.add(glyphs.get(glyph));
+      }
+    }
+    assertEquals(text, expected, actual);
+  }
+
+  /** Gets every step'th character of a font's cmap, from the given start. */
+  private static String sampleText(Font font, int start, int step) {
+    CMapTable cmapTable = font.getTable(Tag.cmap);
+    CMap cmap = cmapTable.cmap(CMapTable.CMapId.WINDOWS_BMP);
+    StringBuilder text = new StringBuilder();
+    int index = 0;
+    for (int codePoint : cmap) {
+      if (index++ % step == start && cmap.glyphId(codePoint) != CMapTable.NOTDEF) {
+        text.appendCodePoint(codePoint);
+      }
+    }
+    return text.toString();
+  }
+
+  private static int lookupOffset(ReadableFontData gsub, int lookup) {
+    int lookupList = gsub.readUShort(8);
+    return lookupList + gsub.readUShort(lookupList + 2 + 2 * lookup);
+  }
+
+  /** Gets the first subtable of a lookup. */
+  private static int subtableOffset(ReadableFontData gsub, int lookup) {
+    return lookup + gsub.readUShort(lookup + 6);
+  }
+
+  private static int featureParams(ReadableFontData gsub, int featureList, int feature) {
+    int offset = featureList + gsub.readUShort(featureList + 2 + 6 * feature + 4);
+    assertTrue(gsub.readUShort(offset) != 0);
+    return offset + gsub.readUShort(offset);
+  }
+
+  private static void assertCoverage(ReadableFontData gsub, int coverage, int glyph) {
+    assertEquals(1, gsub.readUShort(coverage));
+    assertEquals(1, gsub.readUShort(coverage + 2));
+    assertEquals(glyph, gsub.readUShort(coverage + 4));
+  }
+
+  /**
+   * Makes a GSUB table with glyph based context and chaining context lookups, a reverse chaining
+   * lookup, extension lookups and the stylistic set and character variant features:
+   *
+   * <ul>
+   *   <li>calt: a b to A b, d c to d C, h g i j to h g z j and m k n to m K n, or l for k
+   *   <li>cv01 and ss01: e to E, with feature parameters
+   * </ul>
+   */
+  private static Object[] contextGsub() {
+    Object[] toUpper = {2, coverage(a, b, c), 3, A, A + 1, A + 2};
+    Object[] glyphContext = {
+      1,
+      coverage(a, d),
+      2,
+      new Object[] {1, new Object[] {2, 1, b, 0, 0}},
+      new Object[] {1, new Object[] {2, 1, c, 1, 0}}
+    };
+    Object[] chainingContext = {
+      1, coverage(g), 1, new Object[] {1, new Object[] {1, h, 2, i, 1, j, 1, 1, 3}}
+    };
+    Object[] iToZ = {1, coverage(i), z - i};
+    Object[] reverseChaining = {1, coverage(k, l), 1, coverage(m), 1, coverage(n), 2, K, L};
+    Object[] eToE = {1, coverage(e), (E - e) & 0xffff};
+    Object[] lookups = {
+      6,
+      lookup(SINGLE, toUpper),
+      lookup(CONTEXT, glyphContext),
+      extensionLookup(CHAINING_CONTEXT, chainingContext),
+      lookup(SINGLE, iToZ),
+      extensionLookup(REVERSE_CHAINING_CONTEXT, reverseChaining),
+      lookup(SINGLE, eToE)
+    };
+    // a character variant's parameters end with its characters, as 24 bit values
+    Object[] cv01Params = {0, 257, 258, 259, 0, 260, 2, 0x0000, 0x6100, 0x0062};
+    Object[] ss01Params = {0, 256};
+    Object[] features = {
+      3,
+      "calt",
+      new Object[] {0, 3, 1, 2, 4},
+      "cv01",
+      new Object[] {cv01Params, 1, 5},
+      "ss01",
+      new Object[] {ss01Params, 1, 5}
+    };
+    return gsub(features, lookups, 3);
+  }
+
+  /** Makes a GSUB table with a coverage based context lookup for a b to A b, and a e to A e. */
+  private static Object[] coverageContextGsub() {
+    Object[] toUpper = {2, coverage(a), 1, A};
+    Object[] coverageContext = {3, 2, 1, coverage(a, e), coverage(b), 0, 0};
+    Object[] lookups = {2, lookup(SINGLE, toUpper), lookup(CONTEXT, coverageContext)};
+    return gsub(new Object[] {1, "calt", new Object[] {0, 1, 1}}, lookups, 1);
+  }
+
+  /**
+   * Makes a GSUB table with many copies of a lookup that reverses the glyph ids of a font, and that
+   * uses mark filtering set 1. The copies share the source table's lookup, but not the subset's.
+   */
+  private static Object[] largeGsub(int lookupCount, Font font) {
+    int numGlyphs = ((MaximumProfileTable) font.getTable(Tag.maxp)).numGlyphs();
+    Object[] reverse = new Object[3 + numGlyphs - 1];
+    reverse[0] = 2;
+    reverse[1] = new Object[] {2, 1, 1, numGlyphs - 1, 0};
+    reverse[2] = numGlyphs - 1;
+    for (int glyph = 1; glyph < numGlyphs; glyph++) {
+      reverse[2 + glyph] = numGlyphs - glyph;
+    }
+    Object[] lookup = {SINGLE, 0x0010, 1, reverse, 1};
+    Object[] lookups = new Object[1 + lookupCount];
+    Object[] feature = new Object[2 + lookupCount];
+    lookups[0] = lookupCount;
+    feature[0] = 0;
+    feature[1] = lookupCount;
+    for (int index = 0; index < lookupCount; index++) {
+      lookups[1 + index] = lookup;
+      feature[2 + index] = index;
+    }
+    return gsub(new Object[] {1, "ccmp", feature}, lookups, 1);
+  }
+
+  /** Makes a GSUB table with a default script whose default language system has every feature. */
+  private static Object[] gsub(Object[] features, Object[] lookups, int featureCount) {
+    Object[] langSys = new Object[3 + featureCount];
+    langSys[0] = 0;
+    langSys[1] = 0xffff;
+    langSys[2] = featureCount;
+    for (int feature = 0; feature < featureCount; feature++) {
+      langSys[3 + feature] = feature;
+    }
+    Object[] scripts = {1, "DFLT", new Object[] {langSys, 0}};
+    return new Object[] {1, 0, scripts, features, lookups};
+  }
+
+  private static Object[] lookup(int type, Object[] subtable) {
+    return new Object[] {type, 0, 1, subtable};
+  }
+
+  private static Object[] extensionLookup(int type, Object[] subtable) {
+    return lookup(EXTENSION, new Object[] {1, type, new LongOffset(subtable)});
+  }
+
+  private static Object[] coverage(int... glyphs) {
+    Object[] coverage = new Object[2 + glyphs.length];
+    coverage[0] = 1;
+    coverage[1] = glyphs.length;
+    for (int index = 0; index < glyphs.length; index++) {
+      coverage[2 + index] = glyphs[index];
+    }
+    return coverage;
+  }
+
+  /** A 32 bit offset to a table. */
+  private static final class LongOffset {
+    final Object[] table;
+
+    LongOffset(Object[] table) {
+      this.table = table;
+    }
+  }
+
+  /**
+   * Lays out a table given as an array of 16 bit values, 4 character tags, and 16 or 32 bit
+   * offsets to other such tables. A table follows the first table that refers to it, and one that
+   * is referred to more than once is only written once.
+   */
+  private static byte[] toBytes(Object[] table) {
+    Map<Object[], Integer> positions = new IdentityHashMap<>();
+    int length = place(table, 0, positions);
+    byte[] bytes = new byte[length];
+    for (Map.Entry<Object[], Integer> entry : positions.entrySet()) {
+      int position = entry.getValue();
+      int at = position;
+      for (Object item : entry.getKey()) {
+        if (item instanceof Integer) {
+          at = put(bytes, at, (Integer) item, 2);
+        } else if (item instanceof String) {
+          at = put(bytes, at, Tag.intValue((String) item), 4);
+        } else if (item instanceof LongOffset) {
+          at = put(bytes, at, positions.get(((LongOffset) item).table) - position, 4);
+        } else {
+          int offset = positions.get((Object[]) item) - position;
+          assertTrue(offset > 0 && offset <= 0xffff);
+          at = put(bytes, at, offset, 2);
+        }
+      }
+    }
+    return bytes;
+  }
+
+  /** Places a table and the tables it refers to, and gets where the last of them ends. */
+  private static int place(Object[] table, int position, Map<Object[], Integer> positions) {
+    positions.put(table, position);
+    int end = position;
+    for (Object item : table) {
+      end += item instanceof String || item instanceof LongOffset ? 4 : 2;
+    }
+    for (Object item : table) {
+      Object[] child = item instanceof LongOffset ? ((LongOffset) item).table : null;
+      if (item instanceof Object[]) {
+        child = (Object[]) item;
+      }
+      if (child != null && !positions.containsKey(child)) {
+        end = place(child, end, positions);
+      }
+    }
+    return end;
+  }
+
+  private static int put(byte[] bytes, int at, int value, int size) {
+    for (int index = 0; index < size; index++) {
+      bytes[at + index] = (byte) (value >> (8 * (size - 1 - index)));
+    }
+    return at + size;
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.table.truetype.CompositeGlyph;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+public class GlyphRenumbererTest extends TestCase {
+
+  private static final int[] MAPPING = {0, 7, 8};
+
+  public void testRenumberComposite() {
+    byte[] b = compositeGlyphs(0);
+    byte[] expected = b.clone();
+    GlyphRenumberer.renumberGlyph(b, 0, 22, MAPPING);
+    assertEquals(7, b[13]);
+    assertEquals(8, b[19]);
+    expected[13] = 7;
+    expected[19] = 8;
+    assertTrue(Arrays.equals(expected, b));
+  }
+
+  public void testTruncatedComposite() {
+    // the second component is cut off part way through its arguments
+    byte[] b = compositeGlyphs(CompositeGlyph.FLAG_ARG_1_AND_2_ARE_WORDS);
+    byte[] expected = b.clone();
+    try {
+      GlyphRenumberer.renumberGlyph(b, 0, 22, MAPPING);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+    assertNextGlyphUnchanged(expected, b);
+  }
+
+  public void testMoreComponentsPastEnd() {
+    // the last component claims there are more, so the next glyph's bytes would be read as one
+    byte[] b = compositeGlyphs(CompositeGlyph.FLAG_MORE_COMPONENTS);
+    byte[] expected = b.clone();
+    try {
+      GlyphRenumberer.renumberGlyph(b, 0, 22, MAPPING);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+    assertNextGlyphUnchanged(expected, b);
+  }
+
+  private static void assertNextGlyphUnchanged(byte[] expected, byte[] b) {
+    for (int i = 22; i < b.length; i++) {
+      assertEquals(expected[i], b[i]);
+    }
+  }
+
+  /**
+   * Makes a 22 byte composite glyph of glyphs 1 and 2 followed by the bytes of another glyph.
+   *
+   * @param lastFlags flags to add to the last component
+   */
+  private static byte[] compositeGlyphs(int lastFlags) {
+    byte[] b = new byte[32];
+    b[0] = (byte) 0xff; // numberOfContours = -1
+    b[1] = (byte) 0xff;
+    b[11] = CompositeGlyph.FLAG_MORE_COMPONENTS;
+    b[13] = 1;
+    b[16] = (byte) (lastFlags >> 8);
+    b[17] = (byte) lastFlags;
+    b[19] = 2;
+    // the next glyph
+    for (int i = 22; i < b.length; i++) {
+      b[i] = 1;
+    }
+    return b;
+  }
+}
@@ -30,10 +30,14 @@ import com.google.typography.font.sfntly.table.truetype.LocaTable;
 import com.google.typography.font.sfntly.table.truetype.SimpleGlyph;
 import com.google.typography.font.sfntly.testutils.TestFont;
 import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import junit.framework.TestCase;
 
 /** @author Raph Levien */
@@ -61,6 +65,24 @@ public class HintStripTest extends TestCase {
     dstFont = dstFontBuilder.build();
   }
 
+  public void testParallelStripping() throws IOException {
+    Font srcFont = TestFontUtils.loadFont(fontFile)[0];
+    FontFactory factory = FontFactory.getInstance();
+    Subsetter subsetter = new HintStripper(srcFont, factory);
+    subsetter.setRemoveTables(new HashSet<>(Arrays.asList(Tag.fpgm, Tag.prep, Tag.cvt)));
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      subsetter.setExecutor(executor);
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      factory.serializeFont(dstFont, expected);
+      ByteArrayOutputStream actual = new ByteArrayOutputStream();
+      factory.serializeFont(subsetter.subset().build(), actual);
+      assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   public void testNumGlyphs() {
     MaximumProfileTable maxpTable = dstFont.getTable(Tag.maxp);
     assertEquals(938, maxpTable.numGlyphs());
@@ -19,12 +19,15 @@ package com.google.typography.font.tools.subsetter;
 import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.FontFactory;
 import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
 import com.google.typography.font.sfntly.table.core.CMap;
 import com.google.typography.font.sfntly.table.core.CMapTable;
 import com.google.typography.font.sfntly.table.core.HorizontalHeaderTable;
 import com.google.typography.font.sfntly.table.core.HorizontalMetricsTable;
 import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
 import com.google.typography.font.sfntly.table.core.PostScriptTable;
+import com.google.typography.font.sfntly.table.opentype.GSubTable;
+import com.google.typography.font.sfntly.table.opentype.component.Rule;
 import com.google.typography.font.sfntly.table.truetype.CompositeGlyph;
 import com.google.typography.font.sfntly.table.truetype.Glyph;
 import com.google.typography.font.sfntly.table.truetype.GlyphTable;
@@ -32,12 +35,18 @@ import com.google.typography.font.sfntly.table.truetype.LocaTable;
 import com.google.typography.font.sfntly.table.truetype.SimpleGlyph;
 import com.google.typography.font.sfntly.testutils.TestFont;
 import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import junit.framework.TestCase;
 
 /** @author Raph Levien */
@@ -172,6 +181,178 @@ public class RenumberingSubsetTest extends TestCase {
     assertNull(dstFont.getTable(Tag.kern));
   }
 
+  public void testIntArrayGlyphs() throws IOException {
+    Font srcFont = TestFontUtils.loadFont(fontFile)[0];
+    FontFactory factory = FontFactory.getInstance();
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, factory);
+    subsetter.setGlyphs(new int[] {0, 67, 68, 162});
+    subsetter.setRemoveTables(new HashSet<>(Arrays.asList(Tag.GPOS, Tag.GSUB, Tag.kern)));
+
+    int[] inverse = subsetter.getInverseMapping();
+    assertEquals(163, inverse.length);
+    assertEquals(3, inverse[162]);
+    assertEquals(Subsetter.NO_GLYPH, inverse[1]);
+    assertEquals(Subsetter.NO_GLYPH, Subsetter.newGlyphId(inverse, 500));
+
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    factory.serializeFont(dstFont, expected);
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    factory.serializeFont(subsetter.subset().build(), actual);
+    assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+  }
+
+  public void testParallelSubsetting() throws IOException {
+    Font srcFont = TestFontUtils.loadFont(fontFile)[0];
+    FontFactory factory = FontFactory.getInstance();
+    int numGlyphs = srcFont.<MaximumProfileTable>getTable(Tag.maxp).numGlyphs();
+    int[] glyphs = new int[numGlyphs];
+    for (int i = 0; i < numGlyphs; i++) {
+      // reverse the glyph order, keeping .notdef first
+      glyphs[i] = i == 0 ? 0 : numGlyphs - i;
+    }
+
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, factory);
+    subsetter.setGlyphs(glyphs);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    factory.serializeFont(subsetter.subset().build(), expected);
+    subsetter.setExecutor(ForkJoinPool.commonPool());
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    factory.serializeFont(subsetter.subset().build(), actual);
+    assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+  }
+
+  public void testGlyphDataCopiedThrough() throws IOException {
+    // Roboto ends with empty glyphs, which have no data to copy
+    Font srcFont = TestFontUtils.loadFont(TestFont.TestFontNames.ROBOTO.getFile())[0];
+    LocaTable srcLoca = srcFont.getTable(Tag.loca);
+    int[] glyphs = new int[srcLoca.numGlyphs()];
+    for (int i = 0; i < glyphs.length; i++) {
+      glyphs[i] = i == 0 ? 0 : glyphs.length - i;
+    }
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs);
+    Font font = subsetter.subset().build();
+
+    LocaTable loca = font.getTable(Tag.loca);
+    assertEquals(glyphs.length, loca.numGlyphs());
+    for (int i = 0; i < glyphs.length; i++) {
+      assertEquals(srcLoca.glyphLength(glyphs[i]), loca.glyphLength(i));
+      Glyph glyph = getGlyph(font, i);
+      if (glyph.glyphType() == Glyph.GlyphType.Composite) {
+        Glyph srcGlyph = getGlyph(srcFont, glyphs[i]);
+        CompositeGlyph composite = (CompositeGlyph) glyph;
+        for (int c = 0; c < composite.numGlyphs(); c++) {
+          int srcComponent = ((CompositeGlyph) srcGlyph).glyphIndex(c);
+          assertEquals(srcComponent, glyphs[composite.glyphIndex(c)]);
+        }
+      }
+    }
+  }
+
+  public void testSupplementaryCmap() throws IOException {
+    FontFactory factory = FontFactory.getInstance();
+    Font.Builder srcBuilder = factory.loadFontsForBuilding(TestUtils.readFile(fontFile))[0];
+    Map<Integer, Integer> srcMapping = new HashMap<>();
+    srcMapping.put(0x61, 68); // a
+    srcMapping.put(0x1d41a, 68); // mathematical bold small a
+    srcMapping.put(0x1f600, 162); // agrave, standing in for an emoji
+    new CMapTableBuilder(srcBuilder, srcMapping).build();
+
+    Subsetter subsetter = new RenumberingSubsetter(srcBuilder.build(), factory);
+    subsetter.setGlyphs(new int[] {0, 67, 68, 162});
+    Font font = subsetter.subset().build();
+    CMapTable cmapTable = font.getTable(Tag.cmap);
+    assertEquals(2, cmapTable.cmap(CMapTable.CMapId.WINDOWS_BMP).glyphId(0x61));
+    CMap cmap12 = cmapTable.cmap(CMapTable.CMapId.WINDOWS_UCS4);
+    assertEquals(2, cmap12.glyphId(0x61));
+    assertEquals(2, cmap12.glyphId(0x1d41a));
+    assertEquals(3, cmap12.glyphId(0x1f600));
+  }
+
+  public void testLayoutSubsetting() throws IOException {
+    FontFactory factory = FontFactory.getInstance();
+    Font srcFont = factory.loadFonts(TestUtils.readFile(fontFile))[0];
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, factory);
+    // l, f, i and the fi ligature, but none of the other ligatures starting with f
+    subsetter.setGlyphs(new int[] {0, 79, 73, 76, 564});
+    Font font = subsetter.subset().build();
+
+    GSubTable gsub = font.getTable(Tag.GSUB);
+    assertEquals(1, gsub.lookupList().subTableCount());
+    assertEquals(3, gsub.featureList().count()); // liga, for each of the three scripts
+    assertTrue(gsub.dataLength() < srcFont.getTable(Tag.GSUB).dataLength() / 4);
+    assertTrue(Rule.charGlyphClosure(font, "fi").get(4));
+    assertFalse(Rule.charGlyphClosure(font, "fl").get(4));
+
+    // nothing is left of the table without any ligatures
+    subsetter.setGlyphs(new int[] {0, 79, 73, 76});
+    assertNull(subsetter.subset().build().getTable(Tag.GSUB));
+  }
+
+  public void testLookupFlagsReferringToGdef() throws IOException {
+    FontFactory factory = FontFactory.getInstance();
+    Font.Builder srcBuilder = factory.loadFontsForBuilding(TestUtils.readFile(fontFile))[0];
+    ReadableFontData srcGsub = ReadableFontData.createReadableFontData(markFilteringGsub());
+    srcBuilder.newTableBuilder(Tag.GSUB, srcGsub);
+    Font srcFont = srcBuilder.build();
+    assertTrue(srcFont.hasTable(Tag.GDEF));
+
+    // GDEF is kept, so the flags can still refer to it
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, factory);
+    subsetter.setGlyphs(new int[] {0, 67, 68, 162});
+    ReadableFontData gsub = subsetter.subset().build().getTable(Tag.GSUB).readFontData();
+    int lookup = gsub.readUShort(8) + gsub.readUShort(gsub.readUShort(8) + 2);
+    assertEquals(0x0110, gsub.readUShort(lookup + 2));
+    assertEquals(3, gsub.readUShort(lookup + 6 + 2 * gsub.readUShort(lookup + 4)));
+
+    // without GDEF the mark attachment type and mark filtering set are dropped
+    Set<Integer> removeTables = new HashSet<>();
+    removeTables.add(Tag.GDEF);
+    subsetter.setRemoveTables(removeTables);
+    gsub = subsetter.subset().build().getTable(Tag.GSUB).readFontData();
+    lookup = gsub.readUShort(8) + gsub.readUShort(gsub.readUShort(8) + 2);
+    assertEquals(0, gsub.readUShort(lookup + 2));
+    int subtableCount = gsub.readUShort(lookup + 4);
+    assertEquals(1, subtableCount);
+    // the first subtable follows the offsets, with no mark filtering set in between
+    assertEquals(6 + 2 * subtableCount, gsub.readUShort(lookup + 6));
+  }
+
+  /**
+   * Makes a GSUB table with a single substitution of a to agrave in a lookup that uses mark
+   * attachment type 1 and mark filtering set 3.
+   */
+  private static byte[] markFilteringGsub() {
+    int[] words = {
+      // header: version, script list, feature list, lookup list
+      0x0001, 0x0000, 10, 30, 44,
+      // script list: DFLT
+      1, 0x4446, 0x4c54, 8,
+      // script: default language system
+      4, 0,
+      // language system: no required feature, feature 0
+      0, 0xffff, 1, 0,
+      // feature list: ccmp
+      1, 0x6363, 0x6d70, 8,
+      // feature: lookup 0
+      0, 1, 0,
+      // lookup list
+      1, 4,
+      // lookup: single substitution, flags, one subtable, mark filtering set
+      1, 0x0110, 1, 10, 3,
+      // single substitution format 2: a -> agrave
+      2, 8, 1, 162,
+      // coverage: a
+      1, 1, 68
+    };
+    byte[] b = new byte[2 * words.length];
+    for (int i = 0; i < words.length; i++) {
+      b[2 * i] = (byte) (words[i] >> 8);
+      b[2 * i + 1] = (byte) words[i];
+    }
+    return b;
+  }
+
   // TODO: this really needs to be a utility method somewhere
   private static Glyph getGlyph(Font font, int glyphId) {
     LocaTable locaTable = font.getTable(Tag.loca);
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.testutils.TestFont;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.tools.conversion.woff.WoffWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import junit.framework.TestCase;
+
+public class SubsetCacheTest extends TestCase {
+
+  private static final Set<Integer> REMOVE_TABLES = Collections.singleton(Tag.GPOS);
+
+  private Font font;
+  private int produced;
+
+  @Override
+  public void setUp() throws IOException {
+    font = TestFontUtils.loadFont(TestFont.TestFontNames.OPENSANS.getFile(), true)[0];
+  }
+
+  public void testRepeatedRequests() throws Exception {
+    SubsetCache cache = new SubsetCache(1 << 20);
+    List<Integer> glyphs = Arrays.asList(0, 68, 69, 70);
+    byte[] woff = cache.subset(font, glyphs, REMOVE_TABLES, "woff", () -> woff(glyphs));
+    byte[] again =
+        cache.subset(font, Arrays.asList(70, 0, 69, 68), REMOVE_TABLES, "woff", () -> woff(glyphs));
+    assertTrue(Arrays.equals(woff, again));
+    assertEquals(1, produced);
+    assertEquals(1, cache.hitCount());
+    assertEquals(1, cache.missCount());
+    assertEquals(woff.length, cache.byteSize());
+
+    cache.subset(font, glyphs, REMOVE_TABLES, "ttf", () -> ttf(glyphs));
+    cache.subset(font, glyphs, Collections.<Integer>emptySet(), "woff", () -> woff(glyphs));
+    assertEquals(3, produced);
+    assertEquals(3, cache.size());
+  }
+
+  public void testEviction() throws Exception {
+    List<Integer> glyphs = Arrays.asList(0, 68);
+    int size = woff(glyphs).length;
+    SubsetCache cache = new SubsetCache(2 * size);
+    for (int glyph = 69; glyph < 72; glyph++) {
+      List<Integer> subset = Arrays.asList(0, glyph);
+      cache.subset(font, subset, REMOVE_TABLES, "woff", () -> woff(subset));
+    }
+    assertTrue(cache.byteSize() <= 2 * size);
+    assertEquals(2, cache.size());
+    // the least recently used subset was evicted
+    produced = 0;
+    List<Integer> first = Arrays.asList(0, 69);
+    cache.subset(font, first, REMOVE_TABLES, "woff", () -> woff(first));
+    assertEquals(1, produced);
+  }
+
+  public void testFontWithoutDigest() throws Exception {
+    Font undigested = TestFontUtils.loadFont(TestFont.TestFontNames.OPENSANS.getFile(), false)[0];
+    SubsetCache cache = new SubsetCache(1 << 20);
+    List<Integer> glyphs = Arrays.asList(0, 68);
+    cache.subset(undigested, glyphs, REMOVE_TABLES, "woff", () -> woff(glyphs));
+    cache.subset(undigested, glyphs, REMOVE_TABLES, "woff", () -> woff(glyphs));
+    assertEquals(2, produced);
+    assertEquals(0, cache.size());
+  }
+
+  private byte[] woff(List<Integer> glyphs) throws IOException {
+    produced++;
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new WoffWriter().convert(subset(glyphs)).copyTo(os);
+    return os.toByteArray();
+  }
+
+  private byte[] ttf(List<Integer> glyphs) throws IOException {
+    produced++;
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    FontFactory.getInstance().serializeFont(subset(glyphs), os);
+    return os.toByteArray();
+  }
+
+  private Font subset(List<Integer> glyphs) throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(font, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs);
+    subsetter.setRemoveTables(REMOVE_TABLES);
+    return subsetter.subset().build();
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import com.google.typography.font.sfntly.testutils.TestFont;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.tools.sfnttool.GlyphCoverage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import junit.framework.TestCase;
+
+public class SubsetPatchTest extends TestCase {
+
+  private FontFactory factory;
+  private Font font;
+  private GlyphCoverage coverage;
+
+  @Override
+  public void setUp() throws IOException {
+    factory = FontFactory.getInstance();
+    font = TestFontUtils.loadFont(TestFont.TestFontNames.OPENSANS.getFile())[0];
+    coverage = new GlyphCoverage(font);
+  }
+
+  public void testGlyphIdsAreKept() throws Exception {
+    Font subset = subset("abc");
+    LocaTable originalLoca = font.getTable(Tag.loca);
+    LocaTable loca = subset.getTable(Tag.loca);
+    assertEquals(originalLoca.numGlyphs(), loca.numGlyphs());
+    CMap cmap = ((CMapTable) subset.getTable(Tag.cmap)).cmap(CMapTable.CMapId.WINDOWS_BMP);
+    CMap originalCMap = ((CMapTable) font.getTable(Tag.cmap)).cmap(CMapTable.CMapId.WINDOWS_BMP);
+    int b = originalCMap.glyphId('b');
+    assertEquals(b, cmap.glyphId('b'));
+    assertEquals(originalLoca.glyphLength(b), loca.glyphLength(b));
+    assertEquals(0, cmap.glyphId('d'));
+    assertEquals(0, loca.glyphLength(originalCMap.glyphId('d')));
+  }
+
+  public void testPatch() throws Exception {
+    Font base = subset("abc");
+    Font next = subset("abcdefi");
+    byte[] patch = SubsetPatch.create(base, next);
+    assertTrue(patch.length < serialize(next).length / 2);
+
+    Font patched = SubsetPatch.apply(factory, base, patch).build();
+    assertTrue(Arrays.equals(serialize(next), serialize(patched)));
+  }
+
+  public void testRemovedTables() throws Exception {
+    Font base = subset("abc");
+    Subsetter subsetter = new IncrementalSubsetter(font, factory);
+    subsetter.setGlyphs(coverage.getGlyphCoverage("abcd"));
+    subsetter.setRemoveTables(Collections.singleton(Tag.GPOS));
+    Font next = subsetter.subset().build();
+
+    Font patched = SubsetPatch.apply(factory, base, SubsetPatch.create(base, next)).build();
+    assertFalse(patched.hasTable(Tag.GPOS));
+    assertTrue(Arrays.equals(serialize(next), serialize(patched)));
+  }
+
+  private Font subset(String text) throws IOException {
+    List<Integer> glyphs = coverage.getGlyphCoverage(text);
+    Subsetter subsetter = new IncrementalSubsetter(font, factory);
+    subsetter.setGlyphs(glyphs);
+    return subsetter.subset().build();
+  }
+
+  private byte[] serialize(Font font) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    factory.serializeFont(font, os);
+    return os.toByteArray();
+  }
+}